@@ -0,0 +1,71 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import uk.ac.dundee.compbio.hmmerclient.PhmmerClient.Status;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Full submit, poll and fetch cycle against an in-process server, measuring
+ * the client's own overhead: jobs run for two milliseconds and are polled
+ * every millisecond.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EndToEndBenchmark {
+
+  private FakePhmmerServer server;
+  private PhmmerClient client;
+  private String sequence;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    server = FakePhmmerServer.newBuilder()
+        .runTime(Duration.ofMillis(2))
+        .resultSize(64 * 1024)
+        .start();
+    client = new PhmmerClient(server.getURI());
+    client.setPollingStrategy(PollingStrategy.fixedDelay(1));
+    sequence = SubmitBodyBenchmark.randomFasta(400, new Random(400));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    server.close();
+  }
+
+  private int runJob() throws IOException {
+    var request = PhmmerRequest.newBuilder().sequence(new StringReader(sequence)).build();
+    var jobId = client.submit(request, "user@example.org");
+    if (client.awaitCompletion(jobId).join() != Status.FINISHED)
+      throw new IllegalStateException("job " + jobId + " did not finish");
+    try (var stream = client.getResultStream(jobId, "tblout")) {
+      return stream.readAllBytes().length;
+    }
+  }
+
+  @Benchmark
+  public int submitPollFetch() throws IOException {
+    return runJob();
+  }
+
+  @Benchmark
+  @Threads(8)
+  public int submitPollFetchConcurrent() throws IOException {
+    return runJob();
+  }
+}
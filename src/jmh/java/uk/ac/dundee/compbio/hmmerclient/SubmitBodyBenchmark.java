@@ -0,0 +1,99 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Encoding of the submit form for sequences from a single domain up to
+ * a large multi-domain protein written as 60 residue FASTA lines.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SubmitBodyBenchmark {
+
+  private static final class CountingOutputStream extends OutputStream {
+    long count = 0;
+
+    @Override
+    public void write(int b) {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      count += len;
+    }
+  }
+
+  @Param({"100", "1000", "10000", "100000"})
+  public int residues;
+
+  private PhmmerRequest request;
+  private PhmmerRequestTemplate template;
+  private String sequence;
+
+  @Setup
+  public void setup() {
+    sequence = randomFasta(residues, new Random(residues));
+    request = PhmmerRequest.newBuilder()
+        .sequence(new StringReader(sequence))
+        .E(0.01f)
+        .domE(0.03f)
+        .build();
+    template = PhmmerRequest.newBuilder().E(0.01f).domE(0.03f).buildTemplate();
+  }
+
+  static String randomFasta(int residues, Random random) {
+    final String alphabet = "ACDEFGHIKLMNPQRSTVWY";
+    var fasta = new StringBuilder(residues + residues / 60 + 16).append(">query\n");
+    for (int i = 0; i < residues; i++) {
+      fasta.append(alphabet.charAt(random.nextInt(alphabet.length())));
+      if (i % 60 == 59)
+        fasta.append('\n');
+    }
+    return fasta.append('\n').toString();
+  }
+
+  @Benchmark
+  public long prepareAndWrite() throws IOException {
+    var out = new CountingOutputStream();
+    PhmmerClient.prepareSubmitRequestBody(request, () -> new StringReader(sequence),
+        "user@example.org").writeTo(out);
+    return out.count;
+  }
+
+  @Benchmark
+  public long buildAndWrite() throws IOException {
+    var out = new CountingOutputStream();
+    var request = PhmmerRequest.newBuilder()
+        .sequence(new StringReader(sequence))
+        .E(0.01f)
+        .domE(0.03f)
+        .build();
+    PhmmerClient.prepareSubmitRequestBody(request, request::getSequence, "user@example.org")
+        .writeTo(out);
+    return out.count;
+  }
+
+  @Benchmark
+  public long bindAndWrite() throws IOException {
+    var out = new CountingOutputStream();
+    var request = template.bind(sequence);
+    PhmmerClient.prepareSubmitRequestBody(request, request::getSequence, "user@example.org")
+        .writeTo(out);
+    return out.count;
+  }
+}
@@ -0,0 +1,65 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Reads a per-sequence hits table of the given number of rows, touching
+ * every parsed column of each hit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TabularResultReaderBenchmark {
+
+  @Param({"1000", "100000"})
+  public int hits;
+
+  private byte[] tblout;
+
+  @Setup
+  public void setup() throws IOException {
+    tblout = generateTblout(hits, new Random(hits)).getBytes("UTF-8");
+  }
+
+  static String generateTblout(int hits, Random random) {
+    var text = new StringBuilder(hits * 200)
+        .append("# target name        accession  query name           accession    E-value  score  bias\n")
+        .append("#------------------- ---------- -------------------- ---------- --------- ------ -----\n");
+    for (int i = 0; i < hits; i++) {
+      double evalue = Math.pow(10, -random.nextInt(120)) * (1 + random.nextInt(9));
+      double score = 20 + random.nextDouble() * 400;
+      text.append(String.format(Locale.ROOT,
+          "sp|P%05d|PROT%d_HUMAN -          query                -          %9.1e %6.1f %5.1f " +
+              "%9.1e %6.1f %5.1f   1.0   1   0   0   1   1   1   1 Protein %d OS=Homo sapiens\n",
+          i, i, evalue, score, 0.1, evalue * 1.3, score - 0.4, 0.1, i));
+    }
+    return text.toString();
+  }
+
+  @Benchmark
+  public double readAll() throws IOException {
+    double checksum = 0;
+    try (var reader = new TabularResultReader(
+        new ByteArrayInputStream(tblout), TabularResultReader.Format.TBLOUT)) {
+      while (reader.next()) {
+        var hit = reader.hit();
+        checksum += hit.getEvalue() + hit.getScore() + hit.getTargetName().length() +
+            hit.getDescription().length();
+      }
+    }
+    return checksum;
+  }
+}
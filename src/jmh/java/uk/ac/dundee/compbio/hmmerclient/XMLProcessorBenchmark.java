@@ -0,0 +1,91 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Compares the pull parser in XMLProcessor with the former DOM implementation
+ * on a result types listing and an error body, single threaded and with
+ * several threads parsing at the same time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class XMLProcessorBenchmark {
+
+  private static final String[][] RESULT_TYPES = {
+      {"The output from the tool itself", "txt", "out", "Tool Output", "text/plain"},
+      {"Error messages produced by the tool", "txt", "error", "Tool Error Output", "text/plain"},
+      {"Input sequence as seen by the tool", "txt", "sequence", "Input Sequence", "text/plain"},
+      {"Per-sequence hits table", "txt", "tblout", "Sequence Table", "text/plain"},
+      {"Per-domain hits table", "txt", "domtblout", "Domain Table", "text/plain"},
+      {"Multiple alignment of significant hits", "sto", "aln", "Alignment", "text/plain"},
+      {"Result in JSON format", "json", "json", "JSON", "application/json"},
+      {"Result in XML format", "xml", "xml", "XML", "application/xml"},
+  };
+
+  private byte[] resultTypesBody;
+  private byte[] errorBody;
+
+  @Setup
+  public void setup() throws IOException {
+    var xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n<types>\n");
+    for (var type : RESULT_TYPES) {
+      xml.append("  <type>\n")
+          .append("    <description>").append(type[0]).append("</description>\n")
+          .append("    <fileSuffix>").append(type[1]).append("</fileSuffix>\n")
+          .append("    <identifier>").append(type[2]).append("</identifier>\n")
+          .append("    <label>").append(type[3]).append("</label>\n")
+          .append("    <mediaType>").append(type[4]).append("</mediaType>\n")
+          .append("  </type>\n");
+    }
+    xml.append("</types>\n");
+    resultTypesBody = xml.toString().getBytes("UTF-8");
+    errorBody = ("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
+        "<error>\n  <description>Invalid parameters: \nSequence -&gt; Error in reading " +
+        "the sequence.</description>\n</error>\n").getBytes("UTF-8");
+  }
+
+  @Benchmark
+  public Collection<ResultType> resultTypesPull() throws IOException {
+    return XMLProcessor.processResultTypesBody(new ByteArrayInputStream(resultTypesBody));
+  }
+
+  @Benchmark
+  public Collection<ResultType> resultTypesDom() throws IOException {
+    return DomXMLProcessor.processResultTypesBody(new ByteArrayInputStream(resultTypesBody));
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Collection<ResultType> resultTypesPullConcurrent() throws IOException {
+    return XMLProcessor.processResultTypesBody(new ByteArrayInputStream(resultTypesBody));
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Collection<ResultType> resultTypesDomConcurrent() throws IOException {
+    return DomXMLProcessor.processResultTypesBody(new ByteArrayInputStream(resultTypesBody));
+  }
+
+  @Benchmark
+  public IOException errorPull() {
+    return XMLProcessor.processErrorBody(new ByteArrayInputStream(errorBody));
+  }
+
+  @Benchmark
+  public IOException errorDom() {
+    return DomXMLProcessor.processErrorBody(new ByteArrayInputStream(errorBody));
+  }
+}
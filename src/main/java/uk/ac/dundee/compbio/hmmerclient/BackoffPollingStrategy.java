@@ -0,0 +1,106 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import uk.ac.dundee.compbio.hmmerclient.PhmmerClient.Status;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static uk.ac.dundee.compbio.hmmerclient.ExceptionUtils.newIAE;
+
+/**
+ * Exponential backoff with jitter. The delay grows while the status stays the
+ * same, is reset to a short re-check when the job starts running and is never
+ * longer than a fraction of the time the job has been watched, so a job that
+ * finishes shortly after a poll is not kept waiting for a long fixed sleep.
+ */
+public final class BackoffPollingStrategy implements PollingStrategy {
+
+  public static final class Builder {
+    private long initialDelayMillis = 1000;
+    private long runningDelayMillis = 500;
+    private long maxDelayMillis = 60_000;
+    private double multiplier = 1.5;
+    private double jitter = 0.5;
+    private double elapsedFraction = 0.25;
+
+    public Builder initialDelayMillis(long initialDelayMillis) {
+      if (initialDelayMillis <= 0)
+        throw newIAE("initialDelayMillis must be greater than 0");
+      this.initialDelayMillis = initialDelayMillis;
+      return this;
+    }
+
+    public Builder runningDelayMillis(long runningDelayMillis) {
+      if (runningDelayMillis <= 0)
+        throw newIAE("runningDelayMillis must be greater than 0");
+      this.runningDelayMillis = runningDelayMillis;
+      return this;
+    }
+
+    public Builder maxDelayMillis(long maxDelayMillis) {
+      if (maxDelayMillis <= 0)
+        throw newIAE("maxDelayMillis must be greater than 0");
+      this.maxDelayMillis = maxDelayMillis;
+      return this;
+    }
+
+    public Builder multiplier(double multiplier) {
+      if (multiplier < 1)
+        throw newIAE("multiplier must be greater or equal to 1");
+      this.multiplier = multiplier;
+      return this;
+    }
+
+    public Builder jitter(double jitter) {
+      if (jitter < 0 || jitter > 1)
+        throw newIAE("jitter must be between 0 and 1");
+      this.jitter = jitter;
+      return this;
+    }
+
+    public Builder elapsedFraction(double elapsedFraction) {
+      if (elapsedFraction <= 0)
+        throw newIAE("elapsedFraction must be greater than 0");
+      this.elapsedFraction = elapsedFraction;
+      return this;
+    }
+
+    public BackoffPollingStrategy build() {
+      if (initialDelayMillis > maxDelayMillis || runningDelayMillis > maxDelayMillis)
+        throw newIAE("initial delays must not exceed maxDelayMillis");
+      return new BackoffPollingStrategy(this);
+    }
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  private final long initialDelayMillis;
+  private final long runningDelayMillis;
+  private final long maxDelayMillis;
+  private final double multiplier;
+  private final double jitter;
+  private final double elapsedFraction;
+
+  private BackoffPollingStrategy(Builder builder) {
+    initialDelayMillis = builder.initialDelayMillis;
+    runningDelayMillis = builder.runningDelayMillis;
+    maxDelayMillis = builder.maxDelayMillis;
+    multiplier = builder.multiplier;
+    jitter = builder.jitter;
+    elapsedFraction = builder.elapsedFraction;
+  }
+
+  @Override
+  public long nextDelayMillis(
+      Status previous, Status current, int unchangedPolls, long elapsedMillis
+  ) {
+    long base = current == Status.RUNNING ? runningDelayMillis : initialDelayMillis;
+    double delay = base * Math.pow(multiplier, unchangedPolls);
+    delay = Math.min(delay, maxDelayMillis);
+    delay = Math.min(delay, Math.max(base, elapsedMillis * elapsedFraction));
+    // remove up to jitter of the delay so polls of jobs submitted together drift apart
+    delay -= delay * jitter * ThreadLocalRandom.current().nextDouble();
+    return Math.max(1, Math.round(delay));
+  }
+}
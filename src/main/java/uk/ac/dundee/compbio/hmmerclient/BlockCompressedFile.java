@@ -0,0 +1,242 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static java.lang.String.format;
+
+/**
+ * Random access to a result stored as BGZF, the blocked gzip layout written
+ * by {@link PhmmerClient#downloadCompressedResult}. Opening the file reads
+ * only the block headers; streams decompress one 64 KiB block at a time
+ * starting from any uncompressed offset, so a result can be parsed without
+ * ever being stored uncompressed. Streams from the same file may be read
+ * concurrently.
+ */
+public final class BlockCompressedFile implements Closeable {
+  private final Path file;
+  private final FileChannel channel;
+  // file offset of every block, followed by the file size
+  private final long[] blockOffsets;
+  // uncompressed offset of every block, followed by the uncompressed size
+  private final long[] dataOffsets;
+
+  private BlockCompressedFile(Path file, FileChannel channel, long[] blockOffsets,
+      long[] dataOffsets) {
+    this.file = file;
+    this.channel = channel;
+    this.blockOffsets = blockOffsets;
+    this.dataOffsets = dataOffsets;
+  }
+
+  public static BlockCompressedFile open(Path file) throws IOException {
+    var channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      long size = channel.size();
+      var blockOffsets = new long[64];
+      var dataOffsets = new long[64];
+      int blocks = 0;
+      long position = 0;
+      long dataSize = 0;
+      var header = ByteBuffer.allocate(BlockCompressedOutputStream.HEADER_LENGTH);
+      var isize = ByteBuffer.allocate(4);
+      while (position < size) {
+        int blockSize = readBlockSize(channel, position, header, file);
+        readFully(channel, position + blockSize - 4, isize.clear(), file);
+        if (blocks + 1 >= blockOffsets.length) {
+          blockOffsets = Arrays.copyOf(blockOffsets, blockOffsets.length * 2);
+          dataOffsets = Arrays.copyOf(dataOffsets, dataOffsets.length * 2);
+        }
+        blockOffsets[blocks] = position;
+        dataOffsets[blocks] = dataSize;
+        blocks++;
+        position += blockSize;
+        dataSize += getInt(isize.array(), 0) & 0xffffffffL;
+      }
+      blockOffsets[blocks] = position;
+      dataOffsets[blocks] = dataSize;
+      return new BlockCompressedFile(file, channel,
+          Arrays.copyOf(blockOffsets, blocks + 1), Arrays.copyOf(dataOffsets, blocks + 1));
+    }
+    catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /*
+   * Reads the block header at the position and returns the size of the
+   * whole block.
+   */
+  private static int readBlockSize(FileChannel channel, long position, ByteBuffer header, Path file)
+      throws IOException {
+    readFully(channel, position, header.clear(), file);
+    var bytes = header.array();
+    if (bytes[0] != 0x1f || bytes[1] != (byte) 0x8b || bytes[2] != 8 || (bytes[3] & 4) == 0)
+      throw new IOException(format("%s is not BGZF compressed at offset %d", file, position));
+    int extraLength = getShort(bytes, 10);
+    if (extraLength == 6 && bytes[12] == 'B' && bytes[13] == 'C' && getShort(bytes, 14) == 2)
+      return getShort(bytes, 16) + 1;
+    // the BC subfield is not first, search all of them
+    var extra = ByteBuffer.allocate(extraLength);
+    readFully(channel, position + 12, extra, file);
+    var extraBytes = extra.array();
+    for (int i = 0; i + 4 <= extraLength; i += 4 + getShort(extraBytes, i + 2)) {
+      if (extraBytes[i] == 'B' && extraBytes[i + 1] == 'C' && getShort(extraBytes, i + 2) == 2)
+        return getShort(extraBytes, i + 4) + 1;
+    }
+    throw new IOException(format("missing BGZF block size in %s at offset %d", file, position));
+  }
+
+  private static void readFully(FileChannel channel, long position, ByteBuffer buffer, Path file)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0)
+        throw new IOException(format("unexpected end of %s", file));
+    }
+  }
+
+  private static int getShort(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8;
+  }
+
+  private static int getInt(byte[] bytes, int offset) {
+    return getShort(bytes, offset) | getShort(bytes, offset + 2) << 16;
+  }
+
+  public Path getFile() {
+    return file;
+  }
+
+  /** Size of the data when uncompressed. */
+  public long getUncompressedSize() {
+    return dataOffsets[dataOffsets.length - 1];
+  }
+
+  public InputStream newInputStream() {
+    return newInputStream(0);
+  }
+
+  /**
+   * Returns a stream of the uncompressed data starting at the given offset.
+   */
+  public InputStream newInputStream(long offset) {
+    if (offset < 0 || offset > getUncompressedSize())
+      throw ExceptionUtils.newIAE(format("offset %d out of range", offset));
+    int index = Arrays.binarySearch(dataOffsets, offset);
+    if (index < 0)
+      index = -index - 2;
+    return new BlockInputStream(index, (int) (offset - dataOffsets[index]));
+  }
+
+  private final class BlockInputStream extends InputStream {
+    private int nextBlock;
+    private byte[] data = new byte[0];
+    private int position = 0;
+    private int limit = 0;
+    private ByteBuffer compressed = ByteBuffer.allocate(0);
+    private final Inflater inflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+    private boolean closed = false;
+
+    BlockInputStream(int block, int skip) {
+      nextBlock = block;
+      position = skip;
+      limit = -1;
+    }
+
+    private boolean fill() throws IOException {
+      if (closed)
+        throw new IOException("stream closed");
+      while (position >= limit) {
+        int skip = limit < 0 ? position : 0;
+        if (nextBlock >= blockOffsets.length - 1)
+          return false;
+        readBlock(nextBlock++);
+        position = skip;
+      }
+      return true;
+    }
+
+    private void readBlock(int index) throws IOException {
+      long offset = blockOffsets[index];
+      int blockSize = (int) (blockOffsets[index + 1] - offset);
+      int dataSize = (int) (dataOffsets[index + 1] - dataOffsets[index]);
+      if (compressed.capacity() < blockSize)
+        compressed = ByteBuffer.allocate(blockSize);
+      compressed.clear().limit(blockSize);
+      readFully(channel, offset, compressed, file);
+      var bytes = compressed.array();
+      int start = 12 + getShort(bytes, 10);
+      if (data.length < dataSize)
+        data = new byte[dataSize];
+      inflater.reset();
+      inflater.setInput(bytes, start, blockSize - BlockCompressedOutputStream.TRAILER_LENGTH - start);
+      try {
+        int n = 0;
+        while (n < dataSize && !inflater.finished()) {
+          int inflated = inflater.inflate(data, n, dataSize - n);
+          if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+            break;
+          n += inflated;
+        }
+        if (n != dataSize)
+          throw new IOException(format("corrupted block in %s at offset %d", file, offset));
+      }
+      catch (DataFormatException e) {
+        throw new IOException(format("corrupted block in %s at offset %d", file, offset), e);
+      }
+      crc.reset();
+      crc.update(data, 0, dataSize);
+      if ((int) crc.getValue() != getInt(bytes, blockSize - 8))
+        throw new IOException(format("checksum mismatch in %s at offset %d", file, offset));
+      limit = dataSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!fill())
+        return -1;
+      return data[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0)
+        return 0;
+      if (!fill())
+        return -1;
+      int n = Math.min(len, limit - position);
+      System.arraycopy(data, position, b, off, n);
+      position += n;
+      return n;
+    }
+
+    @Override
+    public int available() {
+      return Math.max(0, limit - position);
+    }
+
+    @Override
+    public void close() {
+      if (!closed) {
+        closed = true;
+        inflater.end();
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
@@ -0,0 +1,120 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes data as a sequence of independently compressed gzip members of at
+ * most 64 KiB each, in the BGZF layout used by samtools and tabix: every
+ * member records its compressed size in a "BC" extra field so a reader can
+ * jump from block to block. The output is a valid gzip file.
+ *
+ * @see BlockCompressedFile
+ */
+final class BlockCompressedOutputStream extends OutputStream {
+  // leaves room for the deflate overhead of incompressible data within 64 KiB
+  static final int MAX_BLOCK_DATA = 0xff00;
+  static final int HEADER_LENGTH = 18;
+  static final int TRAILER_LENGTH = 8;
+
+  private final OutputStream out;
+  private final byte[] buffer = new byte[MAX_BLOCK_DATA];
+  private int count = 0;
+  private final byte[] block = new byte[0x10000];
+  private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+  private final CRC32 crc = new CRC32();
+  private boolean closed = false;
+
+  BlockCompressedOutputStream(OutputStream out) {
+    this.out = out;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    buffer[count++] = (byte) b;
+    if (count == buffer.length)
+      writeBlock();
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      int n = Math.min(len, buffer.length - count);
+      System.arraycopy(b, off, buffer, count, n);
+      count += n;
+      off += n;
+      len -= n;
+      if (count == buffer.length)
+        writeBlock();
+    }
+  }
+
+  private void writeBlock() throws IOException {
+    deflater.reset();
+    deflater.setInput(buffer, 0, count);
+    deflater.finish();
+    int end = HEADER_LENGTH;
+    int limit = block.length - TRAILER_LENGTH;
+    while (!deflater.finished()) {
+      if (end == limit)
+        throw new IOException("compressed block exceeds 64 KiB");
+      end += deflater.deflate(block, end, limit - end);
+    }
+    crc.reset();
+    crc.update(buffer, 0, count);
+    int blockSize = end + TRAILER_LENGTH;
+    // gzip magic, deflate, FEXTRA flag, no mtime, unknown OS
+    block[0] = 0x1f;
+    block[1] = (byte) 0x8b;
+    block[2] = 8;
+    block[3] = 4;
+    putInt(block, 4, 0);
+    block[8] = 0;
+    block[9] = (byte) 0xff;
+    // XLEN = 6 followed by the BC subfield holding the block size minus one
+    putShort(block, 10, 6);
+    block[12] = 'B';
+    block[13] = 'C';
+    putShort(block, 14, 2);
+    putShort(block, 16, blockSize - 1);
+    putInt(block, end, (int) crc.getValue());
+    putInt(block, end + 4, count);
+    out.write(block, 0, blockSize);
+    count = 0;
+  }
+
+  private static void putShort(byte[] bytes, int offset, int value) {
+    bytes[offset] = (byte) value;
+    bytes[offset + 1] = (byte) (value >>> 8);
+  }
+
+  private static void putInt(byte[] bytes, int offset, int value) {
+    putShort(bytes, offset, value);
+    putShort(bytes, offset + 2, value >>> 16);
+  }
+
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  /**
+   * Writes the buffered data and the empty block marking the end of file.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed)
+      return;
+    closed = true;
+    try (out) {
+      if (count > 0)
+        writeBlock();
+      writeBlock();
+    }
+    finally {
+      deflater.end();
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import uk.ac.dundee.compbio.hmmerclient.PhmmerClient.Status;
+
+/**
+ * Outcome of one record of a bulk submission. Either the job reached a final
+ * status or the submission or polling failed with an exception.
+ */
+public final class BulkResult {
+
+  private final String header;
+  private final String jobId;
+  private final Status status;
+  private final Throwable exception;
+
+  BulkResult(String header, String jobId, Status status, Throwable exception) {
+    this.header = header;
+    this.jobId = jobId;
+    this.status = status;
+    this.exception = exception;
+  }
+
+  /** First word of the record header. */
+  public String getRecordId() {
+    return FastaRecord.firstWord(header);
+  }
+
+  public String getHeader() {
+    return header;
+  }
+
+  /** Job id or null if the submission failed. */
+  public String getJobId() {
+    return jobId;
+  }
+
+  /** Final job status or null if the job could not be followed to the end. */
+  public Status getStatus() {
+    return status;
+  }
+
+  public Throwable getException() {
+    return exception;
+  }
+
+  public boolean isFinished() {
+    return status == Status.FINISHED;
+  }
+
+  @Override
+  public String toString() {
+    return "BulkResult{" +
+        "header='" + header + '\'' +
+        ", jobId='" + jobId + '\'' +
+        ", status=" + status +
+        ", exception=" + exception +
+        '}';
+  }
+}
@@ -0,0 +1,358 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import uk.ac.dundee.compbio.hmmerclient.PhmmerClient.Status;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static uk.ac.dundee.compbio.hmmerclient.ExceptionUtils.newIAE;
+import static uk.ac.dundee.compbio.hmmerclient.ExceptionUtils.newISE;
+
+/**
+ * Submits every record of a multi-FASTA input as a separate job. Records are
+ * read lazily, at most a fixed number of jobs are in flight at a time and
+ * submissions are throttled by a token bucket to stay within the service's
+ * fair-use limits. Results are streamed in the order the jobs complete.
+ * <p>
+ * With a {@link SequenceValidator} set, records are validated before they
+ * are submitted; invalid ones are reported with an
+ * {@link IllegalArgumentException} without contacting the server. Records
+ * with the same residues are searched once and every one of them is
+ * reported with the job of the first. Once that job has finished, its
+ * outcome is remembered for the most recent {@value #MAX_FINISHED_GROUPS}
+ * distinct sequences, so only a duplicate far down the input is submitted
+ * again.
+ */
+public class BulkSubmitter {
+
+  /** Number of finished distinct sequences whose job is reused by later duplicates. */
+  public static final int MAX_FINISHED_GROUPS = 10_000;
+
+  public static class Builder {
+    private PhmmerClient client;
+    private String email;
+    private PhmmerRequestTemplate template = PhmmerRequest.newBuilder().buildTemplate();
+    private int maxInFlight = 30;
+    private double submissionsPerSecond = 1;
+    private int burst = 1;
+    private SequenceValidator validator = null;
+    private boolean deduplicate = true;
+
+    public Builder client(PhmmerClient client) {
+      this.client = Objects.requireNonNull(client);
+      return this;
+    }
+
+    public Builder email(String email) {
+      this.email = Objects.requireNonNull(email);
+      return this;
+    }
+
+    /**
+     * Sets the search options used for every record. The builder's sequence
+     * is ignored.
+     *
+     * @throws IllegalStateException if the options are invalid
+     */
+    public Builder request(PhmmerRequest.Builder request) {
+      return request(request.buildTemplate());
+    }
+
+    /** Sets the search options used for every record. */
+    public Builder request(PhmmerRequestTemplate template) {
+      this.template = Objects.requireNonNull(template);
+      return this;
+    }
+
+    public Builder maxInFlight(int maxInFlight) {
+      if (maxInFlight < 1)
+        throw newIAE("maxInFlight must be at least 1");
+      this.maxInFlight = maxInFlight;
+      return this;
+    }
+
+    public Builder submissionsPerSecond(double submissionsPerSecond) {
+      if (submissionsPerSecond <= 0)
+        throw newIAE("submissionsPerSecond must be greater than 0");
+      this.submissionsPerSecond = submissionsPerSecond;
+      return this;
+    }
+
+    public Builder burst(int burst) {
+      if (burst < 1)
+        throw newIAE("burst must be at least 1");
+      this.burst = burst;
+      return this;
+    }
+
+    /** Sets the validator checking each record; by default all records are submitted. */
+    public Builder validator(SequenceValidator validator) {
+      this.validator = validator;
+      return this;
+    }
+
+    /** Sets whether records with identical residues share a single job. */
+    public Builder deduplicate(boolean deduplicate) {
+      this.deduplicate = deduplicate;
+      return this;
+    }
+
+    public BulkSubmitter build() {
+      if (client == null)
+        throw newISE("client not set");
+      if (email == null)
+        throw newISE("email not set");
+      return new BulkSubmitter(this);
+    }
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  private final PhmmerClient client;
+  private final String email;
+  private final PhmmerRequestTemplate template;
+  private final int maxInFlight;
+  private final double submissionsPerSecond;
+  private final int burst;
+  private final SequenceValidator validator;
+  private final boolean deduplicate;
+
+  private BulkSubmitter(Builder builder) {
+    client = builder.client;
+    email = builder.email;
+    template = builder.template;
+    maxInFlight = builder.maxInFlight;
+    submissionsPerSecond = builder.submissionsPerSecond;
+    burst = builder.burst;
+    validator = builder.validator;
+    deduplicate = builder.deduplicate;
+  }
+
+  public Stream<BulkResult> submit(Path fasta) throws IOException {
+    return submit(Files.newBufferedReader(fasta));
+  }
+
+  /**
+   * Starts submitting the records in the background and returns a stream of
+   * results in completion order. Closing the stream stops further
+   * submissions; jobs already submitted keep running on the server.
+   */
+  public Stream<BulkResult> submit(Reader fasta) {
+    var run = new Run(new FastaReader(fasta));
+    run.start();
+    return StreamSupport.stream(run, false).onClose(run::cancel);
+  }
+
+  private static final BulkResult END = new BulkResult("", null, null, null);
+
+  /*
+   * Records sharing one job. Headers added before the job finishes are
+   * reported when it does, later ones straight away.
+   */
+  private static final class Group {
+    final String key;
+    private List<String> headers = new ArrayList<>(1);
+    private String jobId;
+    private Status status;
+    private Throwable exception;
+
+    Group(String key) {
+      this.key = key;
+    }
+
+    synchronized boolean add(String header) {
+      if (headers == null)
+        return false;
+      headers.add(header);
+      return true;
+    }
+
+    synchronized List<String> complete(String jobId, Status status, Throwable exception) {
+      this.jobId = jobId;
+      this.status = status;
+      this.exception = exception;
+      var waiting = headers;
+      headers = null;
+      return waiting;
+    }
+
+    synchronized BulkResult resultFor(String header) {
+      return new BulkResult(header, jobId, status, exception);
+    }
+  }
+
+  private class Run implements Spliterator<BulkResult> {
+    private final FastaReader reader;
+    private final Semaphore inFlight = new Semaphore(maxInFlight);
+    private final TokenBucket rateLimiter = new TokenBucket(submissionsPerSecond, burst);
+    private final BlockingQueue<BulkResult> results = new LinkedBlockingQueue<>();
+    private final Thread dispatcher = new Thread(this::dispatch, "phmmer-bulk-dispatcher");
+    private volatile Exception failure = null;
+    private boolean ended = false;
+    // groups by the hash of their residues: unfinished ones, and the most
+    // recently finished ones in access order
+    private final ConcurrentHashMap<String, Group> groups = new ConcurrentHashMap<>();
+    private final Map<String, Group> finishedGroups = Collections.synchronizedMap(
+        new LinkedHashMap<>(16, 0.75f, true) {
+          private static final long serialVersionUID = 1L;
+
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Group> eldest) {
+            return size() > MAX_FINISHED_GROUPS;
+          }
+        });
+
+    Run(FastaReader reader) {
+      this.reader = reader;
+      dispatcher.setDaemon(true);
+    }
+
+    void start() {
+      dispatcher.start();
+    }
+
+    void cancel() {
+      dispatcher.interrupt();
+    }
+
+    private void dispatch() {
+      try (reader) {
+        FastaRecord record;
+        while ((record = reader.read()) != null) {
+          var header = record.getHeader();
+          try {
+            if (validator != null)
+              validator.validate(record);
+          }
+          catch (IllegalArgumentException e) {
+            results.add(new BulkResult(header, null, null, e));
+            continue;
+          }
+          final Group group;
+          if (deduplicate) {
+            var key = RequestFingerprint.sha256Hex(record.getSequence().toUpperCase(Locale.ROOT));
+            var finished = finishedGroups.get(key);
+            if (finished != null) {
+              results.add(finished.resultFor(header));
+              continue;
+            }
+            group = new Group(key);
+            var existing = groups.putIfAbsent(key, group);
+            if (existing != null) {
+              if (!existing.add(header))
+                results.add(existing.resultFor(header));
+              continue;
+            }
+          }
+          else {
+            group = new Group(null);
+          }
+          group.add(header);
+          inFlight.acquire();
+          rateLimiter.acquire();
+          var phmmerRequest = template.bind(record.toSequenceSource());
+          client.submitAsync(phmmerRequest, email).whenComplete((jobId, submitExc) -> {
+            if (submitExc != null) {
+              finish(group, null, null, unwrap(submitExc));
+              return;
+            }
+            client.awaitCompletion(jobId).whenComplete((status, pollExc) ->
+                finish(group, jobId, status, unwrap(pollExc)));
+          });
+        }
+        // wait until every submitted job has reported back
+        inFlight.acquire(maxInFlight);
+      }
+      catch (InterruptedException e) {
+        // cancelled by closing the stream
+      }
+      catch (IOException | RuntimeException e) {
+        failure = e;
+      }
+      finally {
+        results.add(END);
+      }
+    }
+
+    private void finish(Group group, String jobId, Status status, Throwable exception) {
+      var waiting = group.complete(jobId, status, exception);
+      if (group.key != null) {
+        // remembered before leaving the unfinished map, so duplicates always find it
+        finishedGroups.put(group.key, group);
+        groups.remove(group.key, group);
+      }
+      for (var header : waiting)
+        results.add(new BulkResult(header, jobId, status, exception));
+      inFlight.release();
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super BulkResult> action) {
+      if (ended)
+        return false;
+      final BulkResult result;
+      try {
+        result = results.take();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        cancel();
+        ended = true;
+        return false;
+      }
+      if (result == END) {
+        ended = true;
+        var exc = failure;
+        if (exc instanceof IOException)
+          throw new UncheckedIOException((IOException) exc);
+        if (exc != null)
+          throw (RuntimeException) exc;
+        return false;
+      }
+      action.accept(result);
+      return true;
+    }
+
+    @Override
+    public Spliterator<BulkResult> trySplit() {
+      return null;
+    }
+
+    @Override
+    public long estimateSize() {
+      return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+      return NONNULL;
+    }
+  }
+
+  private static Throwable unwrap(Throwable exc) {
+    if (exc instanceof CompletionException && exc.getCause() != null)
+      return exc.getCause();
+    return exc;
+  }
+}
@@ -0,0 +1,150 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import java.util.concurrent.TimeUnit;
+
+import static uk.ac.dundee.compbio.hmmerclient.ExceptionUtils.newIAE;
+
+/**
+ * Holds back submissions while the server shows signs of overload. The
+ * response or connection failure of every submission is reported to the
+ * breaker; overload responses (429, 502, 503 and 504) and connection
+ * failures count as failures, anything else resets the count. Status and
+ * result requests are not reported, so polling cannot close the breaker.
+ * <p>
+ * After the threshold of consecutive failures the breaker opens and
+ * submissions wait for the open period, which doubles with every repeated
+ * opening up to a maximum. Then a single trial submission is let through
+ * and its outcome closes or re-opens the breaker. Independently of the
+ * state, a Retry-After sent with an overload response holds submissions
+ * until it passes.
+ */
+public final class CircuitBreaker {
+
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  public static final class Builder {
+    private int failureThreshold = 5;
+    private long openDurationMillis = 5_000;
+    private long maxOpenDurationMillis = 120_000;
+
+    public Builder failureThreshold(int failureThreshold) {
+      if (failureThreshold < 1)
+        throw newIAE("failureThreshold must be at least 1");
+      this.failureThreshold = failureThreshold;
+      return this;
+    }
+
+    public Builder openDurationMillis(long openDurationMillis) {
+      if (openDurationMillis <= 0)
+        throw newIAE("openDurationMillis must be greater than 0");
+      this.openDurationMillis = openDurationMillis;
+      return this;
+    }
+
+    public Builder maxOpenDurationMillis(long maxOpenDurationMillis) {
+      if (maxOpenDurationMillis <= 0)
+        throw newIAE("maxOpenDurationMillis must be greater than 0");
+      this.maxOpenDurationMillis = maxOpenDurationMillis;
+      return this;
+    }
+
+    public CircuitBreaker build() {
+      if (openDurationMillis > maxOpenDurationMillis)
+        throw newIAE("openDurationMillis must not exceed maxOpenDurationMillis");
+      return new CircuitBreaker(this);
+    }
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  private final int failureThreshold;
+  private final long openDurationNanos;
+  private final long maxOpenDurationNanos;
+
+  private State state = State.CLOSED;
+  private int failures = 0;
+  private int openings = 0;
+  private long openUntilNanos;
+  private long holdUntilNanos = System.nanoTime();
+  private boolean trialInProgress = false;
+  private long trialStartNanos;
+
+  private CircuitBreaker(Builder builder) {
+    failureThreshold = builder.failureThreshold;
+    openDurationNanos = TimeUnit.MILLISECONDS.toNanos(builder.openDurationMillis);
+    maxOpenDurationNanos = TimeUnit.MILLISECONDS.toNanos(builder.maxOpenDurationMillis);
+  }
+
+  public synchronized State getState() {
+    if (state == State.OPEN && System.nanoTime() - openUntilNanos >= 0)
+      return State.HALF_OPEN;
+    return state;
+  }
+
+  static boolean isOverload(int statusCode) {
+    return statusCode == 429 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+  }
+
+  /**
+   * Waits until a submission may be sent.
+   */
+  synchronized void acquire() throws InterruptedException {
+    while (true) {
+      long now = System.nanoTime();
+      long waitNanos = holdUntilNanos - now;
+      if (state == State.OPEN)
+        waitNanos = Math.max(waitNanos, openUntilNanos - now);
+      if (waitNanos > 0) {
+        TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+        continue;
+      }
+      if (state == State.OPEN) {
+        state = State.HALF_OPEN;
+        trialInProgress = false;
+      }
+      if (state == State.HALF_OPEN) {
+        // a trial whose outcome was never reported is given up after the open period
+        long trialNanos = now - trialStartNanos;
+        if (trialInProgress && trialNanos < openDurationNanos) {
+          TimeUnit.NANOSECONDS.timedWait(this, openDurationNanos - trialNanos);
+          continue;
+        }
+        trialInProgress = true;
+        trialStartNanos = now;
+      }
+      return;
+    }
+  }
+
+  synchronized void recordSuccess() {
+    if (state != State.CLOSED)
+      notifyAll();
+    state = State.CLOSED;
+    failures = 0;
+    openings = 0;
+    trialInProgress = false;
+  }
+
+  /**
+   * @param retryAfterNanos delay requested by the server or a non-positive
+   *     value if none
+   */
+  synchronized void recordFailure(long retryAfterNanos) {
+    long now = System.nanoTime();
+    if (retryAfterNanos > 0 && now + retryAfterNanos - holdUntilNanos > 0)
+      holdUntilNanos = now + retryAfterNanos;
+    failures++;
+    if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+      long openNanos = Math.min(openDurationNanos << Math.min(openings, 20), maxOpenDurationNanos);
+      openings++;
+      state = State.OPEN;
+      openUntilNanos = now + Math.max(openNanos, retryAfterNanos);
+      trialInProgress = false;
+      notifyAll();
+    }
+  }
+}
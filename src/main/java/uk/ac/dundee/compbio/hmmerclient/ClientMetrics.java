@@ -0,0 +1,39 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import uk.ac.dundee.compbio.hmmerclient.PhmmerClient.Status;
+
+/**
+ * Receives timings and counters from {@link PhmmerClient}. Methods are called
+ * on the threads doing the requests, so implementations must be thread-safe
+ * and cheap. All methods do nothing by default.
+ */
+public interface ClientMetrics {
+
+  enum Operation {
+    SUBMIT, GET_STATUS, GET_RESULT_TYPES, GET_RESULT
+  }
+
+  ClientMetrics NOOP = new ClientMetrics() {};
+
+  /**
+   * Called after every HTTP request.
+   *
+   * @param durationNanos time until the response body was handled; for
+   *     streamed results only until the stream was handed to the caller
+   * @param statusCode HTTP status code or -1 if no response was received
+   */
+  default void recordRequest(Operation operation, long durationNanos, int statusCode) {}
+
+  /** Called with the number of response body bytes read by a request. */
+  default void recordBytesDownloaded(Operation operation, long bytes) {}
+
+  /**
+   * Called when a job watched by the status poller changes its status.
+   *
+   * @param previous previous status, null for the first status seen
+   * @param nanosInPrevious time spent in the previous status or since the
+   *     job started being watched
+   */
+  default void recordStatusTransition(
+      String jobId, Status previous, Status current, long nanosInPrevious) {}
+}
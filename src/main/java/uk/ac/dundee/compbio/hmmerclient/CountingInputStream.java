@@ -0,0 +1,66 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts bytes read from a response body and reports them to the metrics
+ * once, when the stream reaches its end or is closed.
+ */
+final class CountingInputStream extends FilterInputStream {
+  private final ClientMetrics metrics;
+  private final ClientMetrics.Operation operation;
+  private long count = 0;
+  private boolean reported = false;
+
+  CountingInputStream(InputStream in, ClientMetrics metrics, ClientMetrics.Operation operation) {
+    super(in);
+    this.metrics = metrics;
+    this.operation = operation;
+  }
+
+  @Override
+  public int read() throws IOException {
+    int b = in.read();
+    if (b >= 0)
+      count++;
+    else
+      report();
+    return b;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    int n = in.read(b, off, len);
+    if (n > 0)
+      count += n;
+    else if (n < 0)
+      report();
+    return n;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    long skipped = in.skip(n);
+    count += skipped;
+    return skipped;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      in.close();
+    }
+    finally {
+      report();
+    }
+  }
+
+  private void report() {
+    if (reported)
+      return;
+    reported = true;
+    metrics.recordBytesDownloaded(operation, count);
+  }
+}
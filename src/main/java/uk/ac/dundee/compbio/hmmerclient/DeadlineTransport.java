@@ -0,0 +1,106 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.lang.String.format;
+import static uk.ac.dundee.compbio.hmmerclient.ExceptionUtils.newIAE;
+
+/**
+ * Transport giving up on a request that has not returned within a fixed
+ * time. The request is sent on the I/O pool while the caller waits; when
+ * the deadline passes, the response body opened so far is closed and the
+ * caller gets a {@link SocketTimeoutException}. A request still waiting
+ * for the server is left to finish on its pool thread and its response is
+ * discarded.
+ */
+final class DeadlineTransport implements HttpTransport {
+  private final HttpTransport transport;
+  private final long timeoutMillis;
+
+  DeadlineTransport(HttpTransport transport, long timeoutMillis) {
+    if (timeoutMillis < 1)
+      throw newIAE("timeoutMillis must be at least 1");
+    this.transport = transport;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  long getTimeoutMillis() {
+    return timeoutMillis;
+  }
+
+  @Override
+  public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+      throws IOException {
+    var body = new AtomicReference<InputStream>();
+    HttpResponse.BodyHandler<T> tracking = (info, stream) -> {
+      body.set(stream);
+      return handler.apply(info, stream);
+    };
+    var future = new CompletableFuture<HttpResponse<T>>();
+    SharedExecutors.io().execute(() -> {
+      try {
+        future.complete(transport.send(request, tracking));
+      }
+      catch (Throwable e) {
+        future.completeExceptionally(e);
+      }
+    });
+    try {
+      return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+    catch (TimeoutException e) {
+      abandon(future, body);
+      throw new SocketTimeoutException(format("no response within %d ms", timeoutMillis));
+    }
+    catch (InterruptedException e) {
+      abandon(future, body);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while waiting for the response");
+    }
+    catch (ExecutionException e) {
+      var cause = e.getCause();
+      if (cause instanceof IOException)
+        throw (IOException) cause;
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      if (cause instanceof Error)
+        throw (Error) cause;
+      throw new IOException(cause);
+    }
+  }
+
+  /*
+   * Closes the body being read, if any, and the body of a response that
+   * arrives after the caller has given up.
+   */
+  private static void abandon(
+      CompletableFuture<? extends HttpResponse<?>> future, AtomicReference<InputStream> body) {
+    closeQuietly(body.get());
+    future.thenAccept(response -> {
+      if (response.body() instanceof Closeable)
+        closeQuietly((Closeable) response.body());
+    });
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    if (closeable == null)
+      return;
+    try {
+      closeable.close();
+    }
+    catch (IOException ignored) {
+    }
+  }
+}
@@ -0,0 +1,438 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import uk.ac.dundee.compbio.hmmerclient.PhmmerClient.Status;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static uk.ac.dundee.compbio.hmmerclient.ExceptionUtils.newIAE;
+import static uk.ac.dundee.compbio.hmmerclient.ExceptionUtils.newISE;
+
+/**
+ * Spreads jobs across several search backends, e.g. the EBI service and
+ * local mirrors. Each submission goes to a healthy endpoint picked by
+ * weight or by the number of unfinished jobs, and the endpoint owning each
+ * job id serves its status and result calls.
+ * <p>
+ * Job ids returned by the router name the endpoint, e.g.
+ * {@code router:1:hmmer3_phmmer-12345} for a job of the second endpoint, so
+ * endpoints handing out the same ids do not clash. Ids of jobs submitted to
+ * an endpoint directly are looked up on every endpoint the first time they
+ * are seen, and the endpoint found is remembered for the most recent
+ * {@value #MAX_FOREIGN_ROUTES} of them.
+ * <p>
+ * A job counts as outstanding on its endpoint until the router sees it
+ * finish, i.e. until its status, completion or result is requested through
+ * the router. The router does not poll jobs on its own, so jobs whose
+ * progress is never checked through it keep counting.
+ * <p>
+ * Endpoints are probed with {@link SearchBackend#testEndpoint()}
+ * periodically and whenever a submission to them fails. Unhealthy
+ * endpoints receive no new jobs until a probe succeeds. A failed
+ * submission is moved to another endpoint if its sequence can be sent
+ * again, i.e. the request was bound to a {@link SequenceSource}.
+ */
+public final class EndpointRouter implements SearchBackend, Closeable {
+
+  public enum Strategy {
+    /** Smooth weighted round robin. */
+    WEIGHTED,
+    /** Endpoint with the fewest unfinished jobs relative to its weight. */
+    LEAST_OUTSTANDING
+  }
+
+  public static final class Endpoint {
+    private final SearchBackend backend;
+    private final int weight;
+    private final int index;
+    private volatile boolean healthy = true;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    // running weight of the smooth round robin, guarded by the router
+    private int currentWeight = 0;
+
+    private Endpoint(SearchBackend backend, int weight, int index) {
+      this.backend = backend;
+      this.weight = weight;
+      this.index = index;
+    }
+
+    public SearchBackend getBackend() {
+      return backend;
+    }
+
+    public int getWeight() {
+      return weight;
+    }
+
+    public boolean isHealthy() {
+      return healthy;
+    }
+
+    /**
+     * Number of jobs submitted to the endpoint through the router that
+     * have not been seen to finish.
+     */
+    public int getOutstandingJobs() {
+      return outstanding.get();
+    }
+
+    @Override
+    public String toString() {
+      return "Endpoint{" +
+          "backend=" + backend +
+          ", weight=" + weight +
+          ", healthy=" + healthy +
+          ", outstanding=" + outstanding +
+          '}';
+    }
+  }
+
+  public static final class Builder {
+    private final List<Endpoint> endpoints = new ArrayList<>();
+    private Strategy strategy = Strategy.LEAST_OUTSTANDING;
+    private long healthCheckIntervalMillis = 30_000;
+
+    private Builder() {}
+
+    public Builder endpoint(URI url, int weight) {
+      return endpoint(new PhmmerClient(url), weight);
+    }
+
+    public Builder endpoint(SearchBackend backend, int weight) {
+      if (weight < 1)
+        throw newIAE("weight must be at least 1");
+      endpoints.add(new Endpoint(Objects.requireNonNull(backend), weight, endpoints.size()));
+      return this;
+    }
+
+    public Builder strategy(Strategy strategy) {
+      this.strategy = Objects.requireNonNull(strategy);
+      return this;
+    }
+
+    /** Interval between health probes of every endpoint; 0 disables them. */
+    public Builder healthCheckIntervalMillis(long healthCheckIntervalMillis) {
+      if (healthCheckIntervalMillis < 0)
+        throw newIAE("healthCheckIntervalMillis must not be negative");
+      this.healthCheckIntervalMillis = healthCheckIntervalMillis;
+      return this;
+    }
+
+    public EndpointRouter build() {
+      if (endpoints.isEmpty())
+        throw newISE("no endpoints");
+      return new EndpointRouter(this);
+    }
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  private static final String ID_PREFIX = "router:";
+  private static final String ID_SEPARATOR = ":";
+  /** Number of jobs submitted to endpoints directly whose endpoint is remembered. */
+  public static final int MAX_FOREIGN_ROUTES = 1024;
+
+  /*
+   * Endpoint owning a job and the job's id on that endpoint. The router id
+   * is null for jobs submitted to the endpoint directly.
+   */
+  private static final class Route {
+    final Endpoint endpoint;
+    final String jobId;
+    final String routerId;
+
+    Route(Endpoint endpoint, String jobId, String routerId) {
+      this.endpoint = endpoint;
+      this.jobId = jobId;
+      this.routerId = routerId;
+    }
+  }
+
+  private final List<Endpoint> endpoints;
+  private final Strategy strategy;
+  // router ids of the jobs counted as outstanding on their endpoint
+  private final Set<String> unfinishedJobs = ConcurrentHashMap.newKeySet();
+  // endpoints of jobs submitted to them directly, least recently used first
+  private final Map<String, Endpoint> foreignJobs = Collections.synchronizedMap(
+      new LinkedHashMap<>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Endpoint> eldest) {
+          return size() > MAX_FOREIGN_ROUTES;
+        }
+      });
+  private final ScheduledFuture<?> healthCheck;
+
+  private EndpointRouter(Builder builder) {
+    endpoints = List.copyOf(builder.endpoints);
+    strategy = builder.strategy;
+    long interval = builder.healthCheckIntervalMillis;
+    // a probe waits for every endpoint to answer, too long to hold a scheduler thread
+    healthCheck = interval == 0 ? null : SharedExecutors.scheduler().scheduleWithFixedDelay(
+        () -> SharedExecutors.io().execute(this::checkHealth),
+        interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  public List<Endpoint> getEndpoints() {
+    return endpoints;
+  }
+
+  public Strategy getStrategy() {
+    return strategy;
+  }
+
+  /** Probes every endpoint now and updates its health. */
+  public void checkHealth() {
+    for (var endpoint : endpoints)
+      probe(endpoint);
+  }
+
+  private boolean probe(Endpoint endpoint) {
+    boolean healthy;
+    try {
+      healthy = endpoint.backend.testEndpoint();
+    }
+    catch (RuntimeException e) {
+      healthy = false;
+    }
+    endpoint.healthy = healthy;
+    return healthy;
+  }
+
+  /** Returns whether any endpoint is healthy. */
+  @Override
+  public boolean testEndpoint() {
+    for (var endpoint : endpoints) {
+      if (endpoint.healthy)
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Submits the request to the endpoint chosen by the routing strategy.
+   * When no endpoint is known to be healthy, all of them are tried.
+   */
+  @Override
+  public String submit(PhmmerRequest request, String email) throws IOException {
+    boolean replayable = request.getSequenceSource() != null;
+    var tried = new ArrayList<Endpoint>(endpoints.size());
+    while (true) {
+      var endpoint = choose(tried);
+      tried.add(endpoint);
+      final String jobId;
+      try {
+        jobId = endpoint.backend.submit(request, email);
+      }
+      catch (IOException | RuntimeException e) {
+        endpoint.outstanding.decrementAndGet();
+        // move on only if the endpoint is down rather than the request rejected
+        if (!replayable || tried.size() == endpoints.size() || probe(endpoint))
+          throw e;
+        continue;
+      }
+      var routerId = ID_PREFIX + endpoint.index + ID_SEPARATOR + jobId;
+      unfinishedJobs.add(routerId);
+      return routerId;
+    }
+  }
+
+  /* Stops counting a routed job as outstanding the first time it is seen finished. */
+  private void finished(Route route) {
+    if (route.routerId != null && unfinishedJobs.remove(route.routerId))
+      route.endpoint.outstanding.decrementAndGet();
+  }
+
+  private Status observe(Route route, Status status) {
+    if (status.isTerminal())
+      finished(route);
+    return status;
+  }
+
+  /*
+   * Picks the endpoint for the next job and counts the job as outstanding
+   * right away so that concurrent submissions see it.
+   */
+  private synchronized Endpoint choose(List<Endpoint> excluded) {
+    var endpoint = pick(excluded);
+    endpoint.outstanding.incrementAndGet();
+    return endpoint;
+  }
+
+  private Endpoint pick(List<Endpoint> excluded) {
+    var candidates = new ArrayList<Endpoint>(endpoints.size());
+    for (var endpoint : endpoints) {
+      if (endpoint.healthy && !excluded.contains(endpoint))
+        candidates.add(endpoint);
+    }
+    if (candidates.isEmpty()) {
+      for (var endpoint : endpoints) {
+        if (!excluded.contains(endpoint))
+          candidates.add(endpoint);
+      }
+    }
+    if (strategy == Strategy.LEAST_OUTSTANDING) {
+      Endpoint best = null;
+      for (var endpoint : candidates) {
+        if (best == null || (long) endpoint.outstanding.get() * best.weight <
+            (long) best.outstanding.get() * endpoint.weight)
+          best = endpoint;
+      }
+      return best;
+    }
+    Endpoint best = null;
+    int total = 0;
+    for (var endpoint : candidates) {
+      endpoint.currentWeight += endpoint.weight;
+      total += endpoint.weight;
+      if (best == null || endpoint.currentWeight > best.currentWeight)
+        best = endpoint;
+    }
+    best.currentWeight -= total;
+    return best;
+  }
+
+  /**
+   * Returns the endpoint owning the job. Jobs not submitted through this
+   * router are looked up on every endpoint unless their endpoint is
+   * remembered.
+   *
+   * @return the endpoint or null if no endpoint knows the job
+   */
+  public Endpoint getEndpoint(String jobId) throws IOException {
+    var route = route(jobId);
+    return route != null ? route.endpoint : null;
+  }
+
+  /* Resolves an id returned by this router without contacting the endpoints. */
+  private Route parse(String jobId) {
+    if (!jobId.startsWith(ID_PREFIX))
+      return null;
+    int separator = jobId.indexOf(ID_SEPARATOR, ID_PREFIX.length());
+    if (separator <= ID_PREFIX.length())
+      return null;
+    final int index;
+    try {
+      index = Integer.parseInt(jobId.substring(ID_PREFIX.length(), separator));
+    }
+    catch (NumberFormatException e) {
+      return null;
+    }
+    if (index < 0 || index >= endpoints.size())
+      return null;
+    return new Route(endpoints.get(index), jobId.substring(separator + 1), jobId);
+  }
+
+  private Route route(String jobId) throws IOException {
+    var route = parse(jobId);
+    if (route != null)
+      return route;
+    var endpoint = foreignJobs.get(jobId);
+    if (endpoint != null)
+      return new Route(endpoint, jobId, null);
+    IOException failure = null;
+    for (var candidate : endpoints) {
+      final Status status;
+      try {
+        status = candidate.backend.getStatus(jobId);
+      }
+      catch (IOException e) {
+        failure = e;
+        continue;
+      }
+      if (status == Status.NOT_FOUND)
+        continue;
+      foreignJobs.put(jobId, candidate);
+      return new Route(candidate, jobId, null);
+    }
+    if (failure != null)
+      throw failure;
+    return null;
+  }
+
+  private Route requireRoute(String jobId) throws IOException {
+    var route = route(jobId);
+    if (route == null)
+      throw new IOException("job " + jobId + " not found on any endpoint");
+    return route;
+  }
+
+  @Override
+  public Status getStatus(String jobId) throws IOException {
+    var route = route(jobId);
+    if (route == null)
+      return Status.NOT_FOUND;
+    return observe(route, route.endpoint.backend.getStatus(route.jobId));
+  }
+
+  @Override
+  public CompletableFuture<Status> awaitCompletion(String jobId) {
+    var route = parse(jobId);
+    if (route != null) {
+      return route.endpoint.backend.awaitCompletion(route.jobId)
+          .thenApply(status -> observe(route, status));
+    }
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return requireRoute(jobId);
+      }
+      catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }, SharedExecutors.io()).thenCompose(
+        found -> found.endpoint.backend.awaitCompletion(found.jobId));
+  }
+
+  @Override
+  public Collection<ResultType> getResultTypes(String jobId) throws IOException {
+    var route = requireRoute(jobId);
+    var types = route.endpoint.backend.getResultTypes(route.jobId);
+    finished(route);
+    return types;
+  }
+
+  @Override
+  public InputStream getResultStream(String jobId, String identifier) throws IOException {
+    var route = requireRoute(jobId);
+    var stream = route.endpoint.backend.getResultStream(route.jobId, identifier);
+    finished(route);
+    return stream;
+  }
+
+  @Override
+  public boolean delete(String jobId) throws IOException {
+    var route = route(jobId);
+    if (route == null || !route.endpoint.backend.delete(route.jobId))
+      return false;
+    finished(route);
+    if (route.routerId == null)
+      foreignJobs.remove(jobId);
+    return true;
+  }
+
+  /** Stops the health probes. The endpoints are not closed. */
+  @Override
+  public void close() {
+    if (healthCheck != null)
+      healthCheck.cancel(false);
+  }
+}
@@ -0,0 +1,73 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+import static java.lang.String.format;
+
+/**
+ * Reads records of a multi-FASTA file one at a time, so only the current
+ * record is held in memory.
+ */
+public class FastaReader implements Closeable {
+
+  private final BufferedReader reader;
+  private String nextHeader = null;
+  private long lineNumber = 0;
+  private boolean finished = false;
+
+  public FastaReader(Reader reader) {
+    this.reader = reader instanceof BufferedReader
+        ? (BufferedReader) reader
+        : new BufferedReader(reader);
+  }
+
+  /**
+   * Returns the next record or null at the end of the input.
+   */
+  public FastaRecord read() throws IOException {
+    if (finished)
+      return null;
+    String line;
+    while (nextHeader == null) {
+      line = reader.readLine();
+      lineNumber++;
+      if (line == null) {
+        finished = true;
+        return null;
+      }
+      if (line.startsWith(">"))
+        nextHeader = line.substring(1).strip();
+      else if (!line.isBlank() && !line.startsWith(";"))
+        throw new IOException(format("sequence data before the first header at line %d",
+            lineNumber));
+    }
+    var header = nextHeader;
+    nextHeader = null;
+    var sequence = new StringBuilder();
+    while ((line = reader.readLine()) != null) {
+      lineNumber++;
+      if (line.startsWith(">")) {
+        nextHeader = line.substring(1).strip();
+        break;
+      }
+      if (line.startsWith(";"))
+        continue;
+      for (int i = 0; i < line.length(); i++) {
+        char c = line.charAt(i);
+        if (!Character.isWhitespace(c))
+          sequence.append(c);
+      }
+    }
+    if (line == null)
+      finished = true;
+    return new FastaRecord(header, sequence.toString());
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+}
@@ -0,0 +1,61 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import java.io.Reader;
+import java.io.StringReader;
+
+import static java.util.Objects.requireNonNull;
+
+public final class FastaRecord {
+
+  private final String header;
+  private final String sequence;
+
+  public FastaRecord(String header, String sequence) {
+    this.header = requireNonNull(header);
+    this.sequence = requireNonNull(sequence);
+  }
+
+  /** First word of the header line. */
+  public String getId() {
+    return firstWord(header);
+  }
+
+  static String firstWord(String header) {
+    int end = 0;
+    while (end < header.length() && !Character.isWhitespace(header.charAt(end)))
+      end++;
+    return header.substring(0, end);
+  }
+
+  /** Header line without the leading '>'. */
+  public String getHeader() {
+    return header;
+  }
+
+  /** Residues with all white space removed. */
+  public String getSequence() {
+    return sequence;
+  }
+
+  /** Opens the record in FASTA format. */
+  public Reader openReader() {
+    return new StringReader(toFasta());
+  }
+
+  /** Returns the record in FASTA format as a replayable sequence source. */
+  public SequenceSource toSequenceSource() {
+    return SequenceSource.of(toFasta());
+  }
+
+  private String toFasta() {
+    return ">" + header + "\n" + sequence + "\n";
+  }
+
+  @Override
+  public String toString() {
+    return "FastaRecord{" +
+        "header='" + header + '\'' +
+        ", length=" + sequence.length() +
+        '}';
+  }
+}
@@ -0,0 +1,152 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import io.github.warownia1.simplehttpclient.HttpRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+
+/**
+ * An application/x-www-form-urlencoded body whose last field is encoded from
+ * a reader while it is written to the connection. The remaining fields are
+ * encoded once up front, so no copy of the streamed value is ever held in
+ * memory.
+ */
+final class FormRequestBody implements HttpRequest.Body {
+
+  interface ReaderSource {
+    Reader open() throws IOException;
+  }
+
+  static final class FieldsBuilder {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+
+    FieldsBuilder append(String name, String value) {
+      if (out.size() > 0)
+        out.write('&');
+      encode(name, out);
+      out.write('=');
+      encode(value, out);
+      return this;
+    }
+
+    /** Appends fields that are already url-encoded. */
+    FieldsBuilder appendEncoded(byte[] fields) {
+      if (fields.length == 0)
+        return this;
+      if (out.size() > 0)
+        out.write('&');
+      out.write(fields, 0, fields.length);
+      return this;
+    }
+
+    byte[] toByteArray() {
+      return out.toByteArray();
+    }
+  }
+
+  private static final byte[] HEX = {
+      '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+  };
+
+  private final byte[] encodedFields;
+  private final byte[] streamedFieldPrefix;
+  private final ReaderSource source;
+
+  FormRequestBody(byte[] encodedFields, String streamedName, ReaderSource source) {
+    this.encodedFields = encodedFields;
+    var prefix = new ByteArrayOutputStream();
+    if (encodedFields.length > 0)
+      prefix.write('&');
+    encode(streamedName, prefix);
+    prefix.write('=');
+    this.streamedFieldPrefix = prefix.toByteArray();
+    this.source = source;
+  }
+
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(encodedFields);
+    out.write(streamedFieldPrefix);
+    try (var reader = source.open()) {
+      writeEncoded(reader, out);
+    }
+  }
+
+  private static void writeEncoded(Reader reader, OutputStream out) throws IOException {
+    char[] chars = new char[2048];
+    // the worst case is four UTF-8 bytes per code point, three characters per byte
+    byte[] bytes = new byte[chars.length * 12];
+    int carry = 0;
+    int nRead;
+    while ((nRead = reader.read(chars, carry, chars.length - carry)) >= 0) {
+      int end = carry + nRead;
+      // keep a trailing high surrogate until its pair has been read
+      int limit = end > 0 && Character.isHighSurrogate(chars[end - 1]) ? end - 1 : end;
+      int length = encode(chars, 0, limit, bytes);
+      out.write(bytes, 0, length);
+      carry = end - limit;
+      if (carry > 0)
+        chars[0] = chars[end - 1];
+    }
+    if (carry > 0)
+      out.write(bytes, 0, encode(chars, 0, carry, bytes));
+  }
+
+  static void encode(CharSequence value, ByteArrayOutputStream out) {
+    char[] chars = value.toString().toCharArray();
+    byte[] bytes = new byte[chars.length * 12];
+    out.write(bytes, 0, encode(chars, 0, chars.length, bytes));
+  }
+
+  /*
+   * Percent-encodes the UTF-8 representation of the characters the same way
+   * as URLEncoder: alphanumerics and ".-*_" are kept, space becomes '+'.
+   */
+  private static int encode(char[] chars, int start, int end, byte[] out) {
+    int pos = 0;
+    for (int i = start; i < end; i++) {
+      int c = chars[i];
+      if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ||
+          c == '.' || c == '-' || c == '*' || c == '_') {
+        out[pos++] = (byte) c;
+      }
+      else if (c == ' ') {
+        out[pos++] = '+';
+      }
+      else if (c < 0x80) {
+        pos = percent(c, out, pos);
+      }
+      else if (c < 0x800) {
+        pos = percent(0xc0 | (c >> 6), out, pos);
+        pos = percent(0x80 | (c & 0x3f), out, pos);
+      }
+      else if (Character.isHighSurrogate(chars[i]) && i + 1 < end &&
+          Character.isLowSurrogate(chars[i + 1])) {
+        int cp = Character.toCodePoint(chars[i], chars[++i]);
+        pos = percent(0xf0 | (cp >> 18), out, pos);
+        pos = percent(0x80 | ((cp >> 12) & 0x3f), out, pos);
+        pos = percent(0x80 | ((cp >> 6) & 0x3f), out, pos);
+        pos = percent(0x80 | (cp & 0x3f), out, pos);
+      }
+      else if (Character.isSurrogate(chars[i])) {
+        // unpaired surrogate, encoded as '?' like String.getBytes does
+        pos = percent('?', out, pos);
+      }
+      else {
+        pos = percent(0xe0 | (c >> 12), out, pos);
+        pos = percent(0x80 | ((c >> 6) & 0x3f), out, pos);
+        pos = percent(0x80 | (c & 0x3f), out, pos);
+      }
+    }
+    return pos;
+  }
+
+  private static int percent(int b, byte[] out, int pos) {
+    out[pos++] = '%';
+    out[pos++] = HEX[(b >> 4) & 0xf];
+    out[pos++] = HEX[b & 0xf];
+    return pos;
+  }
+}
@@ -0,0 +1,129 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import uk.ac.dundee.compbio.hmmerclient.PhmmerClient.Status;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static uk.ac.dundee.compbio.hmmerclient.ExceptionUtils.newIAE;
+
+/**
+ * In-memory metrics recording latency histograms per operation, time spent
+ * by jobs in each status, downloaded bytes and response status codes.
+ * Recording is lock-free; histograms use power of two buckets so the
+ * percentiles are accurate to within a factor of two.
+ */
+public class HistogramMetrics implements ClientMetrics {
+
+  public static final class Histogram {
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    void record(long nanos) {
+      nanos = Math.max(0, nanos);
+      buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(nanos | 1));
+      count.increment();
+      sum.add(nanos);
+    }
+
+    public long getCount() {
+      return count.sum();
+    }
+
+    public double getMeanNanos() {
+      long n = count.sum();
+      return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Returns the upper bound of the bucket containing the given percentile,
+     * or 0 if nothing was recorded.
+     */
+    public long getPercentileNanos(double percentile) {
+      if (percentile < 0 || percentile > 100)
+        throw newIAE("percentile must be between 0 and 100");
+      long total = 0;
+      var snapshot = new long[buckets.length()];
+      for (int i = 0; i < snapshot.length; i++)
+        total += snapshot[i] = buckets.get(i);
+      if (total == 0)
+        return 0;
+      long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+      long seen = 0;
+      for (int i = 0; i < snapshot.length; i++) {
+        seen += snapshot[i];
+        if (seen >= rank)
+          return i == 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+      }
+      return Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+      return "Histogram{" +
+          "count=" + getCount() +
+          ", meanMillis=" + getMeanNanos() / 1e6 +
+          ", p50Millis=" + getPercentileNanos(50) / 1e6 +
+          ", p99Millis=" + getPercentileNanos(99) / 1e6 +
+          '}';
+    }
+  }
+
+  private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+  private final Map<Operation, LongAdder> bytesDownloaded = new EnumMap<>(Operation.class);
+  private final Map<Status, Histogram> timeInStatus = new EnumMap<>(Status.class);
+  private final ConcurrentHashMap<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+
+  public HistogramMetrics() {
+    // maps are filled up front and never modified, so they can be read without locks
+    for (var operation : Operation.values()) {
+      latencies.put(operation, new Histogram());
+      bytesDownloaded.put(operation, new LongAdder());
+    }
+    for (var status : Status.values())
+      timeInStatus.put(status, new Histogram());
+  }
+
+  @Override
+  public void recordRequest(Operation operation, long durationNanos, int statusCode) {
+    latencies.get(operation).record(durationNanos);
+    statusCodes.computeIfAbsent(statusCode, code -> new LongAdder()).increment();
+  }
+
+  @Override
+  public void recordBytesDownloaded(Operation operation, long bytes) {
+    bytesDownloaded.get(operation).add(bytes);
+  }
+
+  @Override
+  public void recordStatusTransition(
+      String jobId, Status previous, Status current, long nanosInPrevious) {
+    if (previous != null)
+      timeInStatus.get(previous).record(nanosInPrevious);
+  }
+
+  public Histogram getLatency(Operation operation) {
+    return latencies.get(operation);
+  }
+
+  /** Time jobs spent in a status before moving on to the next one. */
+  public Histogram getTimeInStatus(Status status) {
+    return timeInStatus.get(status);
+  }
+
+  public long getBytesDownloaded(Operation operation) {
+    return bytesDownloaded.get(operation).sum();
+  }
+
+  /** Number of responses by HTTP status code; -1 counts failed requests. */
+  public Map<Integer, Long> getStatusCodeCounts() {
+    var counts = new TreeMap<Integer, Long>();
+    statusCodes.forEach((code, count) -> counts.put(code, count.sum()));
+    return counts;
+  }
+}
@@ -0,0 +1,282 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.Path;
+
+import static java.lang.String.format;
+
+/**
+ * Read-only, memory-mapped store of hits written by {@link HitStoreWriter}.
+ * Every field is kept in its own column of primitives; query, target and
+ * accession names are replaced by ids into a shared dictionary. A hit costs
+ * 56 bytes including the three indexes, and reading the store builds no
+ * objects until a name is decoded.
+ * <p>
+ * Hits are numbered from 0 in the order they were written. The hits of a
+ * query, a target name or a target accession are found through an index
+ * without scanning the columns, and names can be compared or joined by
+ * their dictionary ids, which follow the order of the names.
+ * <p>
+ * Offsets in the file are 64-bit and the file is mapped in chunks, so a
+ * store may exceed 2GB. File layout, all numbers big-endian:
+ * <pre>
+ * header       magic, version, hit count, dictionary size (int);
+ *              name data offset, name table offset (long)
+ * columns      evalue, domain evalue (double); score, bias, domain score
+ *              (float); query, target, target accession, domain count (int)
+ * indexes      by query, by target name and by target accession: hit
+ *              numbers grouped by name id
+ * name data    UTF-8 names in id order
+ * name table   per name and one past the last: name data offset (long),
+ *              start in each of the three indexes (int), padding
+ * </pre>
+ */
+public final class HitStore {
+
+  static final int MAGIC = 0x50485354; // "PHST"
+  static final int VERSION = 3;
+  static final int HEADER_LENGTH = 32;
+  static final int NAME_ENTRY_LENGTH = 24;
+
+  static final int EVALUE = 0;
+  static final int DOMAIN_EVALUE = 1;
+  static final int SCORE = 2;
+  static final int BIAS = 3;
+  static final int DOMAIN_SCORE = 4;
+  static final int QUERY = 5;
+  static final int TARGET = 6;
+  static final int TARGET_ACCESSION = 7;
+  static final int DOMAIN_COUNT = 8;
+  static final int COLUMN_COUNT = 9;
+  static final int[] COLUMN_WIDTHS = {8, 8, 4, 4, 4, 4, 4, 4, 4};
+
+  // the name roles, in the order of their id columns and indexes
+  static final int ROLE_QUERY = 0;
+  static final int ROLE_TARGET = 1;
+  static final int ROLE_ACCESSION = 2;
+
+  private static final int[] NO_HITS = new int[0];
+
+  private final Path file;
+  private final MappedFile store;
+  private final int hitCount;
+  private final int dictCount;
+  private final long[] columnPos = new long[COLUMN_COUNT];
+  private final long[] indexPos = new long[3];
+  private final long dictDataPos;
+  private final long namesPos;
+
+  private HitStore(Path file, MappedFile store) throws IOException {
+    this.file = file;
+    this.store = store;
+    if (store.size() < HEADER_LENGTH || store.getInt(0) != MAGIC)
+      throw new IOException(file + " is not a hit store");
+    if (store.getInt(4) != VERSION)
+      throw new IOException(format("unsupported hit store version %d", store.getInt(4)));
+    hitCount = store.getInt(8);
+    dictCount = store.getInt(12);
+    dictDataPos = store.getLong(16);
+    namesPos = store.getLong(24);
+    long position = HEADER_LENGTH;
+    for (int i = 0; i < COLUMN_COUNT; i++) {
+      columnPos[i] = position;
+      position += (long) COLUMN_WIDTHS[i] * hitCount;
+    }
+    for (int role = 0; role < indexPos.length; role++) {
+      indexPos[role] = position;
+      position += 4L * hitCount;
+    }
+    if (hitCount < 0 || dictCount < 0 || dictDataPos != position || namesPos < dictDataPos ||
+        namesPos % 8 != 0 || store.size() != namesPos + NAME_ENTRY_LENGTH * (dictCount + 1L))
+      throw new IOException(format("hit store %s is truncated or corrupt", file));
+  }
+
+  /** Maps the store file into memory. */
+  public static HitStore open(Path file) throws IOException {
+    return open(file, MappedFile.DEFAULT_CHUNK_SIZE);
+  }
+
+  static HitStore open(Path file, int chunkSize) throws IOException {
+    return new HitStore(file, MappedFile.map(file, chunkSize));
+  }
+
+  public Path getFile() {
+    return file;
+  }
+
+  /** Number of hits in the store. */
+  public int size() {
+    return hitCount;
+  }
+
+  public double getEvalue(int hit) {
+    return store.getDouble(position(EVALUE, hit));
+  }
+
+  public double getDomainEvalue(int hit) {
+    return store.getDouble(position(DOMAIN_EVALUE, hit));
+  }
+
+  public float getScore(int hit) {
+    return store.getFloat(position(SCORE, hit));
+  }
+
+  public float getBias(int hit) {
+    return store.getFloat(position(BIAS, hit));
+  }
+
+  public float getDomainScore(int hit) {
+    return store.getFloat(position(DOMAIN_SCORE, hit));
+  }
+
+  public int getDomainCount(int hit) {
+    return store.getInt(position(DOMAIN_COUNT, hit));
+  }
+
+  /** Dictionary id of the query of the hit. */
+  public int getQueryId(int hit) {
+    return store.getInt(position(QUERY, hit));
+  }
+
+  /** Dictionary id of the target name of the hit. */
+  public int getTargetId(int hit) {
+    return store.getInt(position(TARGET, hit));
+  }
+
+  /** Dictionary id of the target accession of the hit. */
+  public int getTargetAccessionId(int hit) {
+    return store.getInt(position(TARGET_ACCESSION, hit));
+  }
+
+  public String getQuery(int hit) {
+    return getName(getQueryId(hit));
+  }
+
+  public String getTargetName(int hit) {
+    return getName(getTargetId(hit));
+  }
+
+  public String getTargetAccession(int hit) {
+    return getName(getTargetAccessionId(hit));
+  }
+
+  private long position(int column, int hit) {
+    if (hit < 0 || hit >= hitCount)
+      throw new IndexOutOfBoundsException(format("hit %d out of %d", hit, hitCount));
+    return columnPos[column] + (long) COLUMN_WIDTHS[column] * hit;
+  }
+
+  /** Number of distinct names in the dictionary. */
+  public int getDictionarySize() {
+    return dictCount;
+  }
+
+  public String getName(int id) {
+    if (id < 0 || id >= dictCount)
+      throw new IndexOutOfBoundsException(format("name %d out of %d", id, dictCount));
+    long start = nameStart(id);
+    var bytes = new byte[(int) (nameStart(id + 1) - start)];
+    store.get(dictDataPos + start, bytes, 0, bytes.length);
+    try {
+      return new String(bytes, "UTF-8");
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private long nameStart(int id) {
+    return store.getLong(namesPos + (long) NAME_ENTRY_LENGTH * id);
+  }
+
+  /** Returns the dictionary id of the name or -1 if no hit refers to it. */
+  public int findName(String name) {
+    final byte[] key;
+    try {
+      key = name.getBytes("UTF-8");
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    }
+    int low = 0, high = dictCount - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int cmp = compareName(middle, key);
+      if (cmp < 0)
+        low = middle + 1;
+      else if (cmp > 0)
+        high = middle - 1;
+      else
+        return middle;
+    }
+    return -1;
+  }
+
+  private int compareName(int id, byte[] key) {
+    long start = dictDataPos + nameStart(id);
+    long length = dictDataPos + nameStart(id + 1) - start;
+    int common = (int) Math.min(length, key.length);
+    for (int i = 0; i < common; i++) {
+      int cmp = Integer.compare(store.get(start + i) & 0xff, key[i] & 0xff);
+      if (cmp != 0)
+        return cmp;
+    }
+    return Long.compare(length, key.length);
+  }
+
+  /** Returns the numbers of the hits of the query in ascending order. */
+  public int[] findByQuery(String query) {
+    int id = findName(query);
+    return id < 0 ? NO_HITS : findByQueryId(id);
+  }
+
+  public int[] findByQueryId(int queryId) {
+    return indexLookup(ROLE_QUERY, queryId);
+  }
+
+  /** Returns the numbers of the hits of the target in ascending order. */
+  public int[] findByTarget(String targetName) {
+    int id = findName(targetName);
+    return id < 0 ? NO_HITS : findByTargetId(id);
+  }
+
+  public int[] findByTargetId(int targetId) {
+    return indexLookup(ROLE_TARGET, targetId);
+  }
+
+  /** Returns the numbers of the hits of the target accession in ascending order. */
+  public int[] findByTargetAccession(String accession) {
+    int id = findName(accession);
+    return id < 0 ? NO_HITS : findByTargetAccessionId(id);
+  }
+
+  public int[] findByTargetAccessionId(int accessionId) {
+    return indexLookup(ROLE_ACCESSION, accessionId);
+  }
+
+  private int[] indexLookup(int role, int id) {
+    if (id < 0 || id >= dictCount)
+      return NO_HITS;
+    int start = indexStart(role, id);
+    int end = indexStart(role, id + 1);
+    if (start == end)
+      return NO_HITS;
+    var hits = new int[end - start];
+    store.getInts(indexPos[role] + 4L * start, hits);
+    return hits;
+  }
+
+  private int indexStart(int role, int id) {
+    return store.getInt(namesPos + (long) NAME_ENTRY_LENGTH * id + 8 + 4 * role);
+  }
+
+  @Override
+  public String toString() {
+    return "HitStore{" +
+        "file=" + file +
+        ", hits=" + hitCount +
+        ", names=" + dictCount +
+        '}';
+  }
+}
@@ -0,0 +1,461 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.PriorityQueue;
+
+import static uk.ac.dundee.compbio.hmmerclient.ExceptionUtils.newISE;
+
+/**
+ * Writes parsed hits to a {@link HitStore} file. Column values and names are
+ * spilled to temporary files next to the target as hits are added; names
+ * are sorted in runs of bounded size, so memory use does not grow with the
+ * number of hits or distinct names. When the writer is closed the runs are
+ * merged to assign the dictionary ids and build the indexes in another
+ * temporary file, which is then moved over the target, so readers never see
+ * a partial store.
+ * <pre>
+ * try (var writer = new HitStoreWriter(path)) {
+ *   for (var record : records) {
+ *     try (var reader = client.openTabularResult(jobId(record), "tblout", Format.TBLOUT)) {
+ *       writer.addAll(record.getId(), reader);
+ *     }
+ *   }
+ * }
+ * </pre>
+ */
+public class HitStoreWriter implements Closeable {
+
+  static final int DEFAULT_RUN_BYTES = 16 << 20;
+
+  private static final class Column {
+    final Path file;
+    final DataOutputStream out;
+    final int width;
+
+    Column(Path file, int width) throws IOException {
+      this.file = file;
+      this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 65536));
+      this.width = width;
+    }
+  }
+
+  /*
+   * Sorted run of name records read back for the merge. A record is the
+   * name length, the UTF-8 name, the role and the hit number, the same as
+   * in the run buffer.
+   */
+  private static final class Run implements Closeable {
+    private final DataInputStream in;
+    private int remaining;
+    byte[] name = new byte[64];
+    int nameLength;
+    int role;
+    int hit;
+
+    Run(Path file) throws IOException {
+      in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 8192));
+      try {
+        remaining = in.readInt();
+      }
+      catch (IOException e) {
+        in.close();
+        throw e;
+      }
+    }
+
+    boolean next() throws IOException {
+      if (remaining == 0)
+        return false;
+      remaining--;
+      nameLength = in.readInt();
+      if (nameLength > name.length)
+        name = new byte[Math.max(nameLength, 2 * name.length)];
+      in.readFully(name, 0, nameLength);
+      role = in.readByte();
+      hit = in.readInt();
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  private final Path target;
+  private final Path directory;
+  private final int runBytes;
+  private final int chunkSize;
+  private final Column[] columns = new Column[HitStore.COLUMN_COUNT];
+  private final ArrayList<Path> runFiles = new ArrayList<>();
+  // name records of the current run and their offsets
+  private byte[] runData;
+  private int runLength = 0;
+  private int[] runRecords = new int[1024];
+  private int runCount = 0;
+  private int hitCount = 0;
+  private boolean closed = false;
+
+  public HitStoreWriter(Path target) throws IOException {
+    this(target, DEFAULT_RUN_BYTES, MappedFile.DEFAULT_CHUNK_SIZE);
+  }
+
+  HitStoreWriter(Path target, int runBytes, int chunkSize) throws IOException {
+    this.target = Objects.requireNonNull(target);
+    this.directory = target.toAbsolutePath().getParent();
+    this.runBytes = runBytes;
+    this.chunkSize = chunkSize;
+    try {
+      for (int i = 0; i < columns.length; i++) {
+        if (!isIdColumn(i))
+          columns[i] = new Column(Files.createTempFile(directory, ".hitstore", ".col" + i),
+              HitStore.COLUMN_WIDTHS[i]);
+      }
+    }
+    catch (IOException e) {
+      for (var column : columns) {
+        if (column == null)
+          continue;
+        try {
+          column.out.close();
+        }
+        catch (IOException closeExc) {
+          e.addSuppressed(closeExc);
+        }
+      }
+      deleteTemporaryFiles();
+      throw e;
+    }
+  }
+
+  /* The name id columns are filled in from the sorted names when the store is written. */
+  private static boolean isIdColumn(int column) {
+    return column == HitStore.QUERY || column == HitStore.TARGET ||
+        column == HitStore.TARGET_ACCESSION;
+  }
+
+  /** Number of hits added so far. */
+  public int size() {
+    return hitCount;
+  }
+
+  /** Adds the hit under the query name given in the hit itself. */
+  public void add(TabularHit hit) throws IOException {
+    add(hit.getQueryName(), hit);
+  }
+
+  /**
+   * Adds the hit under the given query name, e.g. the id of the record the
+   * job was submitted for.
+   */
+  public void add(CharSequence query, TabularHit hit) throws IOException {
+    if (closed)
+      throw newISE("writer is closed");
+    if (hitCount == Integer.MAX_VALUE)
+      throw new IOException("too many hits");
+    addName(query, HitStore.ROLE_QUERY);
+    addName(hit.getTargetName(), HitStore.ROLE_TARGET);
+    addName(hit.getTargetAccession(), HitStore.ROLE_ACCESSION);
+    columns[HitStore.EVALUE].out.writeDouble(hit.getEvalue());
+    columns[HitStore.DOMAIN_EVALUE].out.writeDouble(hit.getDomainEvalue());
+    columns[HitStore.SCORE].out.writeFloat((float) hit.getScore());
+    columns[HitStore.BIAS].out.writeFloat((float) hit.getBias());
+    columns[HitStore.DOMAIN_SCORE].out.writeFloat((float) hit.getDomainScore());
+    columns[HitStore.DOMAIN_COUNT].out.writeInt(hit.getDomainCount());
+    hitCount++;
+  }
+
+  /**
+   * Adds all remaining rows of the reader under the given query name.
+   *
+   * @return the number of hits added
+   */
+  public int addAll(CharSequence query, TabularResultReader reader) throws IOException {
+    int added = 0;
+    var hit = reader.hit();
+    while (reader.next()) {
+      add(query, hit);
+      added++;
+    }
+    return added;
+  }
+
+  /* Adds a record of the name's use by the current hit to the run, spilling a full run. */
+  private void addName(CharSequence name, int role) throws IOException {
+    var bytes = utf8(name.toString());
+    int length = bytes.length + 9;
+    if (runCount > 0 && runLength + length > runBytes)
+      spillRun();
+    int needed = runLength + length;
+    if (runData == null)
+      runData = new byte[Math.max(Math.min(runBytes, 65536), needed)];
+    else if (needed > runData.length)
+      runData = Arrays.copyOf(runData, Math.max(Math.min(runBytes, 2 * runData.length), needed));
+    if (runCount == runRecords.length)
+      runRecords = Arrays.copyOf(runRecords, 2 * runCount);
+    runRecords[runCount++] = runLength;
+    runLength = putInt(runData, runLength, bytes.length);
+    System.arraycopy(bytes, 0, runData, runLength, bytes.length);
+    runLength += bytes.length;
+    runData[runLength++] = (byte) role;
+    runLength = putInt(runData, runLength, hitCount);
+  }
+
+  private void spillRun() throws IOException {
+    sortRun();
+    var file = Files.createTempFile(directory, ".hitstore", ".run" + runFiles.size());
+    runFiles.add(file);
+    try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 65536))) {
+      out.writeInt(runCount);
+      for (int i = 0; i < runCount; i++) {
+        int record = runRecords[i];
+        out.write(runData, record, getInt(runData, record) + 9);
+      }
+    }
+    runLength = 0;
+    runCount = 0;
+  }
+
+  /* Sorts the record offsets of the run by name, role and hit with a bottom-up merge sort. */
+  private void sortRun() {
+    var from = runRecords;
+    var to = new int[runCount];
+    for (int width = 1; width < runCount; width *= 2) {
+      for (int low = 0; low < runCount; low += 2 * width) {
+        int middle = Math.min(low + width, runCount);
+        int high = Math.min(low + 2 * width, runCount);
+        int i = low, j = middle, k = low;
+        while (i < middle && j < high)
+          to[k++] = compareRecords(from[i], from[j]) <= 0 ? from[i++] : from[j++];
+        while (i < middle)
+          to[k++] = from[i++];
+        while (j < high)
+          to[k++] = from[j++];
+      }
+      var swap = from;
+      from = to;
+      to = swap;
+    }
+    if (from != runRecords)
+      System.arraycopy(from, 0, runRecords, 0, runCount);
+  }
+
+  private int compareRecords(int a, int b) {
+    int aLength = getInt(runData, a);
+    int bLength = getInt(runData, b);
+    int cmp = Arrays.compareUnsigned(runData, a + 4, a + 4 + aLength, runData, b + 4, b + 4 + bLength);
+    if (cmp != 0)
+      return cmp;
+    cmp = Integer.compare(runData[a + 4 + aLength], runData[b + 4 + bLength]);
+    if (cmp != 0)
+      return cmp;
+    return Integer.compare(getInt(runData, a + 5 + aLength), getInt(runData, b + 5 + bLength));
+  }
+
+  private static int compareRuns(Run a, Run b) {
+    int cmp = Arrays.compareUnsigned(a.name, 0, a.nameLength, b.name, 0, b.nameLength);
+    if (cmp != 0)
+      return cmp;
+    cmp = Integer.compare(a.role, b.role);
+    if (cmp != 0)
+      return cmp;
+    return Integer.compare(a.hit, b.hit);
+  }
+
+  private static int putInt(byte[] data, int offset, int value) {
+    data[offset] = (byte) (value >>> 24);
+    data[offset + 1] = (byte) (value >>> 16);
+    data[offset + 2] = (byte) (value >>> 8);
+    data[offset + 3] = (byte) value;
+    return offset + 4;
+  }
+
+  private static int getInt(byte[] data, int offset) {
+    return (data[offset] & 0xff) << 24 | (data[offset + 1] & 0xff) << 16 |
+        (data[offset + 2] & 0xff) << 8 | (data[offset + 3] & 0xff);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed)
+      return;
+    closed = true;
+    try {
+      for (var column : columns) {
+        if (column != null)
+          column.out.close();
+      }
+      if (runCount > 0)
+        spillRun();
+      runData = null;
+      runRecords = null;
+      writeStore();
+    }
+    finally {
+      deleteTemporaryFiles();
+    }
+  }
+
+  private void writeStore() throws IOException {
+    long position = HitStore.HEADER_LENGTH;
+    var columnPos = new long[columns.length];
+    for (int i = 0; i < columns.length; i++) {
+      columnPos[i] = position;
+      position += (long) HitStore.COLUMN_WIDTHS[i] * hitCount;
+    }
+    var indexPos = new long[3];
+    for (int role = 0; role < indexPos.length; role++) {
+      indexPos[role] = position;
+      position += 4L * hitCount;
+    }
+    long dictDataPos = position;
+
+    var temp = Files.createTempFile(directory, ".hitstore", ".tmp");
+    var tableFile = Files.createTempFile(directory, ".hitstore", ".names");
+    try {
+      try (var channel = FileChannel.open(temp, StandardOpenOption.READ,
+          StandardOpenOption.WRITE)) {
+        // the columns and indexes are mapped, the name data and table are appended
+        var store = MappedFile.map(channel, dictDataPos, chunkSize);
+        for (int i = 0; i < columns.length; i++) {
+          if (columns[i] != null)
+            copyColumn(columns[i].file, store, columnPos[i]);
+        }
+        channel.position(dictDataPos);
+        var out = new BufferedOutputStream(Channels.newOutputStream(channel), 65536);
+        final int dictCount;
+        try (var table = new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(tableFile), 65536))) {
+          dictCount = mergeRuns(store, columnPos, indexPos, out, table);
+        }
+        out.flush();
+        long namesPos = align8(channel.position());
+        for (long i = channel.position(); i < namesPos; i++)
+          out.write(0);
+        Files.copy(tableFile, out);
+        out.flush();
+        store.putInt(0, HitStore.MAGIC);
+        store.putInt(4, HitStore.VERSION);
+        store.putInt(8, hitCount);
+        store.putInt(12, dictCount);
+        store.putLong(16, dictDataPos);
+        store.putLong(24, namesPos);
+        store.force();
+        channel.force(false);
+      }
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    }
+    finally {
+      Files.deleteIfExists(tableFile);
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /*
+   * Merges the sorted runs, numbering the distinct names in order. Each
+   * record sets the name id of its hit and, as records of a role arrive
+   * ordered by name and hit, appends the hit to the index of the role.
+   * Writes the name data and the name table and returns the number of
+   * distinct names.
+   */
+  private int mergeRuns(MappedFile store, long[] columnPos, long[] indexPos, OutputStream nameData,
+      DataOutputStream table) throws IOException {
+    var queue = new PriorityQueue<Run>(Math.max(1, runFiles.size()), HitStoreWriter::compareRuns);
+    var runs = new ArrayList<Run>(runFiles.size());
+    try {
+      for (var file : runFiles) {
+        var run = new Run(file);
+        runs.add(run);
+        if (run.next())
+          queue.add(run);
+      }
+      var indexStarts = new int[3];
+      var previous = new byte[64];
+      int previousLength = -1;
+      int id = -1;
+      long nameStart = 0;
+      while (!queue.isEmpty()) {
+        var run = queue.poll();
+        if (previousLength < 0 ||
+            !Arrays.equals(previous, 0, previousLength, run.name, 0, run.nameLength)) {
+          id++;
+          writeNameEntry(table, nameStart, indexStarts);
+          nameData.write(run.name, 0, run.nameLength);
+          nameStart += run.nameLength;
+          if (run.nameLength > previous.length)
+            previous = new byte[run.nameLength];
+          System.arraycopy(run.name, 0, previous, 0, run.nameLength);
+          previousLength = run.nameLength;
+        }
+        store.putInt(columnPos[HitStore.QUERY + run.role] + 4L * run.hit, id);
+        store.putInt(indexPos[run.role] + 4L * indexStarts[run.role]++, run.hit);
+        if (run.next())
+          queue.add(run);
+      }
+      writeNameEntry(table, nameStart, indexStarts);
+      return id + 1;
+    }
+    finally {
+      for (var run : runs)
+        run.close();
+    }
+  }
+
+  private static void writeNameEntry(DataOutputStream table, long nameStart, int[] indexStarts)
+      throws IOException {
+    table.writeLong(nameStart);
+    for (int start : indexStarts)
+      table.writeInt(start);
+    table.writeInt(0);
+  }
+
+  private static void copyColumn(Path file, MappedFile store, long position) throws IOException {
+    try (var in = Files.newInputStream(file)) {
+      var chunk = new byte[65536];
+      int read;
+      while ((read = in.read(chunk)) > 0) {
+        store.put(position, chunk, 0, read);
+        position += read;
+      }
+    }
+  }
+
+  private void deleteTemporaryFiles() throws IOException {
+    for (var column : columns) {
+      if (column != null)
+        Files.deleteIfExists(column.file);
+    }
+    for (var file : runFiles)
+      Files.deleteIfExists(file);
+  }
+
+  private static long align8(long position) {
+    return (position + 7) & ~7L;
+  }
+
+  private static byte[] utf8(String text) {
+    try {
+      return text.getBytes("UTF-8");
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static uk.ac.dundee.compbio.hmmerclient.ExceptionUtils.newIAE;
+
+/**
+ * Limits the number of concurrent transfers of a client to its host. Tasks
+ * over the limit are queued without holding a thread. A task whose future
+ * is cancelled before it starts is skipped.
+ */
+final class HostLimiter {
+  static final int DEFAULT_LIMIT = 4;
+
+  private int limit;
+  private int running = 0;
+  private final ArrayDeque<Runnable> waiting = new ArrayDeque<>();
+
+  HostLimiter(int limit) {
+    setLimit(limit);
+  }
+
+  synchronized int getLimit() {
+    return limit;
+  }
+
+  void setLimit(int limit) {
+    if (limit < 1)
+      throw newIAE("limit must be at least 1");
+    var started = new ArrayDeque<Runnable>();
+    synchronized (this) {
+      this.limit = limit;
+      while (running < limit && !waiting.isEmpty()) {
+        running++;
+        started.add(waiting.poll());
+      }
+    }
+    started.forEach(Runnable::run);
+  }
+
+  <T> CompletableFuture<T> submit(Callable<T> task, Executor executor) {
+    var future = new CompletableFuture<T>();
+    Runnable start = () -> {
+      try {
+        executor.execute(() -> {
+          try {
+            if (!future.isDone())
+              future.complete(task.call());
+          }
+          catch (Throwable e) {
+            future.completeExceptionally(e);
+          }
+          finally {
+            release();
+          }
+        });
+      }
+      catch (RuntimeException e) {
+        future.completeExceptionally(e);
+        release();
+      }
+    };
+    boolean startNow;
+    synchronized (this) {
+      startNow = running < limit;
+      if (startNow)
+        running++;
+      else
+        waiting.add(start);
+    }
+    if (startNow)
+      start.run();
+    return future;
+  }
+
+  private void release() {
+    Runnable next;
+    synchronized (this) {
+      next = running <= limit ? waiting.poll() : null;
+      if (next == null)
+        running--;
+    }
+    if (next != null)
+      next.run();
+  }
+}
@@ -0,0 +1,21 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the server answers with an unexpected status code.
+ */
+public class HttpStatusException extends IOException {
+  private static final long serialVersionUID = 1L;
+
+  private final int statusCode;
+
+  public HttpStatusException(int statusCode, String message) {
+    super(message);
+    this.statusCode = statusCode;
+  }
+
+  public int getStatusCode() {
+    return statusCode;
+  }
+}
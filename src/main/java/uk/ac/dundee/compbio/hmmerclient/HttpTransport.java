@@ -0,0 +1,60 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import io.github.warownia1.simplehttpclient.HttpClient;
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Sends the HTTP requests of a {@link PhmmerClient}. Transports must be safe
+ * to use from many threads at once so that one transport, and the
+ * connections it keeps alive, can be shared by any number of clients.
+ * <p>
+ * Connection pooling, protocol version and timeouts are properties of the
+ * transport. A custom implementation can be used to multiplex status and
+ * result requests over a single HTTP/2 connection or to bound the number of
+ * open connections.
+ */
+public interface HttpTransport {
+
+  <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+      throws IOException;
+
+  /** Returns a transport sending requests with the given client. */
+  static HttpTransport of(HttpClient client) {
+    Objects.requireNonNull(client);
+    return new HttpTransport() {
+      @Override
+      public <T> HttpResponse<T> send(
+          HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException {
+        return client.send(request, handler);
+      }
+    };
+  }
+
+  /**
+   * Returns a transport failing requests that have not returned within the
+   * timeout with a {@link java.net.SocketTimeoutException}. The deadline
+   * covers what the body handler reads before the response is returned; a
+   * body returned as a stream is read without a deadline.
+   */
+  static HttpTransport withTimeout(HttpTransport transport, long timeoutMillis) {
+    return new DeadlineTransport(Objects.requireNonNull(transport), timeoutMillis);
+  }
+
+  /**
+   * Returns the transport used by clients created without one. It is
+   * shared by all of them so that their connections are reused.
+   */
+  static HttpTransport shared() {
+    return SharedTransportHolder.transport;
+  }
+}
+
+final class SharedTransportHolder {
+  private SharedTransportHolder() {}
+
+  static final HttpTransport transport = HttpTransport.of(HttpClient.newHttpClient());
+}
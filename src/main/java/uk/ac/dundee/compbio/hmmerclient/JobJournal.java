@@ -0,0 +1,327 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import uk.ac.dundee.compbio.hmmerclient.PhmmerClient.Status;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static uk.ac.dundee.compbio.hmmerclient.ExceptionUtils.newIAE;
+
+/**
+ * Append-only log of submitted jobs, their last known status and downloaded
+ * results. The log is replayed when the journal is opened, so a restarted
+ * client can resume polling unfinished jobs and reuse finished ones instead
+ * of submitting the same searches again.
+ * <p>
+ * Every change is one tab separated line:
+ * <pre>
+ * SUBMIT  jobId  fingerprint  submit-time-millis
+ * STATUS  jobId  status
+ * RESULT  jobId  identifier  file-uri
+ * </pre>
+ * A line cut short by a crash is discarded on replay.
+ * <p>
+ * The server deletes results some time after a job finishes, so jobs
+ * older than the maximum age are no longer reused or resumed, and they are
+ * dropped when the journal is compacted.
+ */
+public class JobJournal implements Closeable {
+
+  public static final class JobRecord {
+    private final String jobId;
+    private final String fingerprint;
+    private final long submitTimeMillis;
+    private volatile Status status = Status.PENDING;
+    private final Map<String, Path> results = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    JobRecord(String jobId, String fingerprint, long submitTimeMillis) {
+      this.jobId = jobId;
+      this.fingerprint = fingerprint;
+      this.submitTimeMillis = submitTimeMillis;
+    }
+
+    public String getJobId() {
+      return jobId;
+    }
+
+    /** Fingerprint of the submitted request or null if it was not computed. */
+    public String getFingerprint() {
+      return fingerprint;
+    }
+
+    /** Time the job was submitted or 0 if the journal did not record it. */
+    public long getSubmitTimeMillis() {
+      return submitTimeMillis;
+    }
+
+    public Status getStatus() {
+      return status;
+    }
+
+    /** Downloaded result files by result identifier. */
+    public Map<String, Path> getResults() {
+      synchronized (results) {
+        return Map.copyOf(results);
+      }
+    }
+  }
+
+  private static final String SUBMIT = "SUBMIT";
+  private static final String STATUS = "STATUS";
+  private static final String RESULT = "RESULT";
+  private static final String NO_FINGERPRINT = "-";
+
+  private final Path file;
+  private final boolean sync;
+  private FileChannel channel;
+  private long maxAgeMillis = Duration.ofDays(1).toMillis();
+  private final LinkedHashMap<String, JobRecord> jobs = new LinkedHashMap<>();
+  private final HashMap<String, String> jobsByFingerprint = new HashMap<>();
+
+  public JobJournal(Path file) throws IOException {
+    this(file, false);
+  }
+
+  /**
+   * @param sync whether every record is forced to the storage device before
+   *     the call returns
+   */
+  public JobJournal(Path file, boolean sync) throws IOException {
+    this.file = file;
+    this.sync = sync;
+    long validLength = Files.exists(file) ? replay() : 0;
+    channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    channel.truncate(validLength);
+    channel.position(validLength);
+  }
+
+  /*
+   * Applies every complete line of the journal and returns the length of the
+   * file up to the end of the last one.
+   */
+  private long replay() throws IOException {
+    long offset = 0;
+    long validLength = 0;
+    var line = new ByteArrayOutputStream(128);
+    try (var in = new BufferedInputStream(Files.newInputStream(file))) {
+      int b;
+      while ((b = in.read()) >= 0) {
+        offset++;
+        if (b != '\n') {
+          line.write(b);
+          continue;
+        }
+        apply(line.toString("UTF-8").split("\t"));
+        line.reset();
+        validLength = offset;
+      }
+    }
+    return validLength;
+  }
+
+  private void apply(String[] fields) {
+    if (fields.length < 3)
+      return;
+    switch (fields[0]) {
+      case SUBMIT: {
+        var fingerprint = fields[2].equals(NO_FINGERPRINT) ? null : fields[2];
+        long submitTime = 0;
+        if (fields.length >= 4) {
+          try {
+            submitTime = Long.parseLong(fields[3]);
+          }
+          catch (NumberFormatException ignored) {
+          }
+        }
+        jobs.put(fields[1], new JobRecord(fields[1], fingerprint, submitTime));
+        if (fingerprint != null)
+          jobsByFingerprint.put(fingerprint, fields[1]);
+        break;
+      }
+      case STATUS: {
+        var job = jobs.get(fields[1]);
+        if (job == null)
+          break;
+        try {
+          job.status = Status.valueOf(fields[2]);
+        }
+        catch (IllegalArgumentException ignored) {
+        }
+        if (job.fingerprint != null && job.status.isTerminal() && job.status != Status.FINISHED)
+          jobsByFingerprint.remove(job.fingerprint, job.jobId);
+        break;
+      }
+      case RESULT: {
+        var job = jobs.get(fields[1]);
+        if (job != null && fields.length >= 4)
+          job.results.put(fields[2], Paths.get(URI.create(fields[3])));
+        break;
+      }
+    }
+  }
+
+  public Path getFile() {
+    return file;
+  }
+
+  public synchronized Collection<JobRecord> getJobs() {
+    return new ArrayList<>(jobs.values());
+  }
+
+  public synchronized JobRecord getJob(String jobId) {
+    return jobs.get(jobId);
+  }
+
+  /**
+   * Jobs within the maximum age whose last recorded status was not final.
+   * Older jobs are left out since the server no longer keeps them.
+   */
+  public synchronized Collection<JobRecord> getUnfinishedJobs() {
+    long now = System.currentTimeMillis();
+    var unfinished = new ArrayList<JobRecord>();
+    for (var job : jobs.values())
+      if (!job.status.isTerminal() && !isExpired(job, now))
+        unfinished.add(job);
+    return unfinished;
+  }
+
+  public synchronized Duration getMaxAge() {
+    return Duration.ofMillis(maxAgeMillis);
+  }
+
+  /**
+   * Sets the time after submission for which a job is reused and resumed,
+   * one day by default. It should not exceed the time the server keeps
+   * results. Jobs whose submission time was not recorded count as expired.
+   */
+  public synchronized void setMaxAge(Duration maxAge) {
+    if (maxAge.isNegative())
+      throw newIAE("maxAge must not be negative");
+    maxAgeMillis = maxAge.toMillis();
+  }
+
+  /**
+   * Returns the id of a job submitted with the fingerprint within the
+   * maximum age that has not failed, or null if there is none.
+   */
+  synchronized String findJob(String fingerprint) {
+    var jobId = jobsByFingerprint.get(fingerprint);
+    if (jobId == null)
+      return null;
+    if (isExpired(jobs.get(jobId), System.currentTimeMillis()))
+      return null;
+    return jobId;
+  }
+
+  private boolean isExpired(JobRecord job, long now) {
+    return now - job.submitTimeMillis > maxAgeMillis;
+  }
+
+  synchronized void recordSubmit(String jobId, String fingerprint) throws IOException {
+    if (jobs.containsKey(jobId))
+      return;
+    var fields = new String[]{SUBMIT, jobId, fingerprint != null ? fingerprint : NO_FINGERPRINT,
+        Long.toString(System.currentTimeMillis())};
+    append(fields);
+    apply(fields);
+  }
+
+  synchronized void recordStatus(String jobId, Status status) throws IOException {
+    var job = jobs.get(jobId);
+    if (job == null || job.status == status)
+      return;
+    var fields = new String[]{STATUS, jobId, status.name()};
+    append(fields);
+    apply(fields);
+  }
+
+  synchronized void recordResult(String jobId, String identifier, Path path) throws IOException {
+    var job = jobs.get(jobId);
+    if (job == null)
+      return;
+    var fields = new String[]{RESULT, jobId, identifier, path.toAbsolutePath().toUri().toString()};
+    append(fields);
+    apply(fields);
+  }
+
+  private void append(String[] fields) throws IOException {
+    if (channel == null)
+      throw new IOException("journal is closed");
+    channel.write(ByteBuffer.wrap((String.join("\t", fields) + "\n").getBytes("UTF-8")));
+    if (sync)
+      channel.force(false);
+  }
+
+  /**
+   * Rewrites the journal keeping only the current state of every job and
+   * drops the jobs older than the maximum age.
+   */
+  public synchronized void compact() throws IOException {
+    if (channel == null)
+      throw new IOException("journal is closed");
+    long now = System.currentTimeMillis();
+    var expired = new ArrayList<JobRecord>();
+    var temp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (var out = FileChannel.open(temp, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      var text = new StringBuilder();
+      for (var job : jobs.values()) {
+        if (isExpired(job, now)) {
+          expired.add(job);
+          continue;
+        }
+        text.append(SUBMIT).append('\t').append(job.jobId).append('\t')
+            .append(job.fingerprint != null ? job.fingerprint : NO_FINGERPRINT).append('\t')
+            .append(job.submitTimeMillis).append('\n');
+        if (job.status != Status.PENDING)
+          text.append(STATUS).append('\t').append(job.jobId).append('\t')
+              .append(job.status.name()).append('\n');
+        job.getResults().forEach((identifier, path) ->
+            text.append(RESULT).append('\t').append(job.jobId).append('\t').append(identifier)
+                .append('\t').append(path.toUri()).append('\n'));
+      }
+      out.write(ByteBuffer.wrap(text.toString().getBytes("UTF-8")));
+      out.force(false);
+    }
+    channel.close();
+    channel = null;
+    try {
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      for (var job : expired) {
+        jobs.remove(job.jobId);
+        if (job.fingerprint != null)
+          jobsByFingerprint.remove(job.fingerprint, job.jobId);
+      }
+    }
+    finally {
+      // keep appending to whichever file is in place, so the journal stays usable
+      channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.APPEND);
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+      channel = null;
+    }
+  }
+}
@@ -0,0 +1,421 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import uk.ac.dundee.compbio.hmmerclient.PhmmerClient.Status;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.lang.String.format;
+import static uk.ac.dundee.compbio.hmmerclient.ExceptionUtils.newIAE;
+import static uk.ac.dundee.compbio.hmmerclient.ExceptionUtils.newISE;
+
+/**
+ * Runs searches with a local phmmer executable against local FASTA
+ * databases, avoiding the network round trip and the queue of the public
+ * service for small databases. Jobs wait in a queue until one of a fixed
+ * number of workers starts the process for them; each job writes the same
+ * {@code out}, {@code tblout} and {@code domtblout} results as the REST
+ * service to its own directory.
+ * <p>
+ * The search thresholds, substitution matrix and gap penalties of the
+ * request are passed to phmmer. The database of the request selects one of
+ * the configured database files; options that only affect how the web
+ * service presents results are ignored.
+ * <p>
+ * Finished jobs keep their directory until they are {@linkplain #delete
+ * deleted}, or for the configured retention time.
+ */
+public final class LocalPhmmerBackend implements SearchBackend, Closeable {
+
+  public static final class Builder {
+    private String executable = "phmmer";
+    private Path defaultDatabase = null;
+    private final Map<PhmmerRequest.SequenceDatabase, Path> databases =
+        new EnumMap<>(PhmmerRequest.SequenceDatabase.class);
+    private int workers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private int cpusPerJob = 2;
+    private long timeoutMillis = 0;
+    private long retentionMillis = 0;
+    private Path workDirectory = null;
+
+    private Builder() {}
+
+    /** Name or path of the phmmer executable, {@code phmmer} by default. */
+    public Builder executable(String executable) {
+      this.executable = Objects.requireNonNull(executable);
+      return this;
+    }
+
+    /** Database searched by requests whose database has no file of its own. */
+    public Builder database(Path database) {
+      this.defaultDatabase = Objects.requireNonNull(database);
+      return this;
+    }
+
+    public Builder database(PhmmerRequest.SequenceDatabase database, Path file) {
+      databases.put(Objects.requireNonNull(database), Objects.requireNonNull(file));
+      return this;
+    }
+
+    /** Number of phmmer processes run at the same time. */
+    public Builder workers(int workers) {
+      if (workers < 1)
+        throw newIAE("workers must be at least 1");
+      this.workers = workers;
+      return this;
+    }
+
+    /** Number of worker threads of each phmmer process, passed as --cpu. */
+    public Builder cpusPerJob(int cpusPerJob) {
+      if (cpusPerJob < 0)
+        throw newIAE("cpusPerJob must not be negative");
+      this.cpusPerJob = cpusPerJob;
+      return this;
+    }
+
+    /** Time after which a running search is killed; 0 for no limit. */
+    public Builder timeoutMillis(long timeoutMillis) {
+      if (timeoutMillis < 0)
+        throw newIAE("timeoutMillis must not be negative");
+      this.timeoutMillis = timeoutMillis;
+      return this;
+    }
+
+    /**
+     * Time after which a completed job and its directory are deleted; 0
+     * keeps them until {@link #delete} is called or the backend is closed.
+     */
+    public Builder retentionMillis(long retentionMillis) {
+      if (retentionMillis < 0)
+        throw newIAE("retentionMillis must not be negative");
+      this.retentionMillis = retentionMillis;
+      return this;
+    }
+
+    /**
+     * Directory the job directories are created in. By default a temporary
+     * directory is used and deleted when the backend is closed.
+     */
+    public Builder workDirectory(Path workDirectory) {
+      this.workDirectory = Objects.requireNonNull(workDirectory);
+      return this;
+    }
+
+    public LocalPhmmerBackend build() throws IOException {
+      if (defaultDatabase == null && databases.isEmpty())
+        throw newISE("no database configured");
+      return new LocalPhmmerBackend(this);
+    }
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  private static final List<ResultType> RESULT_TYPES = List.of(
+      new ResultType("The output from the tool itself", "txt", "out", "Tool Output",
+          "text/plain"),
+      new ResultType("Per-sequence hits table", "txt", "tblout", "Sequence Table",
+          "text/plain"),
+      new ResultType("Per-domain hits table", "txt", "domtblout", "Domain Table",
+          "text/plain"));
+
+  private static final class Job {
+    final String jobId;
+    final Path directory;
+    final List<String> command;
+    final CompletableFuture<Status> future = new CompletableFuture<>();
+    volatile Status status = Status.QUEUED;
+    volatile Process process = null;
+
+    Job(String jobId, Path directory, List<String> command) {
+      this.jobId = jobId;
+      this.directory = directory;
+      this.command = command;
+    }
+
+    // the first final status wins, e.g. when the backend is closed
+    synchronized void finish(Status status) {
+      if (future.isDone())
+        return;
+      this.status = status;
+      future.complete(status);
+    }
+  }
+
+  private final String executable;
+  private final Path defaultDatabase;
+  private final Map<PhmmerRequest.SequenceDatabase, Path> databases;
+  private final int cpusPerJob;
+  private final long timeoutMillis;
+  private final long retentionMillis;
+  private final Path workDirectory;
+  private final boolean temporaryWorkDirectory;
+  private final ThreadPoolExecutor workers;
+  private final ConcurrentHashMap<String, Job> jobs = new ConcurrentHashMap<>();
+
+  private LocalPhmmerBackend(Builder builder) throws IOException {
+    executable = builder.executable;
+    defaultDatabase = builder.defaultDatabase;
+    databases = new EnumMap<>(builder.databases);
+    cpusPerJob = builder.cpusPerJob;
+    timeoutMillis = builder.timeoutMillis;
+    retentionMillis = builder.retentionMillis;
+    temporaryWorkDirectory = builder.workDirectory == null;
+    workDirectory = temporaryWorkDirectory
+        ? Files.createTempDirectory("phmmer-local")
+        : Files.createDirectories(builder.workDirectory);
+    workers = new ThreadPoolExecutor(builder.workers, builder.workers, 0, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(), SharedExecutors.daemonThreads("phmmer-local-"));
+  }
+
+  public Path getWorkDirectory() {
+    return workDirectory;
+  }
+
+  /** Number of jobs waiting for a free worker. */
+  public int getQueuedJobs() {
+    return workers.getQueue().size();
+  }
+
+  @Override
+  public boolean testEndpoint() {
+    return !workers.isShutdown();
+  }
+
+  /**
+   * Writes the query sequence to a new job directory and queues the search.
+   * The email address is not used.
+   */
+  @Override
+  public String submit(PhmmerRequest request, String email) throws IOException {
+    var database = databases.getOrDefault(request.getDatabase(), defaultDatabase);
+    if (database == null)
+      throw newIAE("no local file for database " + request.getDatabase());
+    var jobId = "phmmer-local-" + UUID.randomUUID();
+    var directory = Files.createDirectory(workDirectory.resolve(jobId));
+    var query = directory.resolve("query.fa");
+    try (var reader = request.getSequence();
+         var writer = Files.newBufferedWriter(query, Charset.forName("UTF-8"))) {
+      reader.transferTo(writer);
+    }
+    var job = new Job(jobId, directory, buildCommand(request, query, database, directory));
+    jobs.put(jobId, job);
+    try {
+      workers.execute(() -> run(job));
+    }
+    catch (RuntimeException e) {
+      jobs.remove(jobId);
+      throw new IOException("backend is closed", e);
+    }
+    if (retentionMillis > 0)
+      job.future.whenComplete((status, exc) -> scheduleDelete(jobId));
+    return jobId;
+  }
+
+  // deleting touches the disk, so the scheduler only times it
+  private void scheduleDelete(String jobId) {
+    SharedExecutors.scheduler().schedule(
+        () -> SharedExecutors.io().execute(() -> {
+          try {
+            delete(jobId);
+          }
+          catch (IOException ignored) {
+            // the directory is left behind
+          }
+        }),
+        retentionMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private List<String> buildCommand(PhmmerRequest request, Path query, Path database, Path directory) {
+    var command = new ArrayList<String>();
+    command.add(executable);
+    command.add("-o");
+    command.add(directory.resolve("out.txt").toString());
+    command.add("--tblout");
+    command.add(directory.resolve("tblout.txt").toString());
+    command.add("--domtblout");
+    command.add(directory.resolve("domtblout.txt").toString());
+    addOption(command, "-E", request.getE());
+    addOption(command, "-T", request.getT());
+    addOption(command, "--domE", request.getDomE());
+    addOption(command, "--domT", request.getDomT());
+    addOption(command, "--incE", request.getIncE());
+    addOption(command, "--incT", request.getIncT());
+    addOption(command, "--incdomE", request.getIncdomE());
+    addOption(command, "--incdomT", request.getIncdomT());
+    addOption(command, "--popen", request.getPopen());
+    addOption(command, "--pextend", request.getPextend());
+    if (request.getMx() != null) {
+      command.add("--mx");
+      command.add(request.getMx().strvalue);
+    }
+    if (request.getNoBias())
+      command.add("--nobias");
+    command.add("--cpu");
+    command.add(Integer.toString(cpusPerJob));
+    command.add(query.toString());
+    command.add(database.toString());
+    return command;
+  }
+
+  private static void addOption(List<String> command, String name, Float value) {
+    if (value != null) {
+      command.add(name);
+      command.add(value.toString());
+    }
+  }
+
+  private void run(Job job) {
+    try {
+      final Process process;
+      // delete and close finish the job before killing its process, so
+      // starting it under the job's lock means they either see the process
+      // or keep it from being started
+      synchronized (job) {
+        if (job.future.isDone())
+          return;
+        job.status = Status.RUNNING;
+        process = new ProcessBuilder(job.command)
+            .directory(job.directory.toFile())
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .redirectError(job.directory.resolve("stderr.txt").toFile())
+            .start();
+        job.process = process;
+      }
+      boolean exited = true;
+      if (timeoutMillis > 0)
+        exited = process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS);
+      else
+        process.waitFor();
+      if (!exited) {
+        process.destroyForcibly();
+        job.finish(Status.FAILURE);
+      }
+      else {
+        job.finish(process.exitValue() == 0 ? Status.FINISHED : Status.FAILURE);
+      }
+    }
+    catch (IOException e) {
+      job.finish(Status.ERROR);
+    }
+    catch (InterruptedException e) {
+      var process = job.process;
+      if (process != null)
+        process.destroyForcibly();
+      job.finish(Status.ERROR);
+    }
+  }
+
+  @Override
+  public Status getStatus(String jobId) {
+    var job = jobs.get(jobId);
+    return job != null ? job.status : Status.NOT_FOUND;
+  }
+
+  @Override
+  public CompletableFuture<Status> awaitCompletion(String jobId) {
+    var job = jobs.get(jobId);
+    return job != null ? job.future.copy() : CompletableFuture.completedFuture(Status.NOT_FOUND);
+  }
+
+  @Override
+  public Collection<ResultType> getResultTypes(String jobId) throws IOException {
+    requireFinished(jobId);
+    return RESULT_TYPES;
+  }
+
+  @Override
+  public InputStream getResultStream(String jobId, String identifier) throws IOException {
+    var job = requireFinished(jobId);
+    if (RESULT_TYPES.stream().noneMatch(type -> type.getIdentifier().equals(identifier)))
+      throw new IOException("Invalid result type: " + identifier);
+    return Files.newInputStream(job.directory.resolve(identifier + ".txt"));
+  }
+
+  private Job requireFinished(String jobId) throws IOException {
+    var job = jobs.get(jobId);
+    if (job == null)
+      throw new IOException("job " + jobId + " not found");
+    if (job.status != Status.FINISHED)
+      throw new IOException(format("job %s is %s", jobId, job.status));
+    return job;
+  }
+
+  /**
+   * Forgets the job and deletes its directory. A queued job is dropped and
+   * a running search is killed first. The job is reported as not found
+   * afterwards.
+   *
+   * @return whether the job was known
+   */
+  @Override
+  public boolean delete(String jobId) throws IOException {
+    var job = jobs.remove(jobId);
+    if (job == null)
+      return false;
+    job.finish(Status.ERROR);
+    var process = job.process;
+    if (process != null) {
+      process.destroyForcibly();
+      try {
+        process.waitFor(5, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    deleteRecursively(job.directory);
+    return true;
+  }
+
+  private static void deleteRecursively(Path directory) throws IOException {
+    if (!Files.exists(directory))
+      return;
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (var path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+        Files.deleteIfExists(path);
+    }
+  }
+
+  /**
+   * Kills running searches, fails queued ones and deletes the work
+   * directory if it was created by this backend.
+   */
+  @Override
+  public void close() throws IOException {
+    workers.shutdownNow();
+    for (var job : jobs.values()) {
+      job.finish(Status.ERROR);
+      var process = job.process;
+      if (process != null)
+        process.destroyForcibly();
+    }
+    try {
+      workers.awaitTermination(5, TimeUnit.SECONDS);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (temporaryWorkDirectory)
+      deleteRecursively(workDirectory);
+  }
+}
@@ -0,0 +1,128 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static uk.ac.dundee.compbio.hmmerclient.ExceptionUtils.newIAE;
+
+/**
+ * A file mapped into memory in chunks, so that it is not limited to the 2GB
+ * a single buffer can address. Numbers never span two chunks, which holds
+ * as long as they are aligned to their width; byte arrays may.
+ */
+final class MappedFile {
+
+  static final int DEFAULT_CHUNK_SIZE = 1 << 30;
+
+  private final MappedByteBuffer[] chunks;
+  private final long size;
+  private final int shift;
+  private final int mask;
+
+  private MappedFile(FileChannel channel, FileChannel.MapMode mode, long size, int chunkSize)
+      throws IOException {
+    if (chunkSize < 8 || Integer.bitCount(chunkSize) != 1)
+      throw newIAE("chunk size must be a power of two of at least 8");
+    this.size = size;
+    shift = Integer.numberOfTrailingZeros(chunkSize);
+    mask = chunkSize - 1;
+    chunks = new MappedByteBuffer[(int) ((size + mask) >>> shift)];
+    for (int i = 0; i < chunks.length; i++) {
+      long start = (long) i << shift;
+      chunks[i] = channel.map(mode, start, Math.min(chunkSize, size - start));
+    }
+  }
+
+  /** Maps the whole file read-only. */
+  static MappedFile map(Path file, int chunkSize) throws IOException {
+    try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return new MappedFile(channel, FileChannel.MapMode.READ_ONLY, channel.size(), chunkSize);
+    }
+  }
+
+  /** Maps the first {@code size} bytes of the channel for writing, growing the file if needed. */
+  static MappedFile map(FileChannel channel, long size, int chunkSize) throws IOException {
+    return new MappedFile(channel, FileChannel.MapMode.READ_WRITE, size, chunkSize);
+  }
+
+  long size() {
+    return size;
+  }
+
+  private MappedByteBuffer chunk(long position) {
+    return chunks[(int) (position >>> shift)];
+  }
+
+  private int offset(long position) {
+    return (int) position & mask;
+  }
+
+  byte get(long position) {
+    return chunk(position).get(offset(position));
+  }
+
+  int getInt(long position) {
+    return chunk(position).getInt(offset(position));
+  }
+
+  long getLong(long position) {
+    return chunk(position).getLong(offset(position));
+  }
+
+  float getFloat(long position) {
+    return chunk(position).getFloat(offset(position));
+  }
+
+  double getDouble(long position) {
+    return chunk(position).getDouble(offset(position));
+  }
+
+  void get(long position, byte[] dst, int off, int len) {
+    while (len > 0) {
+      int offset = offset(position);
+      int n = Math.min(len, mask + 1 - offset);
+      chunk(position).duplicate().position(offset).get(dst, off, n);
+      position += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  void getInts(long position, int[] dst) {
+    int off = 0;
+    while (off < dst.length) {
+      int offset = offset(position);
+      int n = Math.min(dst.length - off, (mask + 1 - offset) / 4);
+      chunk(position).duplicate().position(offset).asIntBuffer().get(dst, off, n);
+      position += 4L * n;
+      off += n;
+    }
+  }
+
+  void putInt(long position, int value) {
+    chunk(position).putInt(offset(position), value);
+  }
+
+  void putLong(long position, long value) {
+    chunk(position).putLong(offset(position), value);
+  }
+
+  void put(long position, byte[] src, int off, int len) {
+    while (len > 0) {
+      int offset = offset(position);
+      int n = Math.min(len, mask + 1 - offset);
+      chunk(position).duplicate().position(offset).put(src, off, n);
+      position += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  void force() {
+    for (var chunk : chunks)
+      chunk.force();
+  }
+}
@@ -3,18 +3,48 @@ package uk.ac.dundee.compbio.hmmerclient;
 import io.github.warownia1.simplehttpclient.HttpClient;
 import io.github.warownia1.simplehttpclient.HttpRequest;
 import io.github.warownia1.simplehttpclient.HttpResponse;
-import io.github.warownia1.simplehttpclient.impl.WWWFormURLEncodedRequestBodyBuilder;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.io.Reader;
+import java.io.StringReader;
 import java.io.StringWriter;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 import static java.lang.String.format;
 
-public class PhmmerClient {
+public class PhmmerClient implements SearchBackend {
   private static final URI defaultURL;
 
   static {
@@ -27,10 +57,85 @@ public class PhmmerClient {
   }
 
   private final URI phmmerUrl;
-  private final HttpClient httpClient = HttpClient.newHttpClient();
+  private final HttpTransport transport;
+  private final StatusPoller statusPoller =
+      new StatusPoller(this, SharedExecutors.scheduler());
+  private volatile ResultCache resultCache = null;
+  private volatile boolean deduplicateInFlight = false;
+  private volatile JobJournal jobJournal = null;
+  private volatile ClientMetrics metrics = ClientMetrics.NOOP;
+  private volatile RetryPolicy retryPolicy = RetryPolicy.defaultPolicy();
+  private volatile CircuitBreaker circuitBreaker = CircuitBreaker.newBuilder().build();
+  private volatile Executor executor = SharedExecutors.io();
+  private volatile boolean compressedTransfer = true;
+  // fingerprints of the requests of jobs submitted through this client
+  private final HostLimiter downloadLimiter = new HostLimiter(HostLimiter.DEFAULT_LIMIT);
+  private final ConcurrentHashMap<String, String> jobFingerprints = new ConcurrentHashMap<>();
+  // job ids of submissions that have not reached a final status, by fingerprint
+  private final ConcurrentHashMap<String, CompletableFuture<String>> inFlightSubmissions =
+      new ConcurrentHashMap<>();
 
-  public PhmmerClient(URI uri) {
+  private static final String CACHE_JOB_ID = "job";
+  private static final String CACHE_RESULT_TYPES = "resulttypes.xml";
+  private static final String CACHE_RESULT_PREFIX = "result.";
+
+  public static final class Builder {
+    private URI url = defaultURL;
+    private HttpTransport transport = HttpTransport.shared();
+    private long timeoutMillis = 0;
+
+    private Builder() {}
+
+    public Builder url(URI url) {
+      this.url = Objects.requireNonNull(url);
+      return this;
+    }
+
+    /**
+     * Sets the transport sending the requests. Clients built without one
+     * share {@link HttpTransport#shared()}.
+     */
+    public Builder transport(HttpTransport transport) {
+      this.transport = Objects.requireNonNull(transport);
+      return this;
+    }
+
+    public Builder httpClient(HttpClient httpClient) {
+      return transport(HttpTransport.of(httpClient));
+    }
+
+    /**
+     * Time after which a request without a response fails with a
+     * {@link java.net.SocketTimeoutException}; 0 for no limit.
+     *
+     * @see HttpTransport#withTimeout
+     */
+    public Builder timeoutMillis(long timeoutMillis) {
+      if (timeoutMillis < 0)
+        throw ExceptionUtils.newIAE("timeoutMillis must not be negative");
+      this.timeoutMillis = timeoutMillis;
+      return this;
+    }
+
+    public PhmmerClient build() {
+      var transport = this.transport;
+      if (timeoutMillis > 0)
+        transport = HttpTransport.withTimeout(transport, timeoutMillis);
+      return new PhmmerClient(url, transport);
+    }
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  private PhmmerClient(URI uri, HttpTransport transport) {
     this.phmmerUrl = uri;
+    this.transport = transport;
+  }
+
+  public PhmmerClient(URI uri) {
+    this(uri, HttpTransport.shared());
   }
 
   public PhmmerClient(URL url) throws URISyntaxException {
@@ -45,11 +150,178 @@ public class PhmmerClient {
     return phmmerUrl;
   }
 
+  public HttpTransport getTransport() {
+    return transport;
+  }
+
+  public PollingStrategy getPollingStrategy() {
+    return statusPoller.getStrategy();
+  }
+
+  public void setPollingStrategy(PollingStrategy strategy) {
+    statusPoller.setStrategy(strategy);
+  }
+
+  public ResultCache getResultCache() {
+    return resultCache;
+  }
+
+  /**
+   * Sets the cache used to serve repeated searches locally. When a request
+   * with the same fingerprint as an earlier finished job is submitted, the
+   * earlier job id is returned without contacting the server and its
+   * status, result types and result streams are read from the cache.
+   * Results requested with a custom body handler are not cached, and
+   * neither are results read through a {@link ResultFilter}: the filter
+   * stops reading early, while caching would download the whole result.
+   * Filtered reads still use a result that is already cached.
+   * <p>
+   * Evicting or expiring any entry of a fingerprint drops the cached job
+   * with it, so a later submission creates a new job rather than asking
+   * the server for results of an old one. Results that were never fetched
+   * before are still requested from the server with the cached job id, so
+   * the cache's time to live should not exceed the time the server keeps
+   * results.
+   */
+  public void setResultCache(ResultCache resultCache) {
+    this.resultCache = resultCache;
+  }
+
+  public boolean getDeduplicateInFlight() {
+    return deduplicateInFlight;
+  }
+
+  /**
+   * Enables single-flight submission. While a job is pending, queued or
+   * running, submitting a request with the same fingerprint returns the id
+   * of that job instead of creating another one. Callers submitting at the
+   * same moment wait for the first submission to return; if it fails, each
+   * of them gets an {@link IOException} caused by that failure.
+   */
+  public void setDeduplicateInFlight(boolean deduplicateInFlight) {
+    this.deduplicateInFlight = deduplicateInFlight;
+  }
+
+  public JobJournal getJobJournal() {
+    return jobJournal;
+  }
+
+  /**
+   * Sets the journal recording submitted jobs, status changes and downloaded
+   * results. Jobs recorded in the journal are known to the client as if they
+   * were submitted by it: submitting a request with the fingerprint of a
+   * journaled job that has not failed and is within the journal's
+   * {@linkplain JobJournal#setMaxAge maximum age} returns that job's id.
+   *
+   * @see #resumeJobs()
+   */
+  public void setJobJournal(JobJournal jobJournal) {
+    this.jobJournal = jobJournal;
+    if (jobJournal == null)
+      return;
+    for (var job : jobJournal.getJobs())
+      if (job.getFingerprint() != null)
+        jobFingerprints.putIfAbsent(job.getJobId(), job.getFingerprint());
+  }
+
+  /**
+   * Resumes polling every job the journal recorded as not finished.
+   *
+   * @return completion futures of the resumed jobs by job id
+   */
+  public Map<String, CompletableFuture<Status>> resumeJobs() {
+    var journal = jobJournal;
+    if (journal == null)
+      throw ExceptionUtils.newISE("job journal not set");
+    var jobs = new HashMap<String, CompletableFuture<Status>>();
+    for (var job : journal.getUnfinishedJobs())
+      jobs.put(job.getJobId(), awaitCompletion(job.getJobId()));
+    return jobs;
+  }
+
+  public ClientMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Sets the metrics receiving request latencies, downloaded byte counts
+   * and status transitions of awaited jobs.
+   */
+  public void setMetrics(ClientMetrics metrics) {
+    this.metrics = Objects.requireNonNull(metrics);
+  }
+
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  public void setRetryPolicy(RetryPolicy retryPolicy) {
+    this.retryPolicy = Objects.requireNonNull(retryPolicy);
+  }
+
+  public CircuitBreaker getCircuitBreaker() {
+    return circuitBreaker;
+  }
+
+  /**
+   * Sets the circuit breaker holding back submissions while the server is
+   * overloaded. A breaker can be shared by clients of the same server.
+   */
+  public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+    this.circuitBreaker = Objects.requireNonNull(circuitBreaker);
+  }
+
+  public Executor getExecutor() {
+    return executor;
+  }
+
+  /**
+   * Sets the executor running asynchronous submissions, status polls,
+   * downloads and jobs started with {@link #runJobAsync}. A shared cached
+   * thread pool is used by default.
+   */
+  public void setExecutor(Executor executor) {
+    this.executor = Objects.requireNonNull(executor);
+  }
+
+  /** Whether the runtime supports virtual threads, i.e. is Java 21 or later. */
+  public static boolean isVirtualThreadsSupported() {
+    return SharedExecutors.virtualThreads() != null;
+  }
+
+  /**
+   * Runs asynchronous calls on virtual threads, one per call, so waiting
+   * for responses and between status polls does not hold platform threads.
+   *
+   * @throws IllegalStateException if the runtime does not support virtual
+   *     threads
+   */
+  public void useVirtualThreads() {
+    var virtualThreads = SharedExecutors.virtualThreads();
+    if (virtualThreads == null)
+      throw ExceptionUtils.newISE("virtual threads require Java 21 or later");
+    this.executor = virtualThreads;
+  }
+
+  public boolean getCompressedTransfer() {
+    return compressedTransfer;
+  }
+
+  /**
+   * Sets whether status, result type and result responses are requested
+   * with gzip or deflate content encoding. Compressed responses are
+   * decompressed while they are read. Enabled by default.
+   */
+  public void setCompressedTransfer(boolean compressedTransfer) {
+    this.compressedTransfer = compressedTransfer;
+  }
+
+  @Override
   public boolean testEndpoint() {
     var requestBuilder = HttpRequest.newBuilder(phmmerUrl);
     requestBuilder.GET();
     try {
-      var response = httpClient.send(requestBuilder.build(),
+      var response = transport.send(requestBuilder.build(),
           HttpResponse.BodyHandlers.discarding());
       return response.statusCode() == 200;
     }
@@ -58,14 +330,113 @@ public class PhmmerClient {
     }
   }
 
+  @Override
   public String submit(PhmmerRequest request, String email) throws IOException {
+    var cache = resultCache;
+    var journal = jobJournal;
+    boolean deduplicate = deduplicateInFlight;
+    var source = request.getSequenceSource();
+    if (cache == null && journal == null && !deduplicate) {
+      // only a replayable sequence can be sent again
+      if (source != null)
+        return submitRemote(request, source::openReader, email, true);
+      return submitRemote(request, request::getSequence, email, false);
+    }
+    // the fingerprint needs the whole sequence, so a reader is buffered only here
+    final CharSequence sequence;
+    final FormRequestBody.ReaderSource replayableSequence;
+    if (source != null) {
+      sequence = source.readContent();
+      replayableSequence = source::openReader;
+    }
+    else {
+      var text = readFully(request.getSequence());
+      sequence = text;
+      replayableSequence = () -> new StringReader(text);
+    }
+    var fingerprint = RequestFingerprint.of(request, sequence);
+    if (cache != null) {
+      try (var stream = cache.open(fingerprint, CACHE_JOB_ID)) {
+        if (stream != null) {
+          var jobId = new String(stream.readAllBytes(), "UTF-8");
+          jobFingerprints.put(jobId, fingerprint);
+          return jobId;
+        }
+      }
+    }
+    if (journal != null) {
+      var jobId = journal.findJob(fingerprint);
+      if (jobId != null) {
+        jobFingerprints.put(jobId, fingerprint);
+        return jobId;
+      }
+    }
+    if (deduplicate)
+      return submitSingleFlight(request, replayableSequence, email, fingerprint);
+    return submitFingerprinted(request, replayableSequence, email, fingerprint);
+  }
+
+  private String submitFingerprinted(
+      PhmmerRequest request, FormRequestBody.ReaderSource sequence, String email,
+      String fingerprint)
+      throws IOException {
+    var jobId = submitRemote(request, sequence, email, true);
+    jobFingerprints.put(jobId, fingerprint);
+    var journal = jobJournal;
+    if (journal != null)
+      journal.recordSubmit(jobId, fingerprint);
+    return jobId;
+  }
+
+  private String submitSingleFlight(
+      PhmmerRequest request, FormRequestBody.ReaderSource sequence, String email,
+      String fingerprint)
+      throws IOException {
+    var submission = new CompletableFuture<String>();
+    var existing = inFlightSubmissions.putIfAbsent(fingerprint, submission);
+    if (existing != null)
+      return joinSubmission(existing);
+    final String jobId;
+    try {
+      jobId = submitFingerprinted(request, sequence, email, fingerprint);
+    }
+    catch (IOException | RuntimeException e) {
+      inFlightSubmissions.remove(fingerprint, submission);
+      submission.completeExceptionally(e);
+      throw e;
+    }
+    submission.complete(jobId);
+    awaitCompletion(jobId).whenComplete(
+        (status, exc) -> inFlightSubmissions.remove(fingerprint, submission));
+    return jobId;
+  }
+
+  private static String joinSubmission(CompletableFuture<String> submission)
+      throws IOException {
+    try {
+      return submission.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while waiting for an identical submission", e);
+    }
+    catch (ExecutionException e) {
+      // every waiter gets its own exception, with a stack trace of its own call
+      var cause = e.getCause();
+      throw new IOException("identical submission failed: " + cause.getMessage(), cause);
+    }
+  }
+
+  private String submitRemote(
+      PhmmerRequest request, FormRequestBody.ReaderSource sequence, String email, boolean retry)
+      throws IOException {
     var requestBuilder = HttpRequest.newBuilder();
     requestBuilder.uri(phmmerUrl.resolve("run"));
     requestBuilder.header("Content-Type", "application/x-www-form-urlencoded");
-    var body = prepareSubmitRequestBody(request, email);
+    var body = prepareSubmitRequestBody(request, sequence, email);
     requestBuilder.POST(body);
-    var response = httpClient.send(requestBuilder.build(),
-        HttpResponse.BodyHandlers.ofInputStream());
+    var response = send(ClientMetrics.Operation.SUBMIT, requestBuilder.build(),
+        HttpResponse.BodyHandlers.ofInputStream(), retry);
     try (var stream = response.body()) {
       if (response.statusCode() == 200) {
         // don't use StandardCharsets for j2s compatibility
@@ -75,25 +446,49 @@ public class PhmmerClient {
         throw XMLProcessor.processErrorBody(stream);
       }
       else {
-        throw new IOException(format("server returned %d code for URL %s",
-            response.statusCode(), response.uri().toString()));
+        throw new HttpStatusException(response.statusCode(), format(
+            "server returned %d code for URL %s", response.statusCode(), response.uri()));
       }
     }
   }
 
-  private HttpRequest.Body prepareSubmitRequestBody(PhmmerRequest request, String email)
-      throws IOException {
-    var body = new WWWFormURLEncodedRequestBodyBuilder();
+  public CompletableFuture<String> submitAsync(PhmmerRequest request, String email) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return submit(request, email);
+      }
+      catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }, executor);
+  }
+
+  private static String readFully(Reader reader) throws IOException {
+    var out = new StringWriter();
+    char[] buffer = new char[2048];
+    int nRead;
+    while ((nRead = reader.read(buffer, 0, buffer.length)) >= 0)
+      out.write(buffer, 0, nRead);
+    return out.toString();
+  }
+
+  /*
+   * The sequence is url-encoded from its reader straight into the connection
+   * output stream as the body is sent, so it is never copied into a string.
+   */
+  static HttpRequest.Body prepareSubmitRequestBody(
+      PhmmerRequest request, FormRequestBody.ReaderSource sequence, String email) {
+    var body = new FormRequestBody.FieldsBuilder();
     body.append("email", email);
-    {
-      var reader = request.getSequence();
-      var out = new StringWriter();
-      char[] buffer = new char[2048];
-      int nRead;
-      while ((nRead = reader.read(buffer, 0, buffer.length)) >= 0)
-        out.write(buffer, 0, nRead);
-      body.append("sequence", out.toString());
-    }
+    var template = request.getTemplate();
+    if (template != null)
+      body.appendEncoded(template.getEncodedFields());
+    else
+      appendOptionFields(body, request);
+    return new FormRequestBody(body.toByteArray(), "sequence", sequence);
+  }
+
+  static void appendOptionFields(FormRequestBody.FieldsBuilder body, PhmmerRequest request) {
     body.append("database", request.getDatabase().strvalue);
     if (request.getIncE() != null)
       body.append("incE", request.getIncE().toString());
@@ -124,16 +519,61 @@ public class PhmmerClient {
       body.append("evalue", request.getEvalue().toString());
     if (request.getNhits() != null)
       body.append("nhits", request.getNhits().toString());
-    return body.build();
   }
 
   public enum Status {
-    PENDING, QUEUED, RUNNING, FINISHED, ERROR, FAILURE, NOT_FOUND, UNDEFINED
+    PENDING, QUEUED, RUNNING, FINISHED, ERROR, FAILURE, NOT_FOUND, UNDEFINED;
+
+    /**
+     * Whether the job will not change its status any more. UNDEFINED is
+     * final as well since the server gives no sign the job will progress.
+     */
+    public boolean isTerminal() {
+      return this == FINISHED || this == ERROR || this == FAILURE || this == NOT_FOUND ||
+          this == UNDEFINED;
+    }
   }
 
+  @Override
   public Status getStatus(String jobId) throws IOException {
-    var request = HttpRequest.newBuilder(phmmerUrl.resolve("status/" + jobId));
-    var response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    return getStatus(jobId, 0);
+  }
+
+  /*
+   * Gets the status retrying failed requests on the calling thread if the
+   * attempt is 0. Otherwise the request is sent once as the given attempt
+   * and a failure that may be retried is thrown as RetryRequestException,
+   * leaving it to the caller to schedule the next attempt.
+   */
+  Status getStatus(String jobId, int attempt) throws IOException {
+    var cache = resultCache;
+    var fingerprint = jobFingerprints.get(jobId);
+    if (cache != null && fingerprint != null && cache.contains(fingerprint, CACHE_JOB_ID))
+      return Status.FINISHED;
+    var status = getRemoteStatus(jobId, attempt);
+    var journal = jobJournal;
+    if (journal != null)
+      journal.recordStatus(jobId, status);
+    if (cache != null && fingerprint != null && status == Status.FINISHED)
+      cache.store(fingerprint, CACHE_JOB_ID, new ByteArrayInputStream(jobId.getBytes("UTF-8")));
+    return status;
+  }
+
+  private Status getRemoteStatus(String jobId, int attempt) throws IOException {
+    var uri = phmmerUrl.resolve("status/" + jobId);
+    var request = newGetRequest(uri).build();
+    HttpResponse.BodyHandler<String> handler = (info, stream) -> {
+      try (stream) {
+        var body = new String(stream.readAllBytes(), "UTF-8");
+        if (info.statusCode() != 200)
+          throw new HttpStatusException(info.statusCode(), format(
+              "server returned %d code for URL %s", info.statusCode(), uri));
+        return body;
+      }
+    };
+    var response = attempt == 0
+        ? send(ClientMetrics.Operation.GET_STATUS, request, handler, true)
+        : sendAttempt(ClientMetrics.Operation.GET_STATUS, request, handler, retryPolicy, attempt);
     try {
       return Status.valueOf(response.body());
     }
@@ -144,14 +584,93 @@ public class PhmmerClient {
     }
   }
 
+  /**
+   * Returns a future completed with the final status of the job once it is
+   * no longer pending, queued or running. Status polling for all jobs is
+   * timed by a small shared scheduler and the requests are sent on the
+   * client's executor.
+   */
+  @Override
+  public CompletableFuture<Status> awaitCompletion(String jobId) {
+    return statusPoller.watch(jobId);
+  }
+
+  /**
+   * Polls the job status on the calling thread until the job is no longer
+   * pending, queued or running, sleeping between polls as told by the
+   * polling strategy. Meant for callers running on virtual threads, where
+   * a blocked thread is cheap; otherwise prefer {@link #awaitCompletion}.
+   */
+  public Status waitForCompletion(String jobId) throws IOException, InterruptedException {
+    return statusPoller.await(jobId);
+  }
+
+  @FunctionalInterface
+  public interface JobHandler<T> {
+    T handle(String jobId, Status status) throws IOException;
+  }
+
+  /**
+   * Submits the request, waits for the job to complete and passes its id
+   * and final status to the handler, which typically fetches the results.
+   * Everything runs on the calling thread.
+   */
+  public <T> T runJob(PhmmerRequest request, String email, JobHandler<T> handler)
+      throws IOException, InterruptedException {
+    var jobId = submit(request, email);
+    return handler.handle(jobId, waitForCompletion(jobId));
+  }
+
+  /**
+   * Runs {@link #runJob} on the client's executor. Combined with
+   * {@link #useVirtualThreads()} every job gets its own virtual thread.
+   */
+  public <T> CompletableFuture<T> runJobAsync(
+      PhmmerRequest request, String email, JobHandler<T> handler) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return runJob(request, email, handler);
+      }
+      catch (IOException e) {
+        throw new CompletionException(e);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CompletionException(e);
+      }
+    }, executor);
+  }
+
+  @Override
   public Collection<ResultType> getResultTypes(String jobId) throws IOException {
-    var request = HttpRequest.newBuilder(phmmerUrl.resolve("resulttypes/" + jobId));
-    var response = httpClient.send(request.build(),
+    var cache = resultCache;
+    var fingerprint = jobFingerprints.get(jobId);
+    if (cache == null || fingerprint == null)
+      return getRemoteResultTypes(jobId, XMLProcessor::processResultTypesBody);
+    try (var stream = cache.open(fingerprint, CACHE_RESULT_TYPES)) {
+      if (stream != null)
+        return XMLProcessor.processResultTypesBody(stream);
+    }
+    var body = getRemoteResultTypes(jobId, InputStream::readAllBytes);
+    var resultTypes = XMLProcessor.processResultTypesBody(new ByteArrayInputStream(body));
+    cache.store(fingerprint, CACHE_RESULT_TYPES, new ByteArrayInputStream(body));
+    return resultTypes;
+  }
+
+  private interface BodyReader<T> {
+    T read(InputStream stream) throws IOException;
+  }
+
+  private <T> T getRemoteResultTypes(String jobId, BodyReader<T> bodyReader)
+      throws IOException {
+    var request = newGetRequest(phmmerUrl.resolve("resulttypes/" + jobId));
+    var response = send(ClientMetrics.Operation.GET_RESULT_TYPES, request.build(),
         (info, stream) -> {
           if (info.statusCode() != 200)
             throw XMLProcessor.processErrorBody(stream);
-          return XMLProcessor.processResultTypesBody(stream);
-        }
+          return bodyReader.read(stream);
+        },
+        true
     );
     return response.body();
   }
@@ -160,14 +679,486 @@ public class PhmmerClient {
     return phmmerUrl.resolve("result/" + jobId + "/" + identifier);
   }
 
+  @Override
   public InputStream getResultStream(String jobId, String identifier) throws IOException {
-    return getResult(jobId, identifier, HttpResponse.BodyHandlers.ofInputStream());
+    var cache = resultCache;
+    var fingerprint = jobFingerprints.get(jobId);
+    if (cache == null || fingerprint == null)
+      return getResult(jobId, identifier, HttpResponse.BodyHandlers.ofInputStream());
+    var name = CACHE_RESULT_PREFIX + identifier;
+    var cached = cache.open(fingerprint, name);
+    if (cached != null)
+      return cached;
+    return getResult(jobId, identifier, (info, stream) -> {
+      if (info.statusCode() != 200)
+        return stream;
+      try (stream) {
+        cache.store(fingerprint, name, stream);
+      }
+      var stored = cache.open(fingerprint, name);
+      if (stored == null)
+        throw new IOException("result of job " + jobId + " disappeared from the cache");
+      return stored;
+    });
+  }
+
+  /**
+   * Returns the rows selected by the filter. A result already in the cache
+   * is read from it; otherwise the result is streamed from the server
+   * without being cached, so that the download stops as soon as the
+   * filter has read enough.
+   */
+  @Override
+  public List<TabularHit> getResult(String jobId, String identifier,
+      TabularResultReader.Format format, ResultFilter filter) throws IOException {
+    var cache = resultCache;
+    var fingerprint = jobFingerprints.get(jobId);
+    InputStream stream = null;
+    if (cache != null && fingerprint != null)
+      stream = cache.open(fingerprint, CACHE_RESULT_PREFIX + identifier);
+    if (stream == null)
+      stream = getResult(jobId, identifier, HttpResponse.BodyHandlers.ofInputStream());
+    try (var reader = new TabularResultReader(stream, format)) {
+      return filter.apply(reader);
+    }
+  }
+
+  /**
+   * Downloads a result straight to a file. The data is written to a
+   * {@code .part} file next to the target first, named after the job and
+   * the result so that a part file of another download is never reused. An
+   * interrupted transfer is resumed from where it stopped with a range
+   * request, both on retry and on a later call for the same result. The
+   * part file is moved to the target once it is complete.
+   *
+   * @return the target path
+   */
+  public Path downloadResult(String jobId, String identifier, Path target) throws IOException {
+    return downloadAtomically(jobId, identifier, target, (partFile, attempt) -> {
+      try (var channel = FileChannel.open(partFile,
+          StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+        transferResult(jobId, identifier, channel, attempt);
+      }
+    });
+  }
+
+  /**
+   * Downloads a result to a BGZF file, a blocked gzip file that can be read
+   * from any offset with {@link BlockCompressedFile} and by any gzip tool.
+   * Unlike {@link #downloadResult}, a failed transfer starts over.
+   *
+   * @return the target path
+   */
+  public Path downloadCompressedResult(String jobId, String identifier, Path target)
+      throws IOException {
+    return downloadAtomically(jobId, identifier, target, (partFile, attempt) -> {
+      var request = newGetRequest(getResultURL(jobId, identifier)).build();
+      sendAttempt(ClientMetrics.Operation.GET_RESULT, request, (info, stream) -> {
+        try (stream) {
+          if (info.statusCode() != 200)
+            throw new HttpStatusException(info.statusCode(), format(
+                "server returned %d code for URL %s", info.statusCode(),
+                getResultURL(jobId, identifier)));
+          long expectedEnd = isContentEncoded(info) ? -1 : expectedContentEnd(info, 0);
+          long transferred;
+          try (var out = new BlockCompressedOutputStream(Files.newOutputStream(partFile))) {
+            transferred = stream.transferTo(out);
+          }
+          if (expectedEnd >= 0 && transferred < expectedEnd)
+            throw new IOException(format("transfer of %s interrupted after %d of %d bytes",
+                getResultURL(jobId, identifier), transferred, expectedEnd));
+          return null;
+        }
+      }, retryPolicy, attempt);
+    });
+  }
+
+  private interface PartTransfer {
+    void transfer(Path partFile, int attempt) throws IOException;
+  }
+
+  static Path partFile(Path target, String jobId, String identifier) {
+    var key = RequestFingerprint.sha256Hex(jobId + "/" + identifier).substring(0, 16);
+    return target.resolveSibling(target.getFileName() + "." + key + ".part");
+  }
+
+  /*
+   * Runs the transfer into a .part file next to the target, then moves the
+   * part file to the target. This is the only retry layer of a download:
+   * each attempt sends a single request, and a failed request or a transfer
+   * broken off midway is tried again after the retry policy's delay.
+   */
+  private Path downloadAtomically(
+      String jobId, String identifier, Path target, PartTransfer transfer)
+      throws IOException {
+    var partFile = partFile(target, jobId, identifier);
+    var policy = retryPolicy;
+    for (int attempt = 1; ; attempt++) {
+      long delayMillis;
+      try {
+        transfer.transfer(partFile, attempt);
+        break;
+      }
+      catch (RetryRequestException e) {
+        delayMillis = e.delayMillis;
+      }
+      catch (IOException e) {
+        if (e instanceof HttpStatusException ||
+            (e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException)))
+          throw e;
+        delayMillis = policy.retryDelayMillis(attempt, -1);
+        if (delayMillis < 0)
+          throw e;
+      }
+      try {
+        Thread.sleep(delayMillis);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("interrupted while waiting to resume the download");
+      }
+    }
+    Files.move(partFile, target, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    var journal = jobJournal;
+    if (journal != null)
+      journal.recordResult(jobId, identifier, target);
+    return target;
+  }
+
+  /*
+   * Appends the remaining part of the result to the channel, requesting
+   * only the missing bytes if the channel already contains some.
+   */
+  private void transferResult(String jobId, String identifier, FileChannel channel, int attempt)
+      throws IOException {
+    final long offset = channel.size();
+    // ranges of an encoded response are not ranges of the result, so resume uncompressed
+    var request = offset > 0
+        ? HttpRequest.newBuilder(getResultURL(jobId, identifier))
+        : newGetRequest(getResultURL(jobId, identifier));
+    if (offset > 0)
+      request.header("Range", "bytes=" + offset + "-");
+    sendAttempt(ClientMetrics.Operation.GET_RESULT, request.build(), (info, stream) -> {
+      try (stream) {
+        long position;
+        if (info.statusCode() == 206) {
+          position = offset;
+        }
+        else if (info.statusCode() == 200) {
+          // the server ignored the range, start over
+          channel.truncate(0);
+          position = 0;
+        }
+        else if (info.statusCode() == 416 && offset > 0) {
+          // nothing left to download if the part file is as long as the result
+          if (expectedContentEnd(info, -1) == offset)
+            return null;
+          channel.truncate(0);
+          throw new IOException(format("part file of %s does not match the result, " +
+              "restarting the download", getResultURL(jobId, identifier)));
+        }
+        else {
+          throw new HttpStatusException(info.statusCode(), format(
+              "server returned %d code for URL %s", info.statusCode(),
+              getResultURL(jobId, identifier)));
+        }
+        long expectedEnd = isContentEncoded(info) ? -1 : expectedContentEnd(info, position);
+        var source = Channels.newChannel(stream);
+        long transferred;
+        while ((transferred = channel.transferFrom(source, position, 1 << 20)) > 0)
+          position += transferred;
+        if (expectedEnd >= 0 && position < expectedEnd)
+          throw new IOException(format("transfer of %s interrupted after %d of %d bytes",
+              getResultURL(jobId, identifier), position, expectedEnd));
+        return null;
+      }
+    }, retryPolicy, attempt);
+  }
+
+  /*
+   * Returns the file size the transfer should end at according to the
+   * Content-Range or Content-Length header, or -1 if it is not known.
+   */
+  private static long expectedContentEnd(HttpResponse.ResponseInfo info, long start) {
+    try {
+      var contentRange = info.headers().firstValue("Content-Range");
+      if (contentRange.isPresent()) {
+        var value = contentRange.get();
+        int slash = value.lastIndexOf('/');
+        int dash = value.indexOf('-');
+        if (slash >= 0 && !value.endsWith("*"))
+          return Long.parseLong(value.substring(slash + 1).trim());
+        if (dash >= 0 && slash > dash)
+          return Long.parseLong(value.substring(dash + 1, slash).trim()) + 1;
+      }
+      var contentLength = info.headers().firstValue("Content-Length");
+      if (contentLength.isPresent())
+        return start + Long.parseLong(contentLength.get().trim());
+    }
+    catch (NumberFormatException ignored) {
+    }
+    return -1;
+  }
+
+  public int getMaxConcurrentDownloads() {
+    return downloadLimiter.getLimit();
+  }
+
+  /**
+   * Sets the maximum number of results this client downloads at the same
+   * time, 4 by default. Each client has its own limit, so clients sharing
+   * a host should divide the host's allowance between them.
+   */
+  public void setMaxConcurrentDownloads(int maxConcurrentDownloads) {
+    downloadLimiter.setLimit(maxConcurrentDownloads);
+  }
+
+  /**
+   * Downloads every result of a finished job whose identifier or media type
+   * is listed in selectors into the directory, fetching them concurrently
+   * within the client's download limit. An empty selection downloads all
+   * results. Each result is saved as {@code <identifier>.<fileSuffix>}.
+   * When one download fails the others are cancelled; those not started yet
+   * are skipped and those in progress run to completion.
+   *
+   * @return future completed with the saved files by result identifier once
+   *     all downloads are done, or exceptionally with the first failure
+   */
+  public CompletableFuture<Map<String, Path>> downloadResults(
+      String jobId, Collection<String> selectors, Path directory) {
+    var limiter = downloadLimiter;
+    var executor = this.executor;
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        Files.createDirectories(directory);
+        return getResultTypes(jobId);
+      }
+      catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }, executor).thenCompose(resultTypes -> {
+      var downloads = new HashMap<String, CompletableFuture<Path>>();
+      for (var type : resultTypes) {
+        if (!selectors.isEmpty() && !selectors.contains(type.getIdentifier()) &&
+            !selectors.contains(type.getMediaType()))
+          continue;
+        var target = directory.resolve(type.getIdentifier() + "." + type.getFileSuffix());
+        downloads.put(type.getIdentifier(), limiter.submit(
+            () -> downloadResult(jobId, type.getIdentifier(), target), executor));
+      }
+      var result = new CompletableFuture<Map<String, Path>>();
+      var paths = new ConcurrentHashMap<String, Path>();
+      downloads.forEach((identifier, download) -> download.whenComplete((path, exc) -> {
+        if (exc != null) {
+          if (result.completeExceptionally(exc))
+            downloads.values().forEach(sibling -> sibling.cancel(false));
+          return;
+        }
+        paths.put(identifier, path);
+        if (paths.size() == downloads.size())
+          result.complete(new HashMap<>(paths));
+      }));
+      if (downloads.isEmpty())
+        result.complete(new HashMap<>());
+      return result;
+    });
   }
 
   public <T> T getResult(String jobId, String identifier, HttpResponse.BodyHandler<T> handler)
       throws IOException{
-    var request = HttpRequest.newBuilder(getResultURL(jobId, identifier));
-    var response = httpClient.send(request.build(), handler);
+    var request = newGetRequest(getResultURL(jobId, identifier));
+    var response = send(ClientMetrics.Operation.GET_RESULT, request.build(), handler, true);
     return response.body();
   }
+
+  /*
+   * Sends the request, retrying it according to the retry policy if
+   * `retry` is set and sleeping on the calling thread between attempts.
+   */
+  private <T> HttpResponse<T> send(
+      ClientMetrics.Operation operation, HttpRequest request,
+      HttpResponse.BodyHandler<T> handler, boolean retry)
+      throws IOException {
+    var policy = retry ? retryPolicy : RetryPolicy.none();
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return sendAttempt(operation, request, handler, policy, attempt);
+      }
+      catch (RetryRequestException e) {
+        try {
+          Thread.sleep(e.delayMillis);
+        }
+        catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("interrupted while waiting to retry the request");
+        }
+      }
+    }
+  }
+
+  /*
+   * Sends the request once. A failure the policy allows to retry is thrown
+   * as RetryRequestException with the delay before the next attempt; the
+   * handler sees only responses that are not retried.
+   *
+   * Submissions are not idempotent: a submission the server accepted just
+   * before the connection failed would create a duplicate job if sent again.
+   * They are therefore retried only if the connection could not be opened or
+   * the server refused them with 429 or 503. Only submissions are reported
+   * to the circuit breaker and wait for it.
+   */
+  private <T> HttpResponse<T> sendAttempt(
+      ClientMetrics.Operation operation, HttpRequest request,
+      HttpResponse.BodyHandler<T> handler, RetryPolicy policy, int attempt)
+      throws IOException {
+    final boolean submit = operation == ClientMetrics.Operation.SUBMIT;
+    final var breaker = circuitBreaker;
+    if (submit)
+      acquire(breaker);
+    final boolean[] responded = {false};
+    try {
+      return sendMeasured(operation, request, (info, stream) -> {
+        responded[0] = true;
+        int statusCode = info.statusCode();
+        boolean overload = CircuitBreaker.isOverload(statusCode);
+        boolean retryable = policy.isRetryable(statusCode) &&
+            (!submit || statusCode == 429 || statusCode == 503);
+        long retryAfterMillis = overload || retryable ? retryAfterMillis(info) : -1;
+        if (submit && overload)
+          breaker.recordFailure(TimeUnit.MILLISECONDS.toNanos(retryAfterMillis));
+        else if (submit)
+          breaker.recordSuccess();
+        if (retryable) {
+          long delay = policy.retryDelayMillis(attempt, retryAfterMillis);
+          if (delay >= 0) {
+            stream.close();
+            throw new RetryRequestException(delay, null);
+          }
+        }
+        return handler.apply(info, decodeContent(info, stream));
+      });
+    }
+    catch (RetryRequestException e) {
+      throw e;
+    }
+    catch (IOException e) {
+      // exceptions thrown after the response arrived come from the handler
+      if (responded[0])
+        throw e;
+      if (submit)
+        breaker.recordFailure(0);
+      long delay = !submit || isConnectFailure(e) ? policy.retryDelayMillis(attempt, -1) : -1;
+      if (delay < 0)
+        throw e;
+      throw new RetryRequestException(delay, e);
+    }
+  }
+
+  private static boolean isConnectFailure(IOException e) {
+    return e instanceof ConnectException || e instanceof NoRouteToHostException ||
+        e instanceof UnknownHostException;
+  }
+
+  static final class RetryRequestException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    final long delayMillis;
+
+    RetryRequestException(long delayMillis, IOException cause) {
+      super("request will be retried", cause);
+      this.delayMillis = delayMillis;
+    }
+  }
+
+  private static void acquire(CircuitBreaker breaker) throws InterruptedIOException {
+    try {
+      breaker.acquire();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while waiting for the circuit breaker");
+    }
+  }
+
+  /*
+   * Returns the delay given by the Retry-After header in seconds or as
+   * a date, or -1 if it is missing or malformed.
+   */
+  private static long retryAfterMillis(HttpResponse.ResponseInfo info) {
+    var header = info.headers().firstValue("Retry-After");
+    if (header.isEmpty())
+      return -1;
+    var value = header.get().trim();
+    try {
+      return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+    }
+    catch (NumberFormatException ignored) {
+    }
+    try {
+      var date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+      return Math.max(0, date.toInstant().toEpochMilli() - System.currentTimeMillis());
+    }
+    catch (DateTimeParseException e) {
+      return -1;
+    }
+  }
+
+  private HttpRequest.Builder newGetRequest(URI uri) {
+    var builder = HttpRequest.newBuilder(uri);
+    if (compressedTransfer)
+      builder.header("Accept-Encoding", "gzip, deflate");
+    return builder;
+  }
+
+  private static boolean isContentEncoded(HttpResponse.ResponseInfo info) {
+    var encoding = info.headers().firstValue("Content-Encoding");
+    return encoding.isPresent() && !encoding.get().trim().equalsIgnoreCase("identity");
+  }
+
+  /*
+   * Wraps the response body in a decompressing stream according to its
+   * content encoding. An empty body is returned as is since it has no
+   * compression header to read.
+   */
+  private static InputStream decodeContent(HttpResponse.ResponseInfo info, InputStream stream)
+      throws IOException {
+    var encoding = info.headers().firstValue("Content-Encoding");
+    if (encoding.isEmpty())
+      return stream;
+    var name = encoding.get().trim().toLowerCase(Locale.ROOT);
+    if (!name.equals("gzip") && !name.equals("x-gzip") && !name.equals("deflate"))
+      return stream;
+    var pushback = new PushbackInputStream(stream, 1);
+    int first = pushback.read();
+    if (first < 0)
+      return pushback;
+    pushback.unread(first);
+    return name.equals("deflate")
+        ? new InflaterInputStream(pushback)
+        : new GZIPInputStream(pushback, 8192);
+  }
+
+  /*
+   * Sends the request reporting its latency, status code and the number of
+   * body bytes read to the metrics.
+   */
+  private <T> HttpResponse<T> sendMeasured(
+      ClientMetrics.Operation operation, HttpRequest request, HttpResponse.BodyHandler<T> handler)
+      throws IOException {
+    var metrics = this.metrics;
+    if (metrics == ClientMetrics.NOOP)
+      return transport.send(request, handler);
+    int[] statusCode = {-1};
+    long start = System.nanoTime();
+    try {
+      return transport.send(request, (info, stream) -> {
+        statusCode[0] = info.statusCode();
+        return handler.apply(info, new CountingInputStream(stream, metrics, operation));
+      });
+    }
+    finally {
+      metrics.recordRequest(operation, System.nanoTime() - start, statusCode[0]);
+    }
+  }
 }
@@ -1,6 +1,8 @@
 package uk.ac.dundee.compbio.hmmerclient;
 
+import java.io.IOException;
 import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.util.Objects;
 
 import static uk.ac.dundee.compbio.hmmerclient.ExceptionUtils.newIAE;
@@ -214,11 +216,24 @@ public class PhmmerRequest {
     public PhmmerRequest build() {
       if (sequence == null)
         throw newISE("sequence not set");
+      validate();
+      return new PhmmerRequest(this);
+    }
+
+    /**
+     * Validates the options and returns a template binding them to any
+     * number of sequences. A sequence set on this builder is ignored.
+     */
+    public PhmmerRequestTemplate buildTemplate() {
+      validate();
+      return new PhmmerRequestTemplate(new PhmmerRequest(this));
+    }
+
+    private void validate() {
       boolean usingE = incE != null || incdomE != null || E != null || domE != null;
       boolean usingT = incT != null || incdomT != null || T != null || domT != null;
       if (usingE && usingT)
         throw newISE("using both E-value and bit scores is not allowed");
-      return new PhmmerRequest(this);
     }
   }
 
@@ -257,120 +272,167 @@ public class PhmmerRequest {
     }
   }
 
-  private final Float incE;
-  private final Float incdomE;
-  private final Float E;
-  private final Float domE;
-  private final Float incT;
-  private final Float incdomT;
-  private final Float T;
-  private final Float domT;
-  private final Float popen;
-  private final Float pextend;
-  private final SubstitutionMatrix mx;
-  private final boolean noBias;
-  private final boolean compressedOut;
-  private final boolean alignView;
-  private final SequenceDatabase database;
-  private final Float evalue;
+  /*
+   * The validated search options. Requests bound by a template share the
+   * template's instance rather than copying it.
+   */
+  private static final class Options {
+    final Float incE;
+    final Float incdomE;
+    final Float E;
+    final Float domE;
+    final Float incT;
+    final Float incdomT;
+    final Float T;
+    final Float domT;
+    final Float popen;
+    final Float pextend;
+    final SubstitutionMatrix mx;
+    final boolean noBias;
+    final boolean compressedOut;
+    final boolean alignView;
+    final SequenceDatabase database;
+    final Float evalue;
+    final Integer nhits;
+
+    Options(Builder builder) {
+      incE = builder.incE;
+      incdomE = builder.incdomE;
+      E = builder.E;
+      domE = builder.domE;
+      incT = builder.incT;
+      incdomT = builder.incdomT;
+      T = builder.T;
+      domT = builder.domT;
+      popen = builder.popen;
+      pextend = builder.pextend;
+      mx = builder.mx;
+      noBias = builder.noBias;
+      compressedOut = builder.compressedOut;
+      alignView = builder.alignView;
+      database = builder.database;
+      evalue = builder.evalue;
+      nhits = builder.nhits;
+    }
+  }
+
+  private final Options options;
   private final Reader sequence;
-  private final Integer nhits;
+  private final SequenceSource sequenceSource;
+  private final PhmmerRequestTemplate template;
 
   public static PhmmerRequest.Builder newBuilder() {
     return new Builder();
   }
 
   private PhmmerRequest(Builder builder) {
-    incE = builder.incE;
-    incdomE = builder.incdomE;
-    E = builder.E;
-    domE = builder.domE;
-    incT = builder.incT;
-    incdomT = builder.incdomT;
-    T = builder.T;
-    domT = builder.domT;
-    popen = builder.popen;
-    pextend = builder.pextend;
-    mx = builder.mx;
-    noBias = builder.noBias;
-    compressedOut = builder.compressedOut;
-    alignView = builder.alignView;
-    database = builder.database;
-    evalue = builder.evalue;
+    options = new Options(builder);
     sequence = builder.sequence;
-    nhits = builder.nhits;
+    sequenceSource = null;
+    template = null;
+  }
+
+  // shares the already validated options of a template
+  PhmmerRequest(PhmmerRequest options, SequenceSource sequenceSource,
+      PhmmerRequestTemplate template) {
+    this.options = options.options;
+    this.sequence = null;
+    this.sequenceSource = sequenceSource;
+    this.template = template;
   }
 
   public Float getIncE() {
-    return incE;
+    return options.incE;
   }
 
   public Float getIncdomE() {
-    return incdomE;
+    return options.incdomE;
   }
 
   public Float getE() {
-    return E;
+    return options.E;
   }
 
   public Float getDomE() {
-    return domE;
+    return options.domE;
   }
 
   public Float getIncT() {
-    return incT;
+    return options.incT;
   }
 
   public Float getIncdomT() {
-    return incdomT;
+    return options.incdomT;
   }
 
   public Float getT() {
-    return T;
+    return options.T;
   }
 
   public Float getDomT() {
-    return domT;
+    return options.domT;
   }
 
   public Float getPopen() {
-    return popen;
+    return options.popen;
   }
 
   public Float getPextend() {
-    return pextend;
+    return options.pextend;
   }
 
   public SubstitutionMatrix getMx() {
-    return mx;
+    return options.mx;
   }
 
   public boolean getNoBias() {
-    return noBias;
+    return options.noBias;
   }
 
   public boolean getCompressedOut() {
-    return compressedOut;
+    return options.compressedOut;
   }
 
   public boolean getAlignView() {
-    return alignView;
+    return options.alignView;
   }
 
   public SequenceDatabase getDatabase() {
-    return database;
+    return options.database;
   }
 
   public Float getEvalue() {
-    return evalue;
+    return options.evalue;
   }
 
+  /**
+   * Returns the sequence reader. For a request bound to a sequence source
+   * a new reader is opened on every call.
+   *
+   * @throws UncheckedIOException if the sequence source cannot be opened
+   */
   public Reader getSequence() {
-    return sequence;
+    if (sequenceSource == null)
+      return sequence;
+    try {
+      return sequenceSource.openReader();
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Replayable sequence of a request bound by a template or null. */
+  public SequenceSource getSequenceSource() {
+    return sequenceSource;
+  }
+
+  PhmmerRequestTemplate getTemplate() {
+    return template;
   }
 
   public Integer getNhits() {
-    return nhits;
+    return options.nhits;
   }
 
 }
@@ -0,0 +1,43 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import java.util.Objects;
+
+/**
+ * Search options validated once and bound to any number of sequences.
+ * The submit form fields and the fingerprint input of the options are
+ * prepared when the template is built, and bound requests share the
+ * template's options instead of copying them. Bound requests read their sequence from a replayable
+ * {@link SequenceSource}, which lets the client retry their submission.
+ *
+ * @see PhmmerRequest.Builder#buildTemplate()
+ */
+public final class PhmmerRequestTemplate {
+  private final PhmmerRequest options;
+  private final byte[] encodedFields;
+  private final String canonicalOptions;
+
+  PhmmerRequestTemplate(PhmmerRequest options) {
+    this.options = options;
+    var fields = new FormRequestBody.FieldsBuilder();
+    PhmmerClient.appendOptionFields(fields, options);
+    this.encodedFields = fields.toByteArray();
+    this.canonicalOptions = RequestFingerprint.canonicalOptions(options);
+  }
+
+  public PhmmerRequest bind(SequenceSource sequence) {
+    return new PhmmerRequest(options, Objects.requireNonNull(sequence), this);
+  }
+
+  public PhmmerRequest bind(CharSequence sequence) {
+    return bind(SequenceSource.of(sequence));
+  }
+
+  /** Url-encoded option fields of the submit form. */
+  byte[] getEncodedFields() {
+    return encodedFields;
+  }
+
+  String getCanonicalOptions() {
+    return canonicalOptions;
+  }
+}
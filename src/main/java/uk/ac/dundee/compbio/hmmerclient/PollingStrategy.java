@@ -0,0 +1,32 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import uk.ac.dundee.compbio.hmmerclient.PhmmerClient.Status;
+
+/**
+ * Decides how long to wait before polling the status of a job again.
+ */
+@FunctionalInterface
+public interface PollingStrategy {
+
+  /**
+   * Returns the delay in milliseconds before the next status request.
+   *
+   * @param previous status seen before the last poll, or null if the job was
+   *     not polled yet
+   * @param current status seen by the last poll
+   * @param unchangedPolls number of consecutive polls that returned
+   *     the current status, not counting the one that changed it
+   * @param elapsedMillis time since the job started being watched
+   */
+  long nextDelayMillis(Status previous, Status current, int unchangedPolls, long elapsedMillis);
+
+  static PollingStrategy fixedDelay(long delayMillis) {
+    if (delayMillis < 0)
+      throw ExceptionUtils.newIAE("delay must not be negative");
+    return (previous, current, unchangedPolls, elapsedMillis) -> delayMillis;
+  }
+
+  static PollingStrategy defaultStrategy() {
+    return BackoffPollingStrategy.newBuilder().build();
+  }
+}
@@ -0,0 +1,95 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Canonical fingerprint of a search. Two requests have the same fingerprint
+ * when their sequences have the same residues and every search and output
+ * option is equal, regardless of the FASTA header, line breaks or letter case
+ * of the sequence.
+ */
+final class RequestFingerprint {
+  private RequestFingerprint() {}
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  static String of(PhmmerRequest request, CharSequence sequence) {
+    var template = request.getTemplate();
+    var options = template != null ? template.getCanonicalOptions() : canonicalOptions(request);
+    var canonical = new StringBuilder(options.length() + sequence.length() + 16);
+    canonical.append(options).append("sequence=");
+    appendNormalizedResidues(canonical, sequence);
+    return sha256Hex(canonical);
+  }
+
+  static String canonicalOptions(PhmmerRequest request) {
+    var canonical = new StringBuilder(256);
+    appendOption(canonical, "database", request.getDatabase().strvalue);
+    appendOption(canonical, "incE", request.getIncE());
+    appendOption(canonical, "incdomE", request.getIncdomE());
+    appendOption(canonical, "E", request.getE());
+    appendOption(canonical, "domE", request.getDomE());
+    appendOption(canonical, "incT", request.getIncT());
+    appendOption(canonical, "incdomT", request.getIncdomT());
+    appendOption(canonical, "T", request.getT());
+    appendOption(canonical, "domT", request.getDomT());
+    appendOption(canonical, "popen", request.getPopen());
+    appendOption(canonical, "pextend", request.getPextend());
+    appendOption(canonical, "mx", request.getMx() != null ? request.getMx().strvalue : null);
+    appendOption(canonical, "nobias", request.getNoBias());
+    appendOption(canonical, "compressedout", request.getCompressedOut());
+    appendOption(canonical, "alignView", request.getAlignView());
+    appendOption(canonical, "evalue", request.getEvalue());
+    appendOption(canonical, "nhits", request.getNhits());
+    return canonical.toString();
+  }
+
+  private static void appendOption(StringBuilder out, String name, Object value) {
+    out.append(name).append('=');
+    if (value != null)
+      out.append(value);
+    out.append('\n');
+  }
+
+  /*
+   * Appends the residues of a plain or FASTA formatted sequence in upper case,
+   * skipping header and comment lines and all white space.
+   */
+  static void appendNormalizedResidues(StringBuilder out, CharSequence sequence) {
+    boolean lineStart = true;
+    boolean skipLine = false;
+    for (int i = 0; i < sequence.length(); i++) {
+      char c = sequence.charAt(i);
+      if (c == '\n' || c == '\r') {
+        lineStart = true;
+        skipLine = false;
+        continue;
+      }
+      if (lineStart && (c == '>' || c == ';'))
+        skipLine = true;
+      lineStart = false;
+      if (skipLine || Character.isWhitespace(c))
+        continue;
+      out.append(Character.toUpperCase(c));
+    }
+  }
+
+  static String sha256Hex(CharSequence text) {
+    final byte[] digest;
+    try {
+      // don't use StandardCharsets for j2s compatibility
+      digest = MessageDigest.getInstance("SHA-256").digest(text.toString().getBytes("UTF-8"));
+    }
+    catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    }
+    var hex = new char[digest.length * 2];
+    for (int i = 0; i < digest.length; i++) {
+      hex[2 * i] = HEX[(digest[i] >> 4) & 0xf];
+      hex[2 * i + 1] = HEX[digest[i] & 0xf];
+    }
+    return new String(hex);
+  }
+}
@@ -0,0 +1,246 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import static uk.ac.dundee.compbio.hmmerclient.ExceptionUtils.newIAE;
+
+/**
+ * On-disk store of search results keyed by request fingerprint. Entries are
+ * kept in one directory per fingerprint, evicted least recently used first
+ * when the total size exceeds the limit, and expire a fixed time after they
+ * were written. The entries of a fingerprint are dropped together: when one
+ * of them is evicted, expires or disappears, so do the others, and the job
+ * id is never served without the results stored alongside it.
+ */
+public class ResultCache {
+
+  private static final class Entry {
+    final String key;
+    final Path path;
+    final long size;
+    final long createdMillis;
+
+    Entry(String key, Path path, long size, long createdMillis) {
+      this.key = key;
+      this.path = path;
+      this.size = size;
+      this.createdMillis = createdMillis;
+    }
+  }
+
+  private final Path directory;
+  private final long maxBytes;
+  private final long ttlMillis;
+  // access ordered, the eldest entry is the least recently used one
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+  private long totalBytes = 0;
+
+  public ResultCache(Path directory, long maxBytes, Duration ttl) throws IOException {
+    if (maxBytes <= 0)
+      throw newIAE("maxBytes must be greater than 0");
+    if (ttl.isNegative() || ttl.isZero())
+      throw newIAE("ttl must be positive");
+    this.directory = Files.createDirectories(directory);
+    this.maxBytes = maxBytes;
+    this.ttlMillis = ttl.toMillis();
+    loadIndex();
+  }
+
+  private void loadIndex() throws IOException {
+    var found = new ArrayList<Entry>();
+    long now = System.currentTimeMillis();
+    try (DirectoryStream<Path> fingerprints = Files.newDirectoryStream(directory)) {
+      for (Path fingerprintDir : fingerprints) {
+        if (!Files.isDirectory(fingerprintDir))
+          continue;
+        var group = new ArrayList<Entry>();
+        boolean expired = false;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(fingerprintDir)) {
+          for (Path file : files) {
+            var name = file.getFileName().toString();
+            var entry = new Entry(fingerprintDir.getFileName() + "/" + name, file,
+                Files.size(file), Files.getLastModifiedTime(file).toMillis());
+            if (name.endsWith(".tmp")) {
+              Files.deleteIfExists(file);
+              continue;
+            }
+            expired |= isExpired(entry, now);
+            group.add(entry);
+          }
+        }
+        if (expired) {
+          for (var entry : group)
+            Files.deleteIfExists(entry.path);
+          group.clear();
+        }
+        if (group.isEmpty())
+          Files.deleteIfExists(fingerprintDir);
+        found.addAll(group);
+      }
+    }
+    // access times are not persisted, so the oldest entries are assumed least recently used
+    found.sort(Comparator.comparingLong(entry -> entry.createdMillis));
+    synchronized (this) {
+      for (var entry : found) {
+        entries.put(entry.key, entry);
+        totalBytes += entry.size;
+      }
+      evict(null);
+    }
+  }
+
+  public Path getDirectory() {
+    return directory;
+  }
+
+  public synchronized long size() {
+    return totalBytes;
+  }
+
+  public synchronized int entryCount() {
+    return entries.size();
+  }
+
+  synchronized boolean contains(String fingerprint, String name) {
+    return lookup(key(fingerprint, name)) != null;
+  }
+
+  /**
+   * Opens a cached entry or returns null if it is missing or expired.
+   */
+  InputStream open(String fingerprint, String name) throws IOException {
+    final Entry entry;
+    synchronized (this) {
+      entry = lookup(key(fingerprint, name));
+    }
+    if (entry == null)
+      return null;
+    try {
+      return Files.newInputStream(entry.path);
+    }
+    catch (NoSuchFileException e) {
+      synchronized (this) {
+        removeGroup(fingerprint, null);
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Writes the stream content to the cache, replacing any existing entry.
+   * The content becomes visible only after it has been written completely.
+   */
+  void store(String fingerprint, String name, InputStream content) throws IOException {
+    var key = key(fingerprint, name);
+    var fingerprintDir = Files.createDirectories(directory.resolve(fingerprint));
+    var target = fingerprintDir.resolve(name);
+    var temp = Files.createTempFile(fingerprintDir, name, ".tmp");
+    long size;
+    try {
+      size = Files.copy(content, temp, StandardCopyOption.REPLACE_EXISTING);
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (IOException e) {
+      Files.deleteIfExists(temp);
+      throw e;
+    }
+    long now = System.currentTimeMillis();
+    synchronized (this) {
+      var previous = entries.put(key, new Entry(key, target, size, now));
+      if (previous != null)
+        totalBytes -= previous.size;
+      totalBytes += size;
+      evict(key);
+    }
+  }
+
+  public synchronized void invalidate(String fingerprint) throws IOException {
+    removeGroup(fingerprint, null);
+  }
+
+  public synchronized void clear() throws IOException {
+    for (var key : new ArrayList<>(entries.keySet()))
+      remove(key);
+  }
+
+  private Entry lookup(String key) {
+    var entry = entries.get(key);
+    if (entry != null && isExpired(entry, System.currentTimeMillis())) {
+      try {
+        removeGroup(fingerprintOf(key), null);
+      }
+      catch (IOException ignored) {
+        // the file is left behind and deleted when the cache is loaded again
+      }
+      return null;
+    }
+    return entry;
+  }
+
+  private boolean isExpired(Entry entry, long now) {
+    return now - entry.createdMillis > ttlMillis;
+  }
+
+  /*
+   * Removes the least recently used entry and the other entries of its
+   * fingerprint until the size limit is met. Expired entries are removed
+   * lazily when they are looked up. The entry that was just written is kept
+   * even if it alone exceeds the limit so that it can still be read once.
+   */
+  private void evict(String keep) throws IOException {
+    while (totalBytes > maxBytes) {
+      String eldest = null;
+      for (var key : entries.keySet()) {
+        if (!key.equals(keep)) {
+          eldest = key;
+          break;
+        }
+      }
+      if (eldest == null)
+        return;
+      removeGroup(fingerprintOf(eldest), keep);
+    }
+  }
+
+  private void removeGroup(String fingerprint, String keep) throws IOException {
+    var prefix = fingerprint + "/";
+    var keys = new ArrayList<String>();
+    for (var key : entries.keySet())
+      if (key.startsWith(prefix) && !key.equals(keep))
+        keys.add(key);
+    for (var key : keys)
+      remove(key);
+  }
+
+  private void remove(String key) throws IOException {
+    var entry = entries.remove(key);
+    if (entry == null)
+      return;
+    totalBytes -= entry.size;
+    Files.deleteIfExists(entry.path);
+  }
+
+  private static String fingerprintOf(String key) {
+    return key.substring(0, key.indexOf('/'));
+  }
+
+  private static String key(String fingerprint, String name) {
+    Objects.requireNonNull(fingerprint);
+    Objects.requireNonNull(name);
+    return fingerprint + "/" + name;
+  }
+}
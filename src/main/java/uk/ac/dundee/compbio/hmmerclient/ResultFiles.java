@@ -0,0 +1,70 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static java.lang.String.format;
+
+/**
+ * Helpers for reading downloaded result files without copying them onto
+ * the heap.
+ */
+public final class ResultFiles {
+  private ResultFiles() {}
+
+  /**
+   * Maps the whole file into memory read-only. The mapping stays valid after
+   * this method returns and is released when the buffer is garbage collected.
+   */
+  public static MappedByteBuffer map(Path file) throws IOException {
+    try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE)
+        throw new IOException(format("file %s is too large to be mapped at once", file));
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+  }
+
+  /**
+   * Returns a stream reading the remaining bytes of the buffer, e.g. to feed
+   * a mapped result to {@link TabularResultReader}. The buffer's position is
+   * not modified.
+   */
+  public static InputStream newInputStream(ByteBuffer buffer) {
+    var view = buffer.duplicate();
+    return new InputStream() {
+      @Override
+      public int read() {
+        return view.hasRemaining() ? view.get() & 0xff : -1;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) {
+        if (len == 0)
+          return 0;
+        if (!view.hasRemaining())
+          return -1;
+        len = Math.min(len, view.remaining());
+        view.get(b, off, len);
+        return len;
+      }
+
+      @Override
+      public long skip(long n) {
+        int skipped = (int) Math.max(0, Math.min(n, view.remaining()));
+        view.position(view.position() + skipped);
+        return skipped;
+      }
+
+      @Override
+      public int available() {
+        return view.remaining();
+      }
+    };
+  }
+}
@@ -0,0 +1,219 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import static uk.ac.dundee.compbio.hmmerclient.ExceptionUtils.newIAE;
+
+/**
+ * Selects and projects the rows of a tabular result while it is being read.
+ * Rows are kept when their full sequence E-value and bit score pass the
+ * thresholds. With a top-N limit only the N best scoring rows are held, in a
+ * bounded heap, so memory use depends on N and not on the result size.
+ * <p>
+ * hmmer ranks its tables by the full sequence score, so by default the
+ * filter stops reading at the first row past a threshold, or once N rows
+ * were collected. Use {@code sortedInput(false)} for tables that were
+ * reordered.
+ */
+public final class ResultFilter {
+
+  /** Fields of a {@link TabularHit} that can be projected. */
+  public enum Column {
+    TARGET_NAME, TARGET_ACCESSION, QUERY_NAME, QUERY_ACCESSION, DESCRIPTION,
+    TARGET_LENGTH, QUERY_LENGTH, EVALUE, SCORE, BIAS,
+    DOMAIN_EVALUE, DOMAIN_CONDITIONAL_EVALUE, DOMAIN_SCORE, DOMAIN_BIAS,
+    DOMAIN_INDEX, DOMAIN_COUNT, HMM_FROM, HMM_TO, ALI_FROM, ALI_TO,
+    ENV_FROM, ENV_TO, ACCURACY
+  }
+
+  public static final class Builder {
+    private double maxEvalue = Double.POSITIVE_INFINITY;
+    private double minScore = Double.NEGATIVE_INFINITY;
+    private int topN = -1;
+    private Set<Column> columns = EnumSet.allOf(Column.class);
+    private boolean sortedInput = true;
+
+    private Builder() {}
+
+    /** Keeps rows whose full sequence E-value is at most the given value. */
+    public Builder maxEvalue(double maxEvalue) {
+      if (!(maxEvalue >= 0))
+        throw newIAE("maxEvalue must be greater or equal to 0");
+      this.maxEvalue = maxEvalue;
+      return this;
+    }
+
+    /** Keeps rows whose full sequence bit score is at least the given value. */
+    public Builder minScore(double minScore) {
+      if (Double.isNaN(minScore))
+        throw newIAE("minScore must be a number");
+      this.minScore = minScore;
+      return this;
+    }
+
+    /** Keeps only the n rows with the highest bit score. */
+    public Builder topN(int n) {
+      if (n < 1)
+        throw newIAE("topN must be at least 1");
+      this.topN = n;
+      return this;
+    }
+
+    /**
+     * Sets the fields copied to the returned hits. Text fields not selected
+     * are left empty, numeric ones are set to NaN or -1. The bit score is
+     * always kept.
+     */
+    public Builder columns(Column first, Column... rest) {
+      this.columns = EnumSet.of(first, rest);
+      return this;
+    }
+
+    public Builder sortedInput(boolean sortedInput) {
+      this.sortedInput = sortedInput;
+      return this;
+    }
+
+    public ResultFilter build() {
+      return new ResultFilter(this);
+    }
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  private static final Comparator<TabularHit> BY_SCORE =
+      Comparator.comparingDouble(TabularHit::getScore);
+
+  private final double maxEvalue;
+  private final double minScore;
+  private final int topN;
+  private final EnumSet<Column> columns;
+  private final boolean allColumns;
+  private final boolean sortedInput;
+
+  private ResultFilter(Builder builder) {
+    maxEvalue = builder.maxEvalue;
+    minScore = builder.minScore;
+    topN = builder.topN;
+    columns = EnumSet.copyOf(builder.columns);
+    allColumns = columns.size() == Column.values().length;
+    sortedInput = builder.sortedInput;
+  }
+
+  public double getMaxEvalue() {
+    return maxEvalue;
+  }
+
+  public double getMinScore() {
+    return minScore;
+  }
+
+  /** Maximum number of returned rows, or -1 if not limited. */
+  public int getTopN() {
+    return topN;
+  }
+
+  public Set<Column> getColumns() {
+    return Collections.unmodifiableSet(columns);
+  }
+
+  public boolean isSortedInput() {
+    return sortedInput;
+  }
+
+  /**
+   * Reads the rows from the reader and returns the selected ones, ordered by
+   * decreasing score when limited to the top N and in input order
+   * otherwise. Reading stops early when the rest of a sorted input cannot
+   * be selected; the caller still has to close the reader.
+   */
+  public List<TabularHit> apply(TabularResultReader reader) throws IOException {
+    var hit = reader.hit();
+    if (topN < 0) {
+      var hits = new ArrayList<TabularHit>();
+      while (reader.next()) {
+        if (accepts(hit))
+          hits.add(project(hit, new TabularHit()));
+        else if (sortedInput)
+          break;
+      }
+      return hits;
+    }
+    // min-heap of the best rows so far; the evicted row is reused for the next one
+    var heap = new PriorityQueue<TabularHit>(topN, BY_SCORE);
+    while (reader.next()) {
+      if (!accepts(hit)) {
+        if (sortedInput)
+          break;
+        continue;
+      }
+      if (heap.size() < topN) {
+        heap.add(project(hit, new TabularHit()));
+      }
+      else if (hit.getScore() > heap.peek().getScore()) {
+        heap.add(project(hit, heap.poll()));
+      }
+      if (sortedInput && heap.size() == topN)
+        break;
+    }
+    var hits = new ArrayList<>(heap);
+    hits.sort(BY_SCORE.reversed());
+    return hits;
+  }
+
+  private boolean accepts(TabularHit hit) {
+    return hit.getEvalue() <= maxEvalue && hit.getScore() >= minScore;
+  }
+
+  /*
+   * Copies the selected fields of the hit to the target. The score is
+   * always copied since the heap orders rows by it.
+   */
+  private TabularHit project(TabularHit hit, TabularHit target) {
+    if (allColumns) {
+      target.copyFrom(hit);
+      return target;
+    }
+    copyText(columns.contains(Column.TARGET_NAME), hit.targetName, target.targetName);
+    copyText(columns.contains(Column.TARGET_ACCESSION),
+        hit.targetAccession, target.targetAccession);
+    copyText(columns.contains(Column.QUERY_NAME), hit.queryName, target.queryName);
+    copyText(columns.contains(Column.QUERY_ACCESSION), hit.queryAccession, target.queryAccession);
+    copyText(columns.contains(Column.DESCRIPTION), hit.description, target.description);
+    target.targetLength = columns.contains(Column.TARGET_LENGTH) ? hit.targetLength : -1;
+    target.queryLength = columns.contains(Column.QUERY_LENGTH) ? hit.queryLength : -1;
+    target.evalue = columns.contains(Column.EVALUE) ? hit.evalue : Double.NaN;
+    target.score = hit.score;
+    target.bias = columns.contains(Column.BIAS) ? hit.bias : Double.NaN;
+    target.domainEvalue = columns.contains(Column.DOMAIN_EVALUE) ? hit.domainEvalue : Double.NaN;
+    target.domainConditionalEvalue = columns.contains(Column.DOMAIN_CONDITIONAL_EVALUE)
+        ? hit.domainConditionalEvalue : Double.NaN;
+    target.domainScore = columns.contains(Column.DOMAIN_SCORE) ? hit.domainScore : Double.NaN;
+    target.domainBias = columns.contains(Column.DOMAIN_BIAS) ? hit.domainBias : Double.NaN;
+    target.domainIndex = columns.contains(Column.DOMAIN_INDEX) ? hit.domainIndex : -1;
+    target.domainCount = columns.contains(Column.DOMAIN_COUNT) ? hit.domainCount : -1;
+    target.hmmFrom = columns.contains(Column.HMM_FROM) ? hit.hmmFrom : -1;
+    target.hmmTo = columns.contains(Column.HMM_TO) ? hit.hmmTo : -1;
+    target.aliFrom = columns.contains(Column.ALI_FROM) ? hit.aliFrom : -1;
+    target.aliTo = columns.contains(Column.ALI_TO) ? hit.aliTo : -1;
+    target.envFrom = columns.contains(Column.ENV_FROM) ? hit.envFrom : -1;
+    target.envTo = columns.contains(Column.ENV_TO) ? hit.envTo : -1;
+    target.accuracy = columns.contains(Column.ACCURACY) ? hit.accuracy : Double.NaN;
+    return target;
+  }
+
+  private static void copyText(boolean selected, StringBuilder from, StringBuilder to) {
+    to.setLength(0);
+    if (selected)
+      to.append(from);
+  }
+}
@@ -0,0 +1,136 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static uk.ac.dundee.compbio.hmmerclient.ExceptionUtils.newIAE;
+
+/**
+ * Decides whether and when a failed request is sent again. Requests are
+ * retried after connection failures and responses with one of the retryable
+ * status codes, waiting a capped, jittered exponential backoff or the time
+ * given by the Retry-After header, whichever is longer. A Retry-After
+ * longer than the maximum delay ends the retries.
+ * <p>
+ * Status, result type and result requests are always retried. Submissions
+ * are retried only when their sequence can be sent again: when the request
+ * was bound to a {@link SequenceSource} by a template, or when its
+ * fingerprint is computed because a result cache, job journal or in-flight
+ * deduplication is used. Even then, since a submission is not idempotent,
+ * it is only sent again if the connection could not be opened or the
+ * server refused it with 429 or 503; any other failure may have happened
+ * after the server created the job.
+ */
+public final class RetryPolicy {
+
+  public static final class Builder {
+    private int maxAttempts = 4;
+    private long initialDelayMillis = 500;
+    private long maxDelayMillis = 30_000;
+    private double multiplier = 2;
+    private double jitter = 0.5;
+    private Set<Integer> retryableStatusCodes = Set.of(429, 500, 502, 503, 504);
+
+    /** Total number of attempts including the first one. */
+    public Builder maxAttempts(int maxAttempts) {
+      if (maxAttempts < 1)
+        throw newIAE("maxAttempts must be at least 1");
+      this.maxAttempts = maxAttempts;
+      return this;
+    }
+
+    public Builder initialDelayMillis(long initialDelayMillis) {
+      if (initialDelayMillis <= 0)
+        throw newIAE("initialDelayMillis must be greater than 0");
+      this.initialDelayMillis = initialDelayMillis;
+      return this;
+    }
+
+    public Builder maxDelayMillis(long maxDelayMillis) {
+      if (maxDelayMillis <= 0)
+        throw newIAE("maxDelayMillis must be greater than 0");
+      this.maxDelayMillis = maxDelayMillis;
+      return this;
+    }
+
+    public Builder multiplier(double multiplier) {
+      if (multiplier < 1)
+        throw newIAE("multiplier must be greater or equal to 1");
+      this.multiplier = multiplier;
+      return this;
+    }
+
+    public Builder jitter(double jitter) {
+      if (jitter < 0 || jitter > 1)
+        throw newIAE("jitter must be between 0 and 1");
+      this.jitter = jitter;
+      return this;
+    }
+
+    public Builder retryableStatusCodes(Set<Integer> retryableStatusCodes) {
+      this.retryableStatusCodes = Set.copyOf(retryableStatusCodes);
+      return this;
+    }
+
+    public RetryPolicy build() {
+      if (initialDelayMillis > maxDelayMillis)
+        throw newIAE("initialDelayMillis must not exceed maxDelayMillis");
+      return new RetryPolicy(this);
+    }
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  private static final RetryPolicy defaultPolicy = newBuilder().build();
+  private static final RetryPolicy noRetries = newBuilder().maxAttempts(1).build();
+
+  /** Four attempts, starting at half a second and doubling up to 30 seconds. */
+  public static RetryPolicy defaultPolicy() {
+    return defaultPolicy;
+  }
+
+  public static RetryPolicy none() {
+    return noRetries;
+  }
+
+  private final int maxAttempts;
+  private final long initialDelayMillis;
+  private final long maxDelayMillis;
+  private final double multiplier;
+  private final double jitter;
+  private final Set<Integer> retryableStatusCodes;
+
+  private RetryPolicy(Builder builder) {
+    maxAttempts = builder.maxAttempts;
+    initialDelayMillis = builder.initialDelayMillis;
+    maxDelayMillis = builder.maxDelayMillis;
+    multiplier = builder.multiplier;
+    jitter = builder.jitter;
+    retryableStatusCodes = builder.retryableStatusCodes;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  public boolean isRetryable(int statusCode) {
+    return retryableStatusCodes.contains(statusCode);
+  }
+
+  /**
+   * Returns the delay before the next attempt after the given failed one or
+   * -1 if the request should not be retried.
+   *
+   * @param attempt number of the failed attempt, starting at 1
+   * @param retryAfterMillis delay requested by the server or -1 if none
+   */
+  public long retryDelayMillis(int attempt, long retryAfterMillis) {
+    if (attempt >= maxAttempts || retryAfterMillis > maxDelayMillis)
+      return -1;
+    double delay = Math.min(initialDelayMillis * Math.pow(multiplier, attempt - 1), maxDelayMillis);
+    delay -= delay * jitter * ThreadLocalRandom.current().nextDouble();
+    return Math.max(retryAfterMillis, Math.max(1, Math.round(delay)));
+  }
+}
@@ -0,0 +1,69 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import uk.ac.dundee.compbio.hmmerclient.PhmmerClient.Status;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs phmmer searches following the submit, status and result model of the
+ * EBI job dispatcher. {@link PhmmerClient} sends the jobs to the REST
+ * service and {@link LocalPhmmerBackend} runs them with a local phmmer
+ * executable, so code written against this interface works with either.
+ */
+public interface SearchBackend {
+
+  /** Returns whether the backend is able to accept jobs. */
+  default boolean testEndpoint() {
+    return true;
+  }
+
+  /** Starts a search and returns the id of the new job. */
+  String submit(PhmmerRequest request, String email) throws IOException;
+
+  Status getStatus(String jobId) throws IOException;
+
+  /**
+   * Returns a future completed with the final status of the job once it is
+   * no longer pending, queued or running.
+   */
+  CompletableFuture<Status> awaitCompletion(String jobId);
+
+  Collection<ResultType> getResultTypes(String jobId) throws IOException;
+
+  /** Opens the result of a finished job; the caller must close the stream. */
+  InputStream getResultStream(String jobId, String identifier) throws IOException;
+
+  /**
+   * Deletes the job, stopping it first if it has not finished. Backends
+   * that cannot delete jobs, such as the EBI service, return false.
+   *
+   * @return whether the job was deleted
+   */
+  default boolean delete(String jobId) throws IOException {
+    return false;
+  }
+
+  /**
+   * Opens a streaming reader over a tabular result. Rows are parsed as they
+   * are read; the caller must close the reader.
+   */
+  default TabularResultReader openTabularResult(
+      String jobId, String identifier, TabularResultReader.Format format) throws IOException {
+    return new TabularResultReader(getResultStream(jobId, identifier), format);
+  }
+
+  /**
+   * Returns the rows of a tabular result selected by the filter. The result
+   * stream is closed as soon as the filter has read enough of it.
+   */
+  default List<TabularHit> getResult(String jobId, String identifier,
+      TabularResultReader.Format format, ResultFilter filter) throws IOException {
+    try (var reader = openTabularResult(jobId, identifier, format)) {
+      return filter.apply(reader);
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * A plain or FASTA formatted sequence that can be read any number of times,
+ * unlike the reader given to {@link PhmmerRequest.Builder#sequence}. Requests
+ * bound to a source by a {@link PhmmerRequestTemplate} can therefore be
+ * retried and fingerprinted without first copying the sequence into a string.
+ */
+public interface SequenceSource {
+
+  Reader openReader() throws IOException;
+
+  /** Returns the whole sequence text. */
+  default CharSequence readContent() throws IOException {
+    var content = new StringBuilder();
+    char[] buffer = new char[2048];
+    try (var reader = openReader()) {
+      int nRead;
+      while ((nRead = reader.read(buffer, 0, buffer.length)) >= 0)
+        content.append(buffer, 0, nRead);
+    }
+    return content;
+  }
+
+  static SequenceSource of(CharSequence sequence) {
+    Objects.requireNonNull(sequence);
+    return new SequenceSource() {
+      @Override
+      public Reader openReader() {
+        return new StringReader(sequence.toString());
+      }
+
+      @Override
+      public CharSequence readContent() {
+        return sequence;
+      }
+    };
+  }
+
+  /** Source reading a UTF-8 encoded file every time it is opened. */
+  static SequenceSource of(Path file) {
+    Objects.requireNonNull(file);
+    return new SequenceSource() {
+      @Override
+      public Reader openReader() throws IOException {
+        // don't use StandardCharsets for j2s compatibility
+        return new InputStreamReader(Files.newInputStream(file), "UTF-8");
+      }
+
+      @Override
+      public CharSequence readContent() throws IOException {
+        return Charset.forName("UTF-8").decode(ByteBuffer.wrap(Files.readAllBytes(file)));
+      }
+    };
+  }
+
+  /**
+   * Source reading the remaining UTF-8 encoded bytes of the buffer, e.g. of
+   * a mapped file. The buffer's position is not modified.
+   */
+  static SequenceSource of(ByteBuffer buffer) {
+    var view = buffer.duplicate();
+    return new SequenceSource() {
+      @Override
+      public Reader openReader() throws IOException {
+        return new InputStreamReader(ResultFiles.newInputStream(view), "UTF-8");
+      }
+
+      @Override
+      public CharSequence readContent() {
+        return Charset.forName("UTF-8").decode(view.duplicate());
+      }
+    };
+  }
+}
@@ -0,0 +1,130 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import java.util.BitSet;
+import java.util.Locale;
+import java.util.Objects;
+
+import static java.lang.String.format;
+import static uk.ac.dundee.compbio.hmmerclient.ExceptionUtils.newIAE;
+import static uk.ac.dundee.compbio.hmmerclient.ExceptionUtils.newISE;
+
+/**
+ * Checks sequences locally against the rules the search service enforces,
+ * so that malformed records are rejected before a job is submitted for
+ * them. The alphabet and the maximum length depend on the service and
+ * must be configured; a sequence must have at least one residue by
+ * default. A stop symbol, if in the alphabet, is only allowed at the end.
+ * Letter case is ignored.
+ * <pre>
+ * var validator = SequenceValidator.newBuilder()
+ *     .alphabet(SequenceValidator.PROTEIN_ALPHABET)
+ *     .maxLength(maxLengthOfTheService)
+ *     .build();
+ * </pre>
+ */
+public final class SequenceValidator {
+
+  public static final class Builder {
+    private int minLength = 1;
+    private int maxLength = 0;
+    private String alphabet = null;
+
+    private Builder() {}
+
+    public Builder minLength(int minLength) {
+      if (minLength < 1)
+        throw newIAE("minLength must be at least 1");
+      this.minLength = minLength;
+      return this;
+    }
+
+    public Builder maxLength(int maxLength) {
+      if (maxLength < 1)
+        throw newIAE("maxLength must be at least 1");
+      this.maxLength = maxLength;
+      return this;
+    }
+
+    /** Sets the characters allowed in a sequence, in any letter case. */
+    public Builder alphabet(String alphabet) {
+      if (alphabet.isEmpty())
+        throw newIAE("alphabet must not be empty");
+      this.alphabet = alphabet;
+      return this;
+    }
+
+    public SequenceValidator build() {
+      if (alphabet == null)
+        throw newISE("alphabet not set");
+      if (maxLength == 0)
+        throw newISE("maxLength not set");
+      if (minLength > maxLength)
+        throw newIAE("minLength must not exceed maxLength");
+      return new SequenceValidator(this);
+    }
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  /**
+   * One-letter IUPAC amino acid codes, including the ambiguity codes B, J, Z
+   * and X, selenocysteine (U) and pyrrolysine (O), followed by the stop
+   * symbol.
+   */
+  public static final String PROTEIN_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ*";
+
+  private final int minLength;
+  private final int maxLength;
+  private final BitSet allowed = new BitSet(128);
+
+  private SequenceValidator(Builder builder) {
+    minLength = builder.minLength;
+    maxLength = builder.maxLength;
+    for (char c : builder.alphabet.toCharArray()) {
+      allowed.set(Character.toUpperCase(c));
+      allowed.set(Character.toLowerCase(c));
+    }
+  }
+
+  public int getMinLength() {
+    return minLength;
+  }
+
+  public int getMaxLength() {
+    return maxLength;
+  }
+
+  /**
+   * Returns a description of the first problem found in the residues or
+   * null if the sequence is valid. A stop symbol is only allowed at the end.
+   */
+  public String check(CharSequence residues) {
+    Objects.requireNonNull(residues);
+    int length = residues.length();
+    if (length > 0 && residues.charAt(length - 1) == '*' && allowed.get('*'))
+      length--;
+    if (length < minLength)
+      return format("sequence has %d residues, at least %d required", length, minLength);
+    if (length > maxLength)
+      return format("sequence has %d residues, at most %d allowed", length, maxLength);
+    for (int i = 0; i < length; i++) {
+      char c = residues.charAt(i);
+      if (c == '*' || !allowed.get(c))
+        return format(Locale.ROOT, "invalid character '%c' at position %d", c, i + 1);
+    }
+    return null;
+  }
+
+  /**
+   * Checks the residues of the record.
+   *
+   * @throws IllegalArgumentException if the sequence is not valid
+   */
+  public void validate(FastaRecord record) {
+    var problem = check(record.getSequence());
+    if (problem != null)
+      throw newIAE("record " + record.getId() + ": " + problem);
+  }
+}
@@ -0,0 +1,72 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Daemon thread pools shared by all clients. The scheduler only times
+ * status polls and health probes and must never block; the requests they
+ * send and all other transfers run on the I/O pool or, on Java 21 and
+ * later, optionally on virtual threads.
+ */
+final class SharedExecutors {
+  private SharedExecutors() {}
+
+  private static final int SCHEDULER_THREADS = 4;
+
+  static ThreadFactory daemonThreads(String prefix) {
+    var count = new AtomicInteger();
+    return runnable -> {
+      var thread = new Thread(runnable, prefix + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  private static final class SchedulerHolder {
+    static final ScheduledExecutorService scheduler;
+
+    static {
+      var executor = new ScheduledThreadPoolExecutor(
+          SCHEDULER_THREADS, daemonThreads("phmmer-poller-"));
+      executor.setRemoveOnCancelPolicy(true);
+      scheduler = executor;
+    }
+  }
+
+  private static final class IOHolder {
+    static final ExecutorService io = Executors.newCachedThreadPool(daemonThreads("phmmer-io-"));
+  }
+
+  private static final class VirtualHolder {
+    static final ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+
+    // looked up reflectively so the library still runs on Java 11
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+      try {
+        return (ExecutorService) Executors.class
+            .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      }
+      catch (ReflectiveOperationException | RuntimeException e) {
+        return null;
+      }
+    }
+  }
+
+  static ScheduledExecutorService scheduler() {
+    return SchedulerHolder.scheduler;
+  }
+
+  static ExecutorService io() {
+    return IOHolder.io;
+  }
+
+  /** Executor starting a virtual thread per task or null if not supported. */
+  static ExecutorService virtualThreads() {
+    return VirtualHolder.virtual;
+  }
+}
@@ -0,0 +1,165 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import uk.ac.dundee.compbio.hmmerclient.PhmmerClient.Status;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls the status of outstanding jobs on a shared scheduler so that many jobs
+ * can be watched by a handful of threads rather than one blocked thread each.
+ * Each job is re-scheduled individually according to the polling strategy,
+ * which uses the job's status history to decide when to ask again. The
+ * scheduler only times the polls; the status requests themselves run on the
+ * client's executor so that a slow response delays only its own job. A
+ * failed poll is retried on the scheduler after the retry policy's delay
+ * rather than by sleeping on the executor.
+ */
+final class StatusPoller {
+  private static final class JobState {
+    final String jobId;
+    final CompletableFuture<Status> future = new CompletableFuture<>();
+    final long startNanos = System.nanoTime();
+    Status previous = null;
+    Status current = Status.PENDING;
+    int unchangedPolls = 0;
+    // consecutive polls that failed and are retried
+    int failedPolls = 0;
+    // last status received from the server and when it was first seen
+    Status observed = null;
+    long observedSinceNanos = startNanos;
+
+    JobState(String jobId) {
+      this.jobId = jobId;
+    }
+
+    long elapsedMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+  }
+
+  private final PhmmerClient client;
+  private final ScheduledExecutorService scheduler;
+  private volatile PollingStrategy strategy = PollingStrategy.defaultStrategy();
+  private final ConcurrentHashMap<String, JobState> jobs = new ConcurrentHashMap<>();
+
+  StatusPoller(PhmmerClient client, ScheduledExecutorService scheduler) {
+    this.client = client;
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Returns a future completed with the final status of the job. Watching
+   * the same job twice returns the same future.
+   */
+  CompletableFuture<Status> watch(String jobId) {
+    var state = new JobState(jobId);
+    var existing = jobs.putIfAbsent(jobId, state);
+    if (existing != null)
+      return existing.future;
+    state.future.whenComplete((status, exc) -> jobs.remove(jobId, state));
+    scheduleNext(state);
+    return state.future;
+  }
+
+  void setStrategy(PollingStrategy strategy) {
+    this.strategy = Objects.requireNonNull(strategy);
+  }
+
+  PollingStrategy getStrategy() {
+    return strategy;
+  }
+
+  int outstandingJobs() {
+    return jobs.size();
+  }
+
+  /**
+   * Polls the job on the calling thread, sleeping between polls, and returns
+   * its final status.
+   */
+  Status await(String jobId) throws IOException, InterruptedException {
+    var state = new JobState(jobId);
+    while (true) {
+      Thread.sleep(nextDelayMillis(state));
+      var status = client.getStatus(jobId);
+      if (update(state, status))
+        return status;
+    }
+  }
+
+  private long nextDelayMillis(JobState state) {
+    return strategy.nextDelayMillis(
+        state.previous, state.current, state.unchangedPolls, state.elapsedMillis());
+  }
+
+  private void scheduleNext(JobState state) {
+    schedule(state, nextDelayMillis(state));
+  }
+
+  private void schedule(JobState state, long delayMillis) {
+    scheduler.schedule(() -> startPoll(state), delayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private void startPoll(JobState state) {
+    try {
+      client.getExecutor().execute(() -> poll(state));
+    }
+    catch (RuntimeException e) {
+      state.future.completeExceptionally(e);
+    }
+  }
+
+  // a job is only ever polled by one task at a time, so its state needs no locking
+  private void poll(JobState state) {
+    if (state.future.isDone())
+      return;
+    final Status status;
+    try {
+      status = client.getStatus(state.jobId, state.failedPolls + 1);
+    }
+    catch (PhmmerClient.RetryRequestException e) {
+      state.failedPolls++;
+      schedule(state, e.delayMillis);
+      return;
+    }
+    catch (IOException | RuntimeException e) {
+      state.future.completeExceptionally(e);
+      return;
+    }
+    state.failedPolls = 0;
+    if (update(state, status))
+      state.future.complete(status);
+    else
+      scheduleNext(state);
+  }
+
+  /*
+   * Records the polled status in the job state and returns whether it is
+   * final.
+   */
+  private boolean update(JobState state, Status status) {
+    if (status != state.observed) {
+      long now = System.nanoTime();
+      client.getMetrics().recordStatusTransition(
+          state.jobId, state.observed, status, now - state.observedSinceNanos);
+      state.observed = status;
+      state.observedSinceNanos = now;
+    }
+    if (status.isTerminal())
+      return true;
+    if (status == state.current) {
+      state.unchangedPolls++;
+    }
+    else {
+      state.previous = state.current;
+      state.current = status;
+      state.unchangedPolls = 0;
+    }
+    return false;
+  }
+}
@@ -0,0 +1,326 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static uk.ac.dundee.compbio.hmmerclient.ExceptionUtils.newIAE;
+import static uk.ac.dundee.compbio.hmmerclient.ExceptionUtils.newISE;
+
+/**
+ * Orders the submissions of several tenants sharing one backend. Jobs of a
+ * higher priority class are always submitted first; within a class the
+ * tenants share the submissions in proportion to their weights, using
+ * start-time fair queuing. All tenants together stay within a limit of
+ * unfinished jobs and a submission rate, so interactive searches overtake
+ * a queued bulk run while the bulk run still uses any spare capacity.
+ * <pre>
+ * var scheduler = SubmissionScheduler.newBuilder()
+ *     .backend(client)
+ *     .maxConcurrentJobs(30)
+ *     .tenant("bulk", 1)
+ *     .tenant("web", 4)
+ *     .build();
+ * scheduler.submit("web", Priority.INTERACTIVE, request, email)
+ *     .thenCompose(client::awaitCompletion)...
+ * </pre>
+ */
+public final class SubmissionScheduler implements Closeable {
+
+  public enum Priority {
+    INTERACTIVE, NORMAL, BULK
+  }
+
+  public static final class Builder {
+    private SearchBackend backend;
+    private int maxConcurrentJobs = 30;
+    private double submissionsPerSecond = 1;
+    private int burst = 1;
+    private int defaultWeight = 1;
+    private final Map<String, Integer> weights = new HashMap<>();
+    private Executor executor = SharedExecutors.io();
+
+    private Builder() {}
+
+    public Builder backend(SearchBackend backend) {
+      this.backend = Objects.requireNonNull(backend);
+      return this;
+    }
+
+    /** Maximum number of submitted jobs that have not finished. */
+    public Builder maxConcurrentJobs(int maxConcurrentJobs) {
+      if (maxConcurrentJobs < 1)
+        throw newIAE("maxConcurrentJobs must be at least 1");
+      this.maxConcurrentJobs = maxConcurrentJobs;
+      return this;
+    }
+
+    public Builder submissionsPerSecond(double submissionsPerSecond) {
+      if (submissionsPerSecond <= 0)
+        throw newIAE("submissionsPerSecond must be greater than 0");
+      this.submissionsPerSecond = submissionsPerSecond;
+      return this;
+    }
+
+    public Builder burst(int burst) {
+      if (burst < 1)
+        throw newIAE("burst must be at least 1");
+      this.burst = burst;
+      return this;
+    }
+
+    public Builder tenant(String tenant, int weight) {
+      if (weight < 1)
+        throw newIAE("weight must be at least 1");
+      weights.put(Objects.requireNonNull(tenant), weight);
+      return this;
+    }
+
+    /** Weight of tenants that were not configured. */
+    public Builder defaultWeight(int defaultWeight) {
+      if (defaultWeight < 1)
+        throw newIAE("defaultWeight must be at least 1");
+      this.defaultWeight = defaultWeight;
+      return this;
+    }
+
+    /** Executor the blocking submissions run on. */
+    public Builder executor(Executor executor) {
+      this.executor = Objects.requireNonNull(executor);
+      return this;
+    }
+
+    public SubmissionScheduler build() {
+      if (backend == null)
+        throw newISE("backend not set");
+      return new SubmissionScheduler(this);
+    }
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  private static final class Task {
+    final PhmmerRequest request;
+    final String email;
+    final int level;
+    final double startTag;
+    final long sequence;
+    final CompletableFuture<String> future = new CompletableFuture<>();
+
+    Task(PhmmerRequest request, String email, int level, double startTag, long sequence) {
+      this.request = request;
+      this.email = email;
+      this.level = level;
+      this.startTag = startTag;
+      this.sequence = sequence;
+    }
+  }
+
+  private static final Comparator<Task> BY_START_TAG =
+      Comparator.<Task>comparingDouble(task -> task.startTag)
+          .thenComparingLong(task -> task.sequence);
+
+  private final SearchBackend backend;
+  private final int maxConcurrentJobs;
+  private final TokenBucket rateLimiter;
+  private final int defaultWeight;
+  private final Map<String, Integer> weights;
+  private final Executor executor;
+
+  // guarded by this
+  private final ArrayList<PriorityQueue<Task>> queues = new ArrayList<>();
+  private final double[] virtualTime = new double[Priority.values().length];
+  // finish tag of the last queued job of each tenant, per priority class
+  private final HashMap<String, double[]> finishTags = new HashMap<>();
+  private long sequence = 0;
+  private int queued = 0;
+  private int running = 0;
+  private boolean closed = false;
+
+  private final Thread dispatcher = new Thread(this::dispatch, "phmmer-submission-scheduler");
+
+  private SubmissionScheduler(Builder builder) {
+    backend = builder.backend;
+    maxConcurrentJobs = builder.maxConcurrentJobs;
+    rateLimiter = new TokenBucket(builder.submissionsPerSecond, builder.burst);
+    defaultWeight = builder.defaultWeight;
+    weights = Map.copyOf(builder.weights);
+    executor = builder.executor;
+    for (int i = 0; i < Priority.values().length; i++)
+      queues.add(new PriorityQueue<>(BY_START_TAG));
+    dispatcher.setDaemon(true);
+    dispatcher.start();
+  }
+
+  public SearchBackend getBackend() {
+    return backend;
+  }
+
+  public int getWeight(String tenant) {
+    return weights.getOrDefault(tenant, defaultWeight);
+  }
+
+  /** Number of jobs waiting to be submitted. */
+  public synchronized int getQueuedJobs() {
+    return queued;
+  }
+
+  /** Number of jobs submitted or being submitted that have not finished. */
+  public synchronized int getRunningJobs() {
+    return running;
+  }
+
+  /**
+   * Queues the request and returns a future completed with the job id once
+   * it is submitted. Cancelling the future while the request is queued
+   * removes it, so it takes neither a submission slot nor a rate token.
+   * Once the request has been taken from the queue, the job is submitted
+   * anyway and then deleted through {@link SearchBackend#delete}. If the
+   * backend cannot delete jobs, the job keeps its slot until it finishes.
+   * The request is held until it is submitted, so bulk callers should
+   * queue records as earlier ones are submitted rather than all at once.
+   * <p>
+   * A slot is released when the future of
+   * {@link SearchBackend#awaitCompletion} completes. {@link PhmmerClient}
+   * polls each job once however many callers await it, so the scheduler
+   * shares the caller's watch of the job rather than adding another.
+   */
+  public CompletableFuture<String> submit(
+      String tenant, Priority priority, PhmmerRequest request, String email) {
+    Objects.requireNonNull(request);
+    int weight = getWeight(Objects.requireNonNull(tenant));
+    synchronized (this) {
+      if (closed)
+        return CompletableFuture.failedFuture(new IOException("scheduler is closed"));
+      int level = priority.ordinal();
+      var tags = finishTags.computeIfAbsent(tenant, t -> new double[virtualTime.length]);
+      double start = Math.max(virtualTime[level], tags[level]);
+      tags[level] = start + 1.0 / weight;
+      var task = new Task(request, email, level, start, sequence++);
+      queues.get(level).add(task);
+      queued++;
+      task.future.whenComplete((jobId, exc) -> {
+        if (task.future.isCancelled())
+          dequeue(task);
+      });
+      notifyAll();
+      return task.future;
+    }
+  }
+
+  private synchronized void dequeue(Task task) {
+    if (queues.get(task.level).remove(task))
+      queued--;
+  }
+
+  private void dispatch() {
+    try {
+      while (true) {
+        synchronized (this) {
+          while (!closed && (queued == 0 || running >= maxConcurrentJobs))
+            wait();
+          if (closed)
+            return;
+          running++;
+        }
+        // the job is picked after the wait for the rate limit, so that jobs
+        // of higher priority queued meanwhile go first
+        rateLimiter.acquire();
+        Task task;
+        synchronized (this) {
+          task = poll();
+        }
+        if (task == null || task.future.isDone()) {
+          release();
+          continue;
+        }
+        try {
+          executor.execute(() -> run(task));
+        }
+        catch (RuntimeException e) {
+          task.future.completeExceptionally(e);
+          release();
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      // closed
+    }
+  }
+
+  // guarded by this
+  private Task poll() {
+    for (int level = 0; level < queues.size(); level++) {
+      var task = queues.get(level).poll();
+      if (task != null) {
+        queued--;
+        virtualTime[level] = task.startTag;
+        return task;
+      }
+    }
+    return null;
+  }
+
+  private void run(Task task) {
+    final String jobId;
+    try {
+      jobId = backend.submit(task.request, task.email);
+    }
+    catch (IOException | RuntimeException e) {
+      task.future.completeExceptionally(e);
+      release();
+      return;
+    }
+    if (!task.future.complete(jobId)) {
+      // cancelled while being submitted
+      boolean deleted = false;
+      try {
+        deleted = backend.delete(jobId);
+      }
+      catch (IOException | RuntimeException ignored) {
+      }
+      if (deleted) {
+        release();
+        return;
+      }
+    }
+    backend.awaitCompletion(jobId).whenComplete((status, exc) -> release());
+  }
+
+  private synchronized void release() {
+    running--;
+    notifyAll();
+  }
+
+  /**
+   * Stops submitting and fails the queued requests. Jobs already submitted
+   * keep running.
+   */
+  @Override
+  public void close() {
+    var dropped = new ArrayList<Task>();
+    synchronized (this) {
+      if (closed)
+        return;
+      closed = true;
+      for (var queue : queues) {
+        dropped.addAll(queue);
+        queue.clear();
+      }
+      queued = 0;
+      notifyAll();
+    }
+    dispatcher.interrupt();
+    for (var task : dropped)
+      task.future.completeExceptionally(new IOException("scheduler is closed"));
+  }
+}
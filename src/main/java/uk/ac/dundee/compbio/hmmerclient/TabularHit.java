@@ -0,0 +1,183 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+/**
+ * A single row of a hmmer per-sequence (tblout) or per-domain (domtblout)
+ * table. Instances returned by {@link TabularResultReader#hit()} are reused
+ * for every row; text fields are views that are only valid until the reader
+ * advances. Use {@link #copy()} to keep a row.
+ */
+public final class TabularHit {
+  final StringBuilder targetName = new StringBuilder();
+  final StringBuilder targetAccession = new StringBuilder();
+  final StringBuilder queryName = new StringBuilder();
+  final StringBuilder queryAccession = new StringBuilder();
+  final StringBuilder description = new StringBuilder();
+  int targetLength = -1;
+  int queryLength = -1;
+  double evalue;
+  double score;
+  double bias;
+  double domainEvalue;
+  double domainConditionalEvalue = Double.NaN;
+  double domainScore;
+  double domainBias;
+  int domainIndex = -1;
+  int domainCount = -1;
+  int hmmFrom = -1;
+  int hmmTo = -1;
+  int aliFrom = -1;
+  int aliTo = -1;
+  int envFrom = -1;
+  int envTo = -1;
+  double accuracy = Double.NaN;
+
+  public CharSequence getTargetName() {
+    return targetName;
+  }
+
+  public CharSequence getTargetAccession() {
+    return targetAccession;
+  }
+
+  public CharSequence getQueryName() {
+    return queryName;
+  }
+
+  public CharSequence getQueryAccession() {
+    return queryAccession;
+  }
+
+  public CharSequence getDescription() {
+    return description;
+  }
+
+  /** Target sequence length, or -1 for per-sequence tables. */
+  public int getTargetLength() {
+    return targetLength;
+  }
+
+  /** Query sequence length, or -1 for per-sequence tables. */
+  public int getQueryLength() {
+    return queryLength;
+  }
+
+  /** E-value of the full sequence. */
+  public double getEvalue() {
+    return evalue;
+  }
+
+  /** Bit score of the full sequence. */
+  public double getScore() {
+    return score;
+  }
+
+  public double getBias() {
+    return bias;
+  }
+
+  /**
+   * E-value of the best domain for per-sequence tables or the independent
+   * E-value of this domain for per-domain tables.
+   */
+  public double getDomainEvalue() {
+    return domainEvalue;
+  }
+
+  /** Conditional E-value of this domain, or NaN for per-sequence tables. */
+  public double getDomainConditionalEvalue() {
+    return domainConditionalEvalue;
+  }
+
+  public double getDomainScore() {
+    return domainScore;
+  }
+
+  public double getDomainBias() {
+    return domainBias;
+  }
+
+  public int getDomainIndex() {
+    return domainIndex;
+  }
+
+  public int getDomainCount() {
+    return domainCount;
+  }
+
+  public int getHmmFrom() {
+    return hmmFrom;
+  }
+
+  public int getHmmTo() {
+    return hmmTo;
+  }
+
+  public int getAliFrom() {
+    return aliFrom;
+  }
+
+  public int getAliTo() {
+    return aliTo;
+  }
+
+  public int getEnvFrom() {
+    return envFrom;
+  }
+
+  public int getEnvTo() {
+    return envTo;
+  }
+
+  public double getAccuracy() {
+    return accuracy;
+  }
+
+  public TabularHit copy() {
+    var copy = new TabularHit();
+    copy.copyFrom(this);
+    return copy;
+  }
+
+  void copyFrom(TabularHit other) {
+    targetName.setLength(0);
+    targetName.append(other.targetName);
+    targetAccession.setLength(0);
+    targetAccession.append(other.targetAccession);
+    queryName.setLength(0);
+    queryName.append(other.queryName);
+    queryAccession.setLength(0);
+    queryAccession.append(other.queryAccession);
+    description.setLength(0);
+    description.append(other.description);
+    targetLength = other.targetLength;
+    queryLength = other.queryLength;
+    evalue = other.evalue;
+    score = other.score;
+    bias = other.bias;
+    domainEvalue = other.domainEvalue;
+    domainConditionalEvalue = other.domainConditionalEvalue;
+    domainScore = other.domainScore;
+    domainBias = other.domainBias;
+    domainIndex = other.domainIndex;
+    domainCount = other.domainCount;
+    hmmFrom = other.hmmFrom;
+    hmmTo = other.hmmTo;
+    aliFrom = other.aliFrom;
+    aliTo = other.aliTo;
+    envFrom = other.envFrom;
+    envTo = other.envTo;
+    accuracy = other.accuracy;
+  }
+
+  @Override
+  public String toString() {
+    return "TabularHit{" +
+        "targetName='" + targetName + '\'' +
+        ", queryName='" + queryName + '\'' +
+        ", evalue=" + evalue +
+        ", score=" + score +
+        ", bias=" + bias +
+        ", domainIndex=" + domainIndex +
+        '}';
+  }
+}
@@ -0,0 +1,346 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.Objects;
+
+import static java.lang.String.format;
+
+/**
+ * Streaming reader of hmmer tabular output. Rows are parsed straight from the
+ * byte stream into a single reusable {@link TabularHit}, so a result of any
+ * size is read in constant memory while it is being downloaded.
+ * <pre>
+ * try (var reader = new TabularResultReader(stream, Format.TBLOUT)) {
+ *   while (reader.next()) {
+ *     var hit = reader.hit();
+ *     ...
+ *   }
+ * }
+ * </pre>
+ */
+public class TabularResultReader implements Closeable {
+
+  public enum Format {
+    /** Per-sequence hits table, hmmer {@code --tblout}. */
+    TBLOUT(18),
+    /** Per-domain hits table, hmmer {@code --domtblout}. */
+    DOMTBLOUT(22);
+
+    final int columns;
+
+    Format(int columns) {
+      this.columns = columns;
+    }
+  }
+
+  // 10^22 is the largest power of ten a double holds exactly
+  private static final int MAX_EXACT_POWER = 22;
+  // 15 digits always fit the 53 bit mantissa of a double
+  private static final int MAX_EXACT_DIGITS = 15;
+  private static final double[] POWERS_OF_TEN = new double[MAX_EXACT_POWER + 1];
+
+  static {
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++)
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+  }
+
+  private final InputStream stream;
+  private final Format format;
+  private final byte[] buffer = new byte[8192];
+  private int bufferPos = 0;
+  private int bufferEnd = 0;
+  private byte[] line = new byte[256];
+  private int lineLength = 0;
+  private final int[] fieldStart;
+  private final int[] fieldEnd;
+  private final TabularHit hit = new TabularHit();
+  private long lineNumber = 0;
+
+  public TabularResultReader(InputStream stream, Format format) {
+    this.stream = Objects.requireNonNull(stream);
+    this.format = Objects.requireNonNull(format);
+    fieldStart = new int[format.columns + 1];
+    fieldEnd = new int[format.columns + 1];
+  }
+
+  public Format getFormat() {
+    return format;
+  }
+
+  /**
+   * Returns the record holding the current row. The same instance is updated
+   * by every call to {@link #next()}.
+   */
+  public TabularHit hit() {
+    return hit;
+  }
+
+  /**
+   * Advances to the next row skipping comments and blank lines.
+   *
+   * @return false when the end of the stream was reached
+   */
+  public boolean next() throws IOException {
+    while (readLine()) {
+      lineNumber++;
+      if (lineLength == 0 || line[0] == '#')
+        continue;
+      if (splitFields() == 0)
+        continue;
+      if (format == Format.TBLOUT)
+        parseTblout();
+      else
+        parseDomtblout();
+      return true;
+    }
+    return false;
+  }
+
+  private boolean readLine() throws IOException {
+    lineLength = 0;
+    boolean any = false;
+    while (true) {
+      if (bufferPos == bufferEnd) {
+        bufferEnd = stream.read(buffer, 0, buffer.length);
+        bufferPos = 0;
+        if (bufferEnd <= 0) {
+          bufferEnd = 0;
+          return any;
+        }
+      }
+      any = true;
+      int start = bufferPos;
+      while (bufferPos < bufferEnd && buffer[bufferPos] != '\n')
+        bufferPos++;
+      appendToLine(start, bufferPos);
+      if (bufferPos < bufferEnd) {
+        bufferPos++;
+        if (lineLength > 0 && line[lineLength - 1] == '\r')
+          lineLength--;
+        return true;
+      }
+    }
+  }
+
+  private void appendToLine(int start, int end) {
+    int length = end - start;
+    if (lineLength + length > line.length)
+      line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+    System.arraycopy(buffer, start, line, lineLength, length);
+    lineLength += length;
+  }
+
+  /*
+   * Splits the line into whitespace separated columns. The trailing
+   * description may contain spaces, so everything after the last fixed
+   * column is kept as a single field.
+   */
+  private int splitFields() throws IOException {
+    int count = 0;
+    int pos = 0;
+    while (count < format.columns) {
+      while (pos < lineLength && isSpace(line[pos]))
+        pos++;
+      if (pos == lineLength)
+        break;
+      fieldStart[count] = pos;
+      while (pos < lineLength && !isSpace(line[pos]))
+        pos++;
+      fieldEnd[count++] = pos;
+    }
+    if (count == 0)
+      return 0;
+    if (count < format.columns)
+      throw new IOException(format("line %d has %d columns, expected at least %d",
+          lineNumber, count, format.columns));
+    while (pos < lineLength && isSpace(line[pos]))
+      pos++;
+    int end = lineLength;
+    while (end > pos && isSpace(line[end - 1]))
+      end--;
+    fieldStart[count] = pos;
+    fieldEnd[count] = end;
+    return count;
+  }
+
+  private static boolean isSpace(byte b) {
+    return b == ' ' || b == '\t' || b == '\r';
+  }
+
+  private void parseTblout() throws IOException {
+    text(0, hit.targetName);
+    text(1, hit.targetAccession);
+    text(2, hit.queryName);
+    text(3, hit.queryAccession);
+    hit.evalue = number(4);
+    hit.score = number(5);
+    hit.bias = number(6);
+    hit.domainEvalue = number(7);
+    hit.domainScore = number(8);
+    hit.domainBias = number(9);
+    hit.domainCount = integer(15);
+    utf8Text(18, hit.description);
+  }
+
+  private void parseDomtblout() throws IOException {
+    text(0, hit.targetName);
+    text(1, hit.targetAccession);
+    hit.targetLength = integer(2);
+    text(3, hit.queryName);
+    text(4, hit.queryAccession);
+    hit.queryLength = integer(5);
+    hit.evalue = number(6);
+    hit.score = number(7);
+    hit.bias = number(8);
+    hit.domainIndex = integer(9);
+    hit.domainCount = integer(10);
+    hit.domainConditionalEvalue = number(11);
+    hit.domainEvalue = number(12);
+    hit.domainScore = number(13);
+    hit.domainBias = number(14);
+    hit.hmmFrom = integer(15);
+    hit.hmmTo = integer(16);
+    hit.aliFrom = integer(17);
+    hit.aliTo = integer(18);
+    hit.envFrom = integer(19);
+    hit.envTo = integer(20);
+    hit.accuracy = number(21);
+    utf8Text(22, hit.description);
+  }
+
+  private void text(int field, StringBuilder out) {
+    out.setLength(0);
+    for (int i = fieldStart[field]; i < fieldEnd[field]; i++)
+      out.append((char) (line[i] & 0xff));
+  }
+
+  /*
+   * Names and accessions are ASCII, but descriptions come from the
+   * database headers and may hold any UTF-8 text. Only a field with a
+   * non-ASCII byte is decoded through a string.
+   */
+  private void utf8Text(int field, StringBuilder out) {
+    int start = fieldStart[field], end = fieldEnd[field];
+    for (int i = start; i < end; i++) {
+      if (line[i] < 0) {
+        out.setLength(0);
+        try {
+          out.append(new String(line, start, end - start, "UTF-8"));
+        }
+        catch (UnsupportedEncodingException e) {
+          throw new AssertionError(e);
+        }
+        return;
+      }
+    }
+    text(field, out);
+  }
+
+  private int integer(int field) throws IOException {
+    int pos = fieldStart[field], end = fieldEnd[field];
+    boolean negative = pos < end && line[pos] == '-';
+    if (negative)
+      pos++;
+    if (pos == end || end - pos > 9)
+      throw malformedNumber(field);
+    int value = 0;
+    for (; pos < end; pos++) {
+      int digit = line[pos] - '0';
+      if (digit < 0 || digit > 9)
+        throw malformedNumber(field);
+      value = value * 10 + digit;
+    }
+    return negative ? -value : value;
+  }
+
+  /*
+   * Parses plain and scientific decimal notation without creating a string.
+   * The result is computed directly only when it is exact up to a single
+   * rounding: at most 15 significant digits, a mantissa below 2^53 and a
+   * power of ten that is itself an exact double. Anything else, such as
+   * very small e-values or "inf", falls back to Double.parseDouble, so the
+   * value always equals the one it would return.
+   */
+  private double number(int field) throws IOException {
+    int pos = fieldStart[field], end = fieldEnd[field];
+    boolean negative = false;
+    if (pos < end && (line[pos] == '-' || line[pos] == '+'))
+      negative = line[pos++] == '-';
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean seenDigit = false;
+    boolean inexact = false;
+    for (; pos < end && line[pos] >= '0' && line[pos] <= '9'; pos++, seenDigit = true) {
+      if (digits < MAX_EXACT_DIGITS) {
+        mantissa = mantissa * 10 + (line[pos] - '0');
+        if (mantissa != 0) digits++;
+      }
+      else {
+        inexact = true;
+        exponent++;
+      }
+    }
+    if (pos < end && line[pos] == '.') {
+      for (pos++; pos < end && line[pos] >= '0' && line[pos] <= '9'; pos++, seenDigit = true) {
+        if (digits < MAX_EXACT_DIGITS) {
+          mantissa = mantissa * 10 + (line[pos] - '0');
+          if (mantissa != 0) digits++;
+          exponent--;
+        }
+        else {
+          inexact = true;
+        }
+      }
+    }
+    if (seenDigit && pos < end && (line[pos] == 'e' || line[pos] == 'E')) {
+      pos++;
+      boolean negativeExp = false;
+      if (pos < end && (line[pos] == '-' || line[pos] == '+'))
+        negativeExp = line[pos++] == '-';
+      int exp = 0;
+      int expStart = pos;
+      for (; pos < end && line[pos] >= '0' && line[pos] <= '9' && exp < 10000; pos++)
+        exp = exp * 10 + (line[pos] - '0');
+      if (pos == expStart)
+        seenDigit = false;
+      exponent += negativeExp ? -exp : exp;
+    }
+    if (!seenDigit || pos != end)
+      return fallbackNumber(field);
+    if (mantissa == 0 && !inexact)
+      return negative ? -0.0 : 0.0;
+    if (inexact || exponent < -MAX_EXACT_POWER || exponent > MAX_EXACT_POWER)
+      return fallbackNumber(field);
+    // both operands are exact, so the one operation rounds correctly
+    double value = exponent < 0
+        ? mantissa / POWERS_OF_TEN[-exponent]
+        : mantissa * POWERS_OF_TEN[exponent];
+    return negative ? -value : value;
+  }
+
+  private double fallbackNumber(int field) throws IOException {
+    var str = new String(line, fieldStart[field], fieldEnd[field] - fieldStart[field], "US-ASCII");
+    try {
+      return Double.parseDouble(str);
+    }
+    catch (NumberFormatException e) {
+      throw malformedNumber(field);
+    }
+  }
+
+  private IOException malformedNumber(int field) {
+    return new IOException(format("malformed number in column %d at line %d",
+        field + 1, lineNumber));
+  }
+
+  @Override
+  public void close() throws IOException {
+    stream.close();
+  }
+}
@@ -0,0 +1,45 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import java.util.concurrent.TimeUnit;
+
+import static uk.ac.dundee.compbio.hmmerclient.ExceptionUtils.newIAE;
+
+/**
+ * Token bucket rate limiter. Tokens are reserved in arrival order and
+ * a caller that finds the bucket empty waits until its token is refilled.
+ */
+final class TokenBucket {
+  private final double capacity;
+  private final double nanosPerToken;
+  private double tokens;
+  private long lastRefillNanos;
+
+  TokenBucket(double permitsPerSecond, int burst) {
+    if (permitsPerSecond <= 0)
+      throw newIAE("permitsPerSecond must be greater than 0");
+    if (burst < 1)
+      throw newIAE("burst must be at least 1");
+    this.capacity = burst;
+    this.nanosPerToken = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+    this.tokens = burst;
+    this.lastRefillNanos = System.nanoTime();
+  }
+
+  /**
+   * Takes a token and returns the number of nanoseconds the caller must
+   * wait before using it.
+   */
+  synchronized long reserve() {
+    long now = System.nanoTime();
+    tokens = Math.min(capacity, tokens + (now - lastRefillNanos) / nanosPerToken);
+    lastRefillNanos = now;
+    tokens -= 1;
+    return tokens >= 0 ? 0 : (long) Math.ceil(-tokens * nanosPerToken);
+  }
+
+  void acquire() throws InterruptedException {
+    long waitNanos = reserve();
+    if (waitNanos > 0)
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+  }
+}
@@ -1,86 +1,87 @@
 package uk.ac.dundee.compbio.hmmerclient;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.xml.sax.SAXException;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 
+/*
+ * Response bodies are read with a pull parser. The factory is configured once
+ * and only used to create readers afterwards which is safe from any thread;
+ * every call gets its own reader so no parser state is shared.
+ */
 class XMLProcessor {
 
-  private static final
-  DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newDefaultInstance();
-
-  private static final DocumentBuilder documentBuilder;
+  private static final XMLInputFactory inputFactory = XMLInputFactory.newFactory();
 
   static {
-    try {
-      documentBuilder = builderFactory.newDocumentBuilder();
-    }
-    catch (ParserConfigurationException e) {
-      throw new ExceptionInInitializerError(e);
-    }
+    inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
   }
 
   static IOException processErrorBody(InputStream responseBody) {
-    final Document doc;
+    XMLStreamReader reader = null;
     try {
-      doc = documentBuilder.parse(responseBody);
-      doc.normalize();
-    }
-    catch (IOException e) {
-      return e;
+      reader = inputFactory.createXMLStreamReader(responseBody);
+      reader.nextTag();
+      if (!reader.getLocalName().equals("error"))
+        return new IOException("server response missing XML node /error");
+      while (reader.hasNext()) {
+        if (reader.next() == XMLStreamReader.START_ELEMENT &&
+            reader.getLocalName().equals("description"))
+          return new IOException(readTextContent(reader));
+      }
+      return new IOException("server response missing XML node /error/description");
     }
-    catch (SAXException e) {
+    catch (XMLStreamException e) {
+      if (e.getNestedException() instanceof IOException)
+        return (IOException) e.getNestedException();
       return new IOException("malformed XML received from the server", e);
     }
-    var root = doc.getDocumentElement();
-    if (!root.getNodeName().equals("error"))
-      return new IOException("server response missing XML node /error");
-    var descriptionNode = root.getElementsByTagName("description").item(0);
-    if (descriptionNode == null)
-      return new IOException("server response missing XML node /error/description");
-    return new IOException(descriptionNode.getTextContent());
+    finally {
+      closeQuietly(reader);
+    }
   }
 
   static Collection<ResultType> processResultTypesBody(InputStream responseBody)
       throws IOException {
-    final Document doc;
+    XMLStreamReader reader = null;
     try {
-      doc = documentBuilder.parse(responseBody);
-      doc.normalize();
+      reader = inputFactory.createXMLStreamReader(responseBody);
+      reader.nextTag();
+      if (!reader.getLocalName().equals("types"))
+        throw new IOException("XML response missing /types node");
+      var results = new ArrayList<ResultType>();
+      while (reader.nextTag() == XMLStreamReader.START_ELEMENT) {
+        if (reader.getLocalName().equals("type"))
+          results.add(parseResultTypeElement(reader));
+        else
+          skipElement(reader);
+      }
+      return results;
     }
-    catch (SAXException e) {
+    catch (XMLStreamException e) {
+      if (e.getNestedException() instanceof IOException)
+        throw (IOException) e.getNestedException();
       throw new IOException("malformed XML received from the server", e);
     }
-    var root = doc.getDocumentElement();
-    if (!root.getNodeName().equals("types"))
-      throw new IOException("XML response missing /types node");
-
-    var results = new ArrayList<ResultType>();
-    var node = root.getFirstChild();
-    while (node != null) {
-      if (node.getNodeType() == Node.ELEMENT_NODE && node.getNodeName().equals("type"))
-        results.add(parseResultTypeNode(node));
-      node = node.getNextSibling();
+    finally {
+      closeQuietly(reader);
     }
-    return results;
   }
 
-  private static ResultType parseResultTypeNode(Node rootNode) throws IOException {
-    assert rootNode.getNodeType() == Node.ELEMENT_NODE;
-    assert rootNode.getNodeName().equals("type");
+  private static ResultType parseResultTypeElement(XMLStreamReader reader)
+      throws XMLStreamException, IOException {
+    assert reader.getLocalName().equals("type");
     String description = null, fileSuffix = null, identifier = null, label = null, mediaType = null;
-    var node = rootNode.getFirstChild();
-    while (node != null) {
-      var textContent = node.getTextContent();
-      switch (node.getNodeName()) {
+    while (reader.nextTag() == XMLStreamReader.START_ELEMENT) {
+      var name = reader.getLocalName();
+      var textContent = readTextContent(reader);
+      switch (name) {
         case "description":
           description = textContent;
           break;
@@ -97,11 +98,56 @@ class XMLProcessor {
           mediaType = textContent;
           break;
       }
-      node = node.getNextSibling();
     }
     if (description == null || fileSuffix == null || identifier == null || label == null || mediaType == null) {
       throw new IOException("incomplete <type> node");
     }
     return new ResultType(description, fileSuffix, identifier, label, mediaType);
   }
+
+  /*
+   * Concatenates the text of the current element and all its descendants,
+   * leaving the reader at the matching end tag.
+   */
+  private static String readTextContent(XMLStreamReader reader) throws XMLStreamException {
+    var text = new StringBuilder();
+    int depth = 1;
+    while (depth > 0) {
+      switch (reader.next()) {
+        case XMLStreamReader.START_ELEMENT:
+          depth++;
+          break;
+        case XMLStreamReader.END_ELEMENT:
+          depth--;
+          break;
+        case XMLStreamReader.CHARACTERS:
+        case XMLStreamReader.CDATA:
+        case XMLStreamReader.SPACE:
+          text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+          break;
+      }
+    }
+    return text.toString();
+  }
+
+  private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0) {
+      int event = reader.next();
+      if (event == XMLStreamReader.START_ELEMENT)
+        depth++;
+      else if (event == XMLStreamReader.END_ELEMENT)
+        depth--;
+    }
+  }
+
+  private static void closeQuietly(XMLStreamReader reader) {
+    if (reader == null)
+      return;
+    try {
+      reader.close();
+    }
+    catch (XMLStreamException ignored) {
+    }
+  }
 }
@@ -0,0 +1,54 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import org.testng.annotations.Test;
+import uk.ac.dundee.compbio.hmmerclient.PhmmerClient.Status;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class BackoffPollingStrategyTest {
+
+  private final BackoffPollingStrategy noJitter = BackoffPollingStrategy.newBuilder()
+      .initialDelayMillis(1000)
+      .runningDelayMillis(200)
+      .maxDelayMillis(10_000)
+      .multiplier(2)
+      .jitter(0)
+      .elapsedFraction(1)
+      .build();
+
+  @Test
+  public void nextDelay_UnchangedStatus_DelayGrows() {
+    assertEquals(noJitter.nextDelayMillis(Status.PENDING, Status.QUEUED, 0, 60_000), 1000);
+    assertEquals(noJitter.nextDelayMillis(Status.PENDING, Status.QUEUED, 1, 60_000), 2000);
+    assertEquals(noJitter.nextDelayMillis(Status.PENDING, Status.QUEUED, 2, 60_000), 4000);
+  }
+
+  @Test
+  public void nextDelay_ManyUnchangedPolls_CappedAtMaxDelay() {
+    assertEquals(noJitter.nextDelayMillis(Status.PENDING, Status.QUEUED, 30, 600_000), 10_000);
+  }
+
+  @Test
+  public void nextDelay_JobStartedRunning_FastRecheck() {
+    assertEquals(noJitter.nextDelayMillis(Status.QUEUED, Status.RUNNING, 0, 60_000), 200);
+  }
+
+  @Test
+  public void nextDelay_RecentlySubmittedJob_BoundedByElapsedTime() {
+    assertEquals(noJitter.nextDelayMillis(Status.PENDING, Status.QUEUED, 5, 3000), 3000);
+  }
+
+  @Test
+  public void nextDelay_WithJitter_WithinRange() {
+    var strategy = BackoffPollingStrategy.newBuilder()
+        .initialDelayMillis(1000)
+        .multiplier(1)
+        .jitter(0.5)
+        .build();
+    for (int i = 0; i < 100; i++) {
+      long delay = strategy.nextDelayMillis(Status.PENDING, Status.QUEUED, 0, 60_000);
+      assertTrue(delay >= 500 && delay <= 1000, "delay out of range " + delay);
+    }
+  }
+}
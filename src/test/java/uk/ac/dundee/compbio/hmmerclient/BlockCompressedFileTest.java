@@ -0,0 +1,67 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import static org.testng.Assert.assertEquals;
+
+public class BlockCompressedFileTest {
+
+  private static final byte[] BGZF_EOF = {
+      0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0,
+      0x1b, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0
+  };
+
+  private Path file;
+  private byte[] data;
+
+  @BeforeMethod
+  public void writeFile() throws IOException {
+    file = Files.createTempFile("result", ".gz");
+    var text = new StringBuilder();
+    for (int i = 0; text.length() < 300_000; i++)
+      text.append("sp|P").append(i).append("|PROT_HUMAN - query - 1.2e-").append(i % 100)
+          .append(' ').append(i * 31 % 977).append(".5 0.1\n");
+    data = text.toString().getBytes("UTF-8");
+    try (var out = new BlockCompressedOutputStream(Files.newOutputStream(file))) {
+      out.write(data, 0, 1000);
+      out.write(data[1000]);
+      out.write(data, 1001, data.length - 1001);
+    }
+  }
+
+  @AfterMethod
+  public void deleteFile() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  public void write_TextData_ValidGzipWithEofMarker() throws IOException {
+    try (var in = new GZIPInputStream(Files.newInputStream(file))) {
+      assertEquals(in.readAllBytes(), data);
+    }
+    var bytes = Files.readAllBytes(file);
+    assertEquals(Arrays.copyOfRange(bytes, bytes.length - BGZF_EOF.length, bytes.length), BGZF_EOF);
+  }
+
+  @Test
+  public void newInputStream_AnyOffset_DataFromOffsetRead() throws IOException {
+    try (var compressed = BlockCompressedFile.open(file)) {
+      assertEquals(compressed.getUncompressedSize(), data.length);
+      int block = BlockCompressedOutputStream.MAX_BLOCK_DATA;
+      for (int offset : new int[]{0, 1, block - 1, block, block + 1, 2 * block, data.length - 1, data.length}) {
+        try (var in = compressed.newInputStream(offset)) {
+          assertEquals(in.readAllBytes(), Arrays.copyOfRange(data, offset, data.length),
+              "offset " + offset);
+        }
+      }
+    }
+  }
+}
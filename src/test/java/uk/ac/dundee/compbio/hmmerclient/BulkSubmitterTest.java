@@ -0,0 +1,159 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import org.testng.annotations.Test;
+import uk.ac.dundee.compbio.hmmerclient.PhmmerClient.Status;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class BulkSubmitterTest {
+
+  private static final String FASTA =
+      ">rec1 first\nMKVLA\nAGIVG\n" +
+      ">rec2 same residues as rec1\nmkvlaagivg\n" +
+      ">rec3\nMSTNPKPQRK\n" +
+      ">rec4 invalid\nMKV1LA\n" +
+      ">rec5 empty\n" +
+      ">rec6\nMKVLAAGIVG\n";
+
+  @Test
+  public void submit_DuplicateAndInvalidRecords_OneJobPerDistinctSequence() throws IOException {
+    try (var server = FakePhmmerServer.newBuilder().runTime(Duration.ofMillis(20)).start()) {
+      var client = new PhmmerClient(server.getURI());
+      client.setPollingStrategy(PollingStrategy.fixedDelay(5));
+      var submitter = BulkSubmitter.newBuilder()
+          .client(client)
+          .email("test@example.org")
+          .submissionsPerSecond(1000)
+          .burst(10)
+          .validator(SequenceValidator.newBuilder()
+              .alphabet(SequenceValidator.PROTEIN_ALPHABET)
+              .maxLength(100)
+              .build())
+          .build();
+      var results = new HashMap<String, BulkResult>();
+      try (var stream = submitter.submit(new StringReader(FASTA))) {
+        stream.forEach(result -> results.put(result.getRecordId(), result));
+      }
+      assertEquals(results.size(), 6);
+      assertEquals(server.getSubmittedJobs(), 2);
+      var first = results.get("rec1");
+      assertEquals(first.getStatus(), Status.FINISHED);
+      assertEquals(results.get("rec2").getJobId(), first.getJobId());
+      assertEquals(results.get("rec6").getJobId(), first.getJobId());
+      assertEquals(results.get("rec3").getStatus(), Status.FINISHED);
+      for (var id : new String[]{"rec4", "rec5"}) {
+        assertNull(results.get(id).getJobId());
+        assertTrue(results.get(id).getException() instanceof IllegalArgumentException);
+      }
+      assertTrue(results.get("rec4").getException().getMessage().contains("'1' at position 4"),
+          results.get("rec4").getException().getMessage());
+    }
+  }
+
+  private static String distinctRecords(int count) {
+    var residues = "ACDEFGHIKLMNPQRSTVWY";
+    var fasta = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      fasta.append(">rec").append(i).append('\n')
+          .append("MK").append(residues.charAt(i % residues.length()))
+          .append("L".repeat(i / residues.length() + 1)).append('\n');
+    }
+    return fasta.toString();
+  }
+
+  @Test
+  public void submit_MaxInFlightReached_SubmissionsHeld() throws Exception {
+    try (var server = FakePhmmerServer.newBuilder().runTime(Duration.ofMillis(400)).start()) {
+      var client = new PhmmerClient(server.getURI());
+      client.setPollingStrategy(PollingStrategy.fixedDelay(5));
+      var submitter = BulkSubmitter.newBuilder()
+          .client(client)
+          .email("test@example.org")
+          .maxInFlight(2)
+          .submissionsPerSecond(1000)
+          .burst(10)
+          .build();
+      try (var stream = submitter.submit(new StringReader(distinctRecords(6)))) {
+        Thread.sleep(200);
+        assertEquals(server.getSubmittedJobs(), 2);
+        assertEquals(stream.count(), 6);
+      }
+      assertEquals(server.getSubmittedJobs(), 6);
+    }
+  }
+
+  @Test
+  public void submit_RateLimited_SubmissionsSpreadOut() throws IOException {
+    try (var server = FakePhmmerServer.newBuilder().start()) {
+      var client = new PhmmerClient(server.getURI());
+      client.setPollingStrategy(PollingStrategy.fixedDelay(5));
+      var submitter = BulkSubmitter.newBuilder()
+          .client(client)
+          .email("test@example.org")
+          .submissionsPerSecond(20)
+          .build();
+      long start = System.nanoTime();
+      try (var stream = submitter.submit(new StringReader(distinctRecords(6)))) {
+        assertEquals(stream.count(), 6);
+      }
+      long elapsed = System.nanoTime() - start;
+      // the first submission takes the only token, the other five wait 50 ms each
+      assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(250), elapsed + " ns");
+      assertEquals(server.getSubmittedJobs(), 6);
+    }
+  }
+
+  @Test
+  public void submit_StreamClosed_SubmissionsStopped() throws Exception {
+    try (var server = FakePhmmerServer.newBuilder().start()) {
+      var client = new PhmmerClient(server.getURI());
+      client.setPollingStrategy(PollingStrategy.fixedDelay(5));
+      var submitter = BulkSubmitter.newBuilder()
+          .client(client)
+          .email("test@example.org")
+          .submissionsPerSecond(10)
+          .build();
+      try (var stream = submitter.submit(new StringReader(distinctRecords(20)))) {
+        assertTrue(stream.iterator().hasNext());
+      }
+      // let a submission started before closing reach the server
+      Thread.sleep(200);
+      long submitted = server.getSubmittedJobs();
+      Thread.sleep(500);
+      assertEquals(server.getSubmittedJobs(), submitted);
+      assertTrue(submitted < 20, submitted + " jobs submitted");
+    }
+  }
+
+  @Test
+  public void submit_DuplicateAfterJobFinished_FinishedJobReused() throws IOException {
+    try (var server = FakePhmmerServer.newBuilder().runTime(Duration.ofMillis(20)).start()) {
+      var client = new PhmmerClient(server.getURI());
+      client.setPollingStrategy(PollingStrategy.fixedDelay(5));
+      // with one job in flight, rec3 is read only after the job of rec1 finished
+      var submitter = BulkSubmitter.newBuilder()
+          .client(client)
+          .email("test@example.org")
+          .maxInFlight(1)
+          .submissionsPerSecond(1000)
+          .burst(10)
+          .build();
+      var results = new HashMap<String, BulkResult>();
+      var fasta = ">rec1\nMKVLAAGIVG\n>rec2\nMSTNPKPQRK\n>rec3\nMKVLAAGIVG\n";
+      try (var stream = submitter.submit(new StringReader(fasta))) {
+        stream.forEach(result -> results.put(result.getRecordId(), result));
+      }
+      assertEquals(server.getSubmittedJobs(), 2);
+      assertEquals(results.get("rec3").getJobId(), results.get("rec1").getJobId());
+      assertEquals(results.get("rec3").getStatus(), Status.FINISHED);
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import org.testng.annotations.Test;
+import uk.ac.dundee.compbio.hmmerclient.CircuitBreaker.State;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+  @Test
+  public void recordFailure_ThresholdReached_BreakerOpened() {
+    var breaker = CircuitBreaker.newBuilder().failureThreshold(3).build();
+    breaker.recordFailure(0);
+    breaker.recordFailure(0);
+    assertEquals(breaker.getState(), State.CLOSED);
+    breaker.recordSuccess();
+    breaker.recordFailure(0);
+    breaker.recordFailure(0);
+    assertEquals(breaker.getState(), State.CLOSED);
+    breaker.recordFailure(0);
+    assertEquals(breaker.getState(), State.OPEN);
+  }
+
+  @Test
+  public void acquire_OpenBreaker_SingleTrialAfterOpenPeriod() throws Exception {
+    var breaker = CircuitBreaker.newBuilder()
+        .failureThreshold(1)
+        .openDurationMillis(100)
+        .build();
+    breaker.recordFailure(0);
+    long start = System.nanoTime();
+    breaker.acquire();
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(90));
+    assertEquals(breaker.getState(), State.HALF_OPEN);
+    var second = CompletableFuture.runAsync(() -> {
+      try {
+        breaker.acquire();
+      }
+      catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    Thread.sleep(30);
+    assertFalse(second.isDone());
+    breaker.recordSuccess();
+    second.get(1, TimeUnit.SECONDS);
+    assertEquals(breaker.getState(), State.CLOSED);
+  }
+
+  @Test
+  public void acquire_RetryAfterReceived_SubmissionsHeld() throws InterruptedException {
+    var breaker = CircuitBreaker.newBuilder().build();
+    breaker.recordFailure(TimeUnit.MILLISECONDS.toNanos(100));
+    assertEquals(breaker.getState(), State.CLOSED);
+    long start = System.nanoTime();
+    breaker.acquire();
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(90));
+  }
+}
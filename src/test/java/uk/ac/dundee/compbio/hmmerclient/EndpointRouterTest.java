@@ -0,0 +1,185 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import org.testng.annotations.Test;
+import uk.ac.dundee.compbio.hmmerclient.PhmmerClient.Status;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class EndpointRouterTest {
+
+  private static PhmmerClient newClient(FakePhmmerServer server) {
+    var client = new PhmmerClient(server.getURI());
+    client.setRetryPolicy(RetryPolicy.none());
+    client.setPollingStrategy(PollingStrategy.fixedDelay(5));
+    return client;
+  }
+
+  private static PhmmerRequest newRequest() {
+    return PhmmerRequest.newBuilder().sequence(new StringReader(">q\nMKVLAAGIVG\n")).build();
+  }
+
+  @Test
+  public void submit_WeightedStrategy_JobsSpreadByWeight() throws Exception {
+    try (var first = FakePhmmerServer.newBuilder().start();
+         var second = FakePhmmerServer.newBuilder().start()) {
+      var firstClient = newClient(first);
+      try (var router = EndpointRouter.newBuilder()
+          .endpoint(firstClient, 1)
+          .endpoint(newClient(second), 2)
+          .strategy(EndpointRouter.Strategy.WEIGHTED)
+          .healthCheckIntervalMillis(0)
+          .build()) {
+        String firstJob = null;
+        for (int i = 0; i < 6; i++) {
+          var jobId = router.submit(newRequest(), "test@example.org");
+          if (router.getEndpoint(jobId).getBackend() == firstClient)
+            firstJob = jobId;
+        }
+        assertEquals(first.getSubmittedJobs(), 2);
+        assertEquals(second.getSubmittedJobs(), 4);
+        assertEquals(router.awaitCompletion(firstJob).get(5, TimeUnit.SECONDS), Status.FINISHED);
+        assertEquals(router.getResultTypes(firstJob).size(), 3);
+        assertEquals(router.getStatus("unknown"), Status.NOT_FOUND);
+      }
+    }
+  }
+
+  @Test
+  public void submit_EndpointDown_RoutedToHealthyEndpoint() throws Exception {
+    var down = FakePhmmerServer.newBuilder().start();
+    var downClient = newClient(down);
+    down.close();
+    try (var up = FakePhmmerServer.newBuilder().start()) {
+      var upClient = newClient(up);
+      try (var router = EndpointRouter.newBuilder()
+          .endpoint(downClient, 1)
+          .endpoint(upClient, 1)
+          .strategy(EndpointRouter.Strategy.LEAST_OUTSTANDING)
+          .healthCheckIntervalMillis(0)
+          .build()) {
+        var template = PhmmerRequest.newBuilder().buildTemplate();
+        for (int i = 0; i < 3; i++) {
+          var jobId = router.submit(template.bind(">q\nMKVLAAGIVG\n"), "test@example.org");
+          assertSame(router.getEndpoint(jobId).getBackend(), upClient);
+          assertEquals(router.awaitCompletion(jobId).get(5, TimeUnit.SECONDS), Status.FINISHED);
+        }
+        assertEquals(up.getSubmittedJobs(), 3);
+        assertFalse(router.getEndpoints().get(0).isHealthy());
+        assertTrue(router.testEndpoint());
+      }
+    }
+  }
+
+  @Test
+  public void submit_EndpointsReturnSameId_JobsKeptApart() throws Exception {
+    try (var first = FakePhmmerServer.newBuilder().start();
+         var second = FakePhmmerServer.newBuilder().start()) {
+      var firstClient = newClient(first);
+      var secondClient = newClient(second);
+      try (var router = EndpointRouter.newBuilder()
+          .endpoint(firstClient, 1)
+          .endpoint(secondClient, 1)
+          .strategy(EndpointRouter.Strategy.WEIGHTED)
+          .healthCheckIntervalMillis(0)
+          .build()) {
+        var firstJob = router.submit(newRequest(), "test@example.org");
+        var secondJob = router.submit(newRequest(), "test@example.org");
+        assertEquals(first.getSubmittedJobs(), 1);
+        assertEquals(second.getSubmittedJobs(), 1);
+        assertNotEquals(firstJob, secondJob);
+        assertSame(router.getEndpoint(firstJob).getBackend(), firstClient);
+        assertSame(router.getEndpoint(secondJob).getBackend(), secondClient);
+        for (var jobId : new String[]{firstJob, secondJob})
+          assertEquals(router.awaitCompletion(jobId).get(5, TimeUnit.SECONDS), Status.FINISHED);
+        try (var stream = router.getResultStream(secondJob, "tblout")) {
+          assertEquals(stream.readAllBytes(), second.getResult("tblout"));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void getEndpoint_JobSubmittedDirectly_FoundOnEndpoint() throws Exception {
+    try (var first = FakePhmmerServer.newBuilder().start();
+         var second = FakePhmmerServer.newBuilder().runTime(Duration.ofMillis(200)).start()) {
+      var secondClient = newClient(second);
+      try (var router = EndpointRouter.newBuilder()
+          .endpoint(newClient(first), 1)
+          .endpoint(secondClient, 1)
+          .healthCheckIntervalMillis(0)
+          .build()) {
+        var jobId = secondClient.submit(newRequest(), "test@example.org");
+        assertSame(router.getEndpoint(jobId).getBackend(), secondClient);
+        assertEquals(router.awaitCompletion(jobId).get(5, TimeUnit.SECONDS), Status.FINISHED);
+        assertEquals(router.getStatus(jobId), Status.FINISHED);
+        assertEquals(router.getStatus("router:5:" + jobId), Status.NOT_FOUND);
+      }
+    }
+  }
+
+  @Test
+  public void getStatus_ForeignJobFinished_EndpointRemembered() throws Exception {
+    try (var first = FakePhmmerServer.newBuilder().start();
+         var second = FakePhmmerServer.newBuilder().start()) {
+      var secondClient = newClient(second);
+      try (var router = EndpointRouter.newBuilder()
+          .endpoint(newClient(first), 1)
+          .endpoint(secondClient, 1)
+          .healthCheckIntervalMillis(0)
+          .build()) {
+        var jobId = secondClient.submit(newRequest(), "test@example.org");
+        assertEquals(secondClient.awaitCompletion(jobId).get(5, TimeUnit.SECONDS), Status.FINISHED);
+        assertEquals(router.getStatus(jobId), Status.FINISHED);
+        long firstRequests = first.getRequestCount();
+        for (int i = 0; i < 3; i++)
+          assertEquals(router.getStatus(jobId), Status.FINISHED);
+        assertEquals(first.getRequestCount(), firstRequests);
+      }
+    }
+  }
+
+  @Test
+  public void getStatus_ForeignIdLooksRouted_LookedUpOnEndpoints() throws Exception {
+    try (var server = FakePhmmerServer.newBuilder().start()) {
+      var client = newClient(server);
+      try (var router = EndpointRouter.newBuilder()
+          .endpoint(client, 1)
+          .healthCheckIntervalMillis(0)
+          .build()) {
+        var jobId = client.submit(newRequest(), "test@example.org");
+        assertEquals(client.awaitCompletion(jobId).get(5, TimeUnit.SECONDS), Status.FINISHED);
+        assertEquals(router.getStatus("0:" + jobId), Status.NOT_FOUND);
+        assertEquals(router.getStatus("router:0:" + jobId), Status.FINISHED);
+      }
+    }
+  }
+
+  @Test
+  public void submit_JobNotChecked_NotPolledAndStillOutstanding() throws Exception {
+    try (var server = FakePhmmerServer.newBuilder().runTime(Duration.ofMillis(50)).start()) {
+      try (var router = EndpointRouter.newBuilder()
+          .endpoint(newClient(server), 1)
+          .healthCheckIntervalMillis(0)
+          .build()) {
+        var jobId = router.submit(newRequest(), "test@example.org");
+        var endpoint = router.getEndpoints().get(0);
+        Thread.sleep(200);
+        assertEquals(server.getRequestCount(), 1);
+        assertEquals(endpoint.getOutstandingJobs(), 1);
+        assertEquals(router.awaitCompletion(jobId).get(5, TimeUnit.SECONDS), Status.FINISHED);
+        assertEquals(endpoint.getOutstandingJobs(), 0);
+        assertEquals(router.getStatus(jobId), Status.FINISHED);
+        assertEquals(endpoint.getOutstandingJobs(), 0);
+      }
+    }
+  }
+}
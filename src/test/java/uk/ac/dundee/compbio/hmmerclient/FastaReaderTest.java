@@ -0,0 +1,51 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class FastaReaderTest {
+
+  @Test
+  public void read_MultipleRecords_ReadInOrder() throws IOException {
+    var fasta = "; comment\n\n>seq1 first sequence\nMGPS\nENDP\n>seq2\n\nNLFV ALYD\n>seq3 empty\n";
+    try (var reader = new FastaReader(new StringReader(fasta))) {
+      var first = reader.read();
+      assertEquals(first.getId(), "seq1");
+      assertEquals(first.getHeader(), "seq1 first sequence");
+      assertEquals(first.getSequence(), "MGPSENDP");
+      var second = reader.read();
+      assertEquals(second.getId(), "seq2");
+      assertEquals(second.getSequence(), "NLFVALYD");
+      var third = reader.read();
+      assertEquals(third.getId(), "seq3");
+      assertEquals(third.getSequence(), "");
+      assertNull(reader.read());
+      assertNull(reader.read());
+    }
+  }
+
+  @Test
+  public void read_ExampleSequence_SingleRecord() throws IOException {
+    var stream = getClass().getResourceAsStream("exampleInputSequence.fa");
+    //noinspection DataFlowIssue
+    try (var reader = new FastaReader(new InputStreamReader(stream))) {
+      var record = reader.read();
+      assertEquals(record.getId(), "2abl_A");
+      assertEquals(record.getSequence().length(), 163);
+      assertNull(reader.read());
+    }
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void read_MissingHeader_ThrowsIOException() throws IOException {
+    try (var reader = new FastaReader(new StringReader("MGPSENDP\n"))) {
+      reader.read();
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URLEncoder;
+
+import static org.testng.Assert.assertEquals;
+
+public class FormRequestBodyTest {
+
+  @DataProvider
+  public Object[] sequences() {
+    var longSequence = new StringBuilder(">long\n");
+    for (int i = 0; i < 5000; i++)
+      longSequence.append("ACDEFGHIKLMNPQRSTVWY".charAt(i % 20));
+    // a surrogate pair split across the 2048 character read buffer
+    var splitPair = "A".repeat(2047) + "\ud83e\uddec" + "MGPS";
+    return new Object[]{
+        ">2abl_A mol:protein length:163\nMGPSENDPNLFV\n",
+        "a b&c=d+e%f/g?h~i",
+        "\u00e9\u4e2d\ud83e\uddec",
+        "",
+        longSequence.toString(),
+        splitPair,
+    };
+  }
+
+  @Test(dataProvider = "sequences")
+  public void writeTo_Sequence_MatchesURLEncoder(String sequence) throws IOException {
+    var fields = new FormRequestBody.FieldsBuilder()
+        .append("email", "user@example.org")
+        .append("database", "uniprotkb");
+    var body = new FormRequestBody(fields.toByteArray(), "sequence",
+        () -> new StringReader(sequence));
+    var out = new ByteArrayOutputStream();
+    body.writeTo(out);
+    var expected = "email=" + URLEncoder.encode("user@example.org", "UTF-8") +
+        "&database=uniprotkb&sequence=" + URLEncoder.encode(sequence, "UTF-8");
+    assertEquals(out.toString("UTF-8"), expected);
+  }
+
+  @Test
+  public void writeTo_CalledTwice_SameContent() throws IOException {
+    var body = new FormRequestBody(new byte[0], "sequence", () -> new StringReader("MGPS"));
+    var first = new ByteArrayOutputStream();
+    body.writeTo(first);
+    var second = new ByteArrayOutputStream();
+    body.writeTo(second);
+    assertEquals(first.toString("UTF-8"), "sequence=MGPS");
+    assertEquals(second.toString("UTF-8"), "sequence=MGPS");
+  }
+}
@@ -0,0 +1,49 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import org.testng.annotations.Test;
+import uk.ac.dundee.compbio.hmmerclient.ClientMetrics.Operation;
+import uk.ac.dundee.compbio.hmmerclient.PhmmerClient.Status;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class HistogramMetricsTest {
+
+  @Test
+  public void getPercentileNanos_RecordedLatencies_BucketUpperBound() {
+    var metrics = new HistogramMetrics();
+    for (int i = 0; i < 99; i++)
+      metrics.recordRequest(Operation.GET_STATUS, 1000, 200);
+    metrics.recordRequest(Operation.GET_STATUS, 1_000_000, 500);
+    var latency = metrics.getLatency(Operation.GET_STATUS);
+    assertEquals(latency.getCount(), 100);
+    assertEquals(latency.getPercentileNanos(50), 1023);
+    assertEquals(latency.getPercentileNanos(100), (1 << 20) - 1);
+    assertEquals(metrics.getLatency(Operation.SUBMIT).getPercentileNanos(50), 0);
+    assertEquals(metrics.getStatusCodeCounts(), Map.of(200, 99L, 500, 1L));
+  }
+
+  @Test
+  public void recordStatusTransition_FirstStatus_NotRecorded() {
+    var metrics = new HistogramMetrics();
+    metrics.recordStatusTransition("job", null, Status.QUEUED, 10);
+    metrics.recordStatusTransition("job", Status.QUEUED, Status.RUNNING, 2000);
+    assertEquals(metrics.getTimeInStatus(Status.QUEUED).getCount(), 1);
+    assertEquals(metrics.getTimeInStatus(Status.QUEUED).getMeanNanos(), 2000.0);
+  }
+
+  @Test
+  public void countingInputStream_ReadToEnd_BytesReportedOnce() throws IOException {
+    var metrics = new HistogramMetrics();
+    try (var stream = new CountingInputStream(
+        new ByteArrayInputStream(new byte[5000]), metrics, Operation.GET_RESULT)) {
+      assertEquals(stream.readAllBytes().length, 5000);
+      assertTrue(stream.read() < 0);
+    }
+    assertEquals(metrics.getBytesDownloaded(Operation.GET_RESULT), 5000);
+  }
+}
@@ -0,0 +1,179 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import uk.ac.dundee.compbio.hmmerclient.TabularResultReader.Format;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.expectThrows;
+
+public class HitStoreTest {
+
+  private Path directory;
+
+  @BeforeMethod
+  public void createDirectory() throws IOException {
+    directory = Files.createTempDirectory("hitstore");
+  }
+
+  @AfterMethod
+  public void deleteDirectory() throws IOException {
+    try (var files = Files.list(directory)) {
+      for (var file : (Iterable<Path>) files::iterator)
+        Files.delete(file);
+    }
+    Files.delete(directory);
+  }
+
+  @Test
+  public void open_WrittenHits_ColumnsAndIndexesRead() throws IOException {
+    var file = directory.resolve("hits.store");
+    try (var writer = new HitStoreWriter(file)) {
+      for (var query : new String[]{"recA", "recB"}) {
+        try (var reader = new TabularResultReader(
+            getClass().getResourceAsStream("exampleTblout.txt"), Format.TBLOUT)) {
+          assertEquals(writer.addAll(query, reader), 3);
+        }
+      }
+    }
+    try (var files = Files.list(directory)) {
+      assertEquals(files.count(), 1L);
+    }
+    var store = HitStore.open(file);
+    assertEquals(store.size(), 6);
+    assertEquals(store.getQuery(0), "recA");
+    assertEquals(store.getTargetName(0), "sp|P00519|ABL1_HUMAN");
+    assertEquals(store.getEvalue(0), 1.2e-112, 1e-124);
+    assertEquals(store.getScore(0), 376.5f, 1e-4f);
+    assertEquals(store.getDomainCount(0), 1);
+    assertEquals(store.getEvalue(5), 0.75, 1e-9);
+
+    var hitsB = store.findByQuery("recB");
+    assertEquals(hitsB.length, 3);
+    assertEquals(hitsB[0], 3);
+    var hitsAbl = store.findByTarget("sp|P00519|ABL1_HUMAN");
+    assertEquals(hitsAbl.length, 2);
+    assertEquals(store.getQueryId(hitsAbl[1]), store.findName("recB"));
+    assertEquals(store.findByQuery("recC").length, 0);
+    assertEquals(store.findName("recC"), -1);
+    expectThrows(IndexOutOfBoundsException.class, () -> store.getScore(6));
+  }
+
+  private static TabularResultReader tblout(String... rows) throws IOException {
+    var text = new StringBuilder();
+    for (var row : rows)
+      text.append(row).append(" q - 1e-5 10.0 0.1 1e-5 10.0 0.1 1.0 1 0 0 1 1 1 1 -\n");
+    return new TabularResultReader(
+        new ByteArrayInputStream(text.toString().getBytes("UTF-8")), Format.TBLOUT);
+  }
+
+  @Test
+  public void findByTargetAccession_SharedAccession_AllHitsFound() throws IOException {
+    var file = directory.resolve("hits.store");
+    try (var writer = new HitStoreWriter(file);
+         var reader = tblout("ABL1_HUMAN P00519.1", "ABL1_MOUSE P00520.1", "ABL1_ISO P00519.1")) {
+      writer.addAll("rec", reader);
+    }
+    var store = HitStore.open(file);
+    var human = store.findByTargetAccession("P00519.1");
+    assertEquals(human.length, 2);
+    assertEquals(human[0], 0);
+    assertEquals(human[1], 2);
+    var mouse = store.findByTargetAccessionId(store.getTargetAccessionId(1));
+    assertEquals(mouse.length, 1);
+    assertEquals(mouse[0], 1);
+    assertEquals(store.findByTargetAccession("ABL1_HUMAN").length, 0);
+    assertEquals(store.findByTarget("P00519.1").length, 0);
+  }
+
+  @Test
+  public void open_SmallChunksAndRuns_SameHitsRead() throws IOException {
+    var file = directory.resolve("hits.store");
+    int hits = 300;
+    var queries = new String[hits];
+    var targets = new String[hits];
+    var accessions = new String[hits];
+    try (var writer = new HitStoreWriter(file, 128, 64)) {
+      for (int i = 0; i < hits; i++) {
+        queries[i] = "rec" + i % 7;
+        targets[i] = "target" + i * 31 % 50;
+        accessions[i] = "P" + i % 13 + ".1";
+        var row = targets[i] + " " + accessions[i] + " q - 1e-5 " + i +
+            " 0.1 1e-5 10.0 0.1 1.0 1 0 0 1 1 1 1 -\n";
+        try (var reader = new TabularResultReader(
+            new ByteArrayInputStream(row.getBytes("UTF-8")), Format.TBLOUT)) {
+          writer.addAll(queries[i], reader);
+        }
+      }
+    }
+    try (var files = Files.list(directory)) {
+      assertEquals(files.count(), 1L);
+    }
+    var store = HitStore.open(file, 64);
+    assertEquals(store.size(), hits);
+    assertEquals(store.getDictionarySize(), 7 + 50 + 13);
+    for (int id = 1; id < store.getDictionarySize(); id++)
+      assertTrue(store.getName(id - 1).compareTo(store.getName(id)) < 0);
+    for (int i = 0; i < hits; i++) {
+      assertEquals(store.getQuery(i), queries[i]);
+      assertEquals(store.getTargetName(i), targets[i]);
+      assertEquals(store.getTargetAccession(i), accessions[i]);
+      assertEquals(store.getScore(i), (float) i);
+      assertEquals(store.getEvalue(i), 1e-5, 1e-17);
+    }
+    assertIndex(store.findByQuery("rec3"), queries, "rec3");
+    assertIndex(store.findByTarget("target17"), targets, "target17");
+    assertIndex(store.findByTargetAccession("P5.1"), accessions, "P5.1");
+  }
+
+  private static void assertIndex(int[] found, String[] names, String name) {
+    int expected = 0;
+    for (int i = 0; i < names.length; i++) {
+      if (names[i].equals(name)) {
+        assertTrue(expected < found.length);
+        assertEquals(found[expected++], i);
+      }
+    }
+    assertEquals(found.length, expected);
+  }
+
+  @Test
+  public void close_ExistingStore_Replaced() throws IOException {
+    var file = directory.resolve("hits.store");
+    try (var writer = new HitStoreWriter(file); var reader = tblout("t1 a1", "t2 a2")) {
+      writer.addAll("rec", reader);
+    }
+    var old = HitStore.open(file);
+    try (var writer = new HitStoreWriter(file); var reader = tblout("t3 a3")) {
+      writer.addAll("rec", reader);
+    }
+    assertEquals(HitStore.open(file).getTargetName(0), "t3");
+    // the mapping of the replaced file stays readable
+    assertEquals(old.getTargetName(1), "t2");
+    try (var files = Files.list(directory)) {
+      assertEquals(files.count(), 1L);
+    }
+  }
+
+  @Test
+  public void open_EmptyStore_NoHits() throws IOException {
+    var file = directory.resolve("empty.store");
+    new HitStoreWriter(file).close();
+    var store = HitStore.open(file);
+    assertEquals(store.size(), 0);
+    assertEquals(store.findByTarget("x").length, 0);
+  }
+
+  @Test
+  public void open_OtherFile_ExceptionThrown() throws IOException {
+    var file = Files.write(directory.resolve("other.txt"), new byte[64]);
+    expectThrows(IOException.class, () -> HitStore.open(file));
+  }
+}
@@ -0,0 +1,82 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class HostLimiterTest {
+
+  @Test
+  public void submit_ManyTasks_ConcurrencyLimited() throws Exception {
+    var limiter = new HostLimiter(3);
+    var executor = Executors.newCachedThreadPool();
+    var running = new AtomicInteger();
+    var maxRunning = new AtomicInteger();
+    try {
+      var futures = new ArrayList<CompletableFuture<Integer>>();
+      for (int i = 0; i < 20; i++) {
+        int index = i;
+        futures.add(limiter.submit(() -> {
+          maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+          Thread.sleep(5);
+          running.decrementAndGet();
+          return index;
+        }, executor));
+      }
+      CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+          .get(10, TimeUnit.SECONDS);
+      for (int i = 0; i < 20; i++)
+        assertEquals(futures.get(i).join().intValue(), i);
+      assertTrue(maxRunning.get() <= 3, "max running " + maxRunning.get());
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void submit_FailingTask_NextTaskStarted() throws Exception {
+    var limiter = new HostLimiter(1);
+    var executor = Executors.newSingleThreadExecutor();
+    try {
+      var failed = limiter.submit(() -> {
+        throw new IllegalStateException("failed");
+      }, executor);
+      var next = limiter.submit(() -> "done", executor);
+      assertEquals(next.get(5, TimeUnit.SECONDS), "done");
+      assertTrue(failed.isCompletedExceptionally());
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void submit_QueuedTaskCancelled_NotRun() throws Exception {
+    var limiter = new HostLimiter(1);
+    var executor = Executors.newCachedThreadPool();
+    try {
+      var release = new CountDownLatch(1);
+      var first = limiter.submit(() -> release.await(5, TimeUnit.SECONDS), executor);
+      var ran = new AtomicInteger();
+      var cancelled = limiter.submit(ran::incrementAndGet, executor);
+      var next = limiter.submit(() -> "done", executor);
+      cancelled.cancel(false);
+      release.countDown();
+      assertTrue(first.get(5, TimeUnit.SECONDS));
+      assertEquals(next.get(5, TimeUnit.SECONDS), "done");
+      assertEquals(ran.get(), 0);
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import uk.ac.dundee.compbio.hmmerclient.PhmmerClient.Status;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.expectThrows;
+
+public class JobJournalTest {
+
+  private Path file;
+
+  @BeforeMethod
+  public void createFile() throws IOException {
+    file = Files.createTempFile("jobs", ".journal");
+  }
+
+  @AfterMethod
+  public void deleteFile() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  public void constructor_ExistingJournal_StateReplayed() throws IOException {
+    var resultFile = file.resolveSibling("out.txt");
+    try (var journal = new JobJournal(file)) {
+      journal.recordSubmit("job-1", "fp1");
+      journal.recordSubmit("job-2", "fp2");
+      journal.recordSubmit("job-3", "fp3");
+      journal.recordStatus("job-1", Status.RUNNING);
+      journal.recordStatus("job-1", Status.FINISHED);
+      journal.recordResult("job-1", "out", resultFile);
+      journal.recordStatus("job-2", Status.QUEUED);
+      journal.recordStatus("job-3", Status.FAILURE);
+    }
+    try (var journal = new JobJournal(file)) {
+      assertEquals(journal.getJobs().size(), 3);
+      var first = journal.getJob("job-1");
+      assertEquals(first.getStatus(), Status.FINISHED);
+      assertEquals(first.getFingerprint(), "fp1");
+      assertEquals(first.getResults().get("out"), resultFile.toAbsolutePath());
+      assertEquals(journal.getUnfinishedJobs().size(), 1);
+      assertEquals(journal.getUnfinishedJobs().iterator().next().getJobId(), "job-2");
+      assertEquals(journal.findJob("fp1"), "job-1");
+      assertNull(journal.findJob("fp3"));
+    }
+  }
+
+  @Test
+  public void constructor_TruncatedLastLine_LineDiscarded() throws IOException {
+    try (var journal = new JobJournal(file)) {
+      journal.recordSubmit("job-1", "fp1");
+    }
+    Files.write(file, "STATUS\tjob-1\tFINI".getBytes("UTF-8"), StandardOpenOption.APPEND);
+    try (var journal = new JobJournal(file)) {
+      assertEquals(journal.getJob("job-1").getStatus(), Status.PENDING);
+      journal.recordStatus("job-1", Status.RUNNING);
+    }
+    try (var journal = new JobJournal(file)) {
+      assertEquals(journal.getJob("job-1").getStatus(), Status.RUNNING);
+    }
+  }
+
+  @Test
+  public void compact_RepeatedUpdates_CurrentStateKept() throws IOException {
+    try (var journal = new JobJournal(file)) {
+      journal.recordSubmit("job-1", null);
+      journal.recordStatus("job-1", Status.QUEUED);
+      journal.recordStatus("job-1", Status.RUNNING);
+      journal.recordStatus("job-1", Status.FINISHED);
+      journal.compact();
+      journal.recordSubmit("job-2", "fp2");
+    }
+    assertEquals(Files.readAllLines(file).size(), 3);
+    try (var journal = new JobJournal(file)) {
+      assertEquals(journal.getJob("job-1").getStatus(), Status.FINISHED);
+      assertNull(journal.getJob("job-1").getFingerprint());
+      assertEquals(journal.findJob("fp2"), "job-2");
+    }
+  }
+
+  @Test
+  public void findJob_OlderThanMaxAge_ReturnsNull() throws Exception {
+    try (var journal = new JobJournal(file)) {
+      journal.recordSubmit("job-1", "fp1");
+      journal.recordStatus("job-1", Status.FINISHED);
+      assertEquals(journal.findJob("fp1"), "job-1");
+      Thread.sleep(20);
+      journal.setMaxAge(Duration.ofMillis(10));
+      assertNull(journal.findJob("fp1"));
+    }
+  }
+
+  @Test
+  public void findJob_SubmitTimeNotRecorded_ReturnsNull() throws IOException {
+    Files.write(file, "SUBMIT\tjob-1\tfp1\nSTATUS\tjob-1\tFINISHED\n".getBytes("UTF-8"));
+    try (var journal = new JobJournal(file)) {
+      assertEquals(journal.getJob("job-1").getSubmitTimeMillis(), 0);
+      assertNull(journal.findJob("fp1"));
+    }
+  }
+
+  @Test
+  public void compact_SubmitTimeKept() throws IOException {
+    long submitTime;
+    try (var journal = new JobJournal(file)) {
+      journal.recordSubmit("job-1", "fp1");
+      submitTime = journal.getJob("job-1").getSubmitTimeMillis();
+      journal.compact();
+    }
+    try (var journal = new JobJournal(file)) {
+      assertEquals(journal.getJob("job-1").getSubmitTimeMillis(), submitTime);
+      assertEquals(journal.findJob("fp1"), "job-1");
+    }
+  }
+
+  @Test
+  public void compact_ExpiredJobs_Dropped() throws Exception {
+    try (var journal = new JobJournal(file)) {
+      journal.recordSubmit("job-1", "fp1");
+      journal.recordStatus("job-1", Status.FINISHED);
+      journal.recordSubmit("job-2", "fp2");
+      Thread.sleep(500);
+      journal.recordSubmit("job-3", "fp3");
+      journal.setMaxAge(Duration.ofMillis(400));
+      journal.compact();
+      assertNull(journal.getJob("job-1"));
+      assertEquals(journal.getJobs().size(), 1);
+    }
+    assertEquals(Files.readAllLines(file).size(), 1);
+    try (var journal = new JobJournal(file)) {
+      assertEquals(journal.getJob("job-3").getStatus(), Status.PENDING);
+      assertNull(journal.getJob("job-2"));
+    }
+  }
+
+  @Test
+  public void getUnfinishedJobs_ExpiredJob_Excluded() throws Exception {
+    try (var journal = new JobJournal(file)) {
+      journal.recordSubmit("job-1", "fp1");
+      journal.recordStatus("job-1", Status.RUNNING);
+      assertEquals(journal.getUnfinishedJobs().size(), 1);
+      Thread.sleep(20);
+      journal.setMaxAge(Duration.ofMillis(10));
+      assertEquals(journal.getUnfinishedJobs().size(), 0);
+      assertEquals(journal.getJobs().size(), 1);
+    }
+  }
+
+  @Test
+  public void compact_ClosedJournal_ThrowsIOException() throws IOException {
+    var journal = new JobJournal(file);
+    journal.recordSubmit("job-1", "fp1");
+    journal.close();
+    expectThrows(IOException.class, journal::compact);
+    assertEquals(Files.readAllLines(file).size(), 1);
+  }
+}
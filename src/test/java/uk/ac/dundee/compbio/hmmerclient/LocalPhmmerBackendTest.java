@@ -0,0 +1,139 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import org.testng.SkipException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import uk.ac.dundee.compbio.hmmerclient.PhmmerClient.Status;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.expectThrows;
+
+public class LocalPhmmerBackendTest {
+
+  // stand-in for phmmer writing its arguments as the output and one hit per table
+  private static final String SCRIPT = "#!/bin/sh\n" +
+      "echo \"$@\" > \"$2\"\n" +
+      "while [ $# -gt 2 ]; do\n" +
+      "  case \"$1\" in\n" +
+      "    --tblout) echo 'hit1 - query - 1e-30 120.5 0.1 1e-30 120.0 0.1 1.0 1 1 0 1 1 1 1 desc' > \"$2\";;\n" +
+      "    --domtblout) : > \"$2\";;\n" +
+      "  esac\n" +
+      "  shift\n" +
+      "done\n" +
+      "grep -q FAIL \"$1\" && exit 1\n" +
+      "exit 0\n";
+
+  private Path directory;
+  private Path script;
+
+  @BeforeMethod
+  public void createScript() throws IOException {
+    if (!Files.isExecutable(Path.of("/bin/sh")))
+      throw new SkipException("requires /bin/sh");
+    directory = Files.createTempDirectory("local-backend");
+    script = Files.writeString(directory.resolve("phmmer.sh"), SCRIPT);
+    assertTrue(script.toFile().setExecutable(true));
+    Files.writeString(directory.resolve("db.fa"), ">db\nMKV\n");
+  }
+
+  @AfterMethod
+  public void deleteScript() throws IOException {
+    if (directory == null)
+      return;
+    Files.delete(script);
+    Files.delete(directory.resolve("db.fa"));
+    Files.delete(directory);
+  }
+
+  private LocalPhmmerBackend newBackend() throws IOException {
+    return LocalPhmmerBackend.newBuilder()
+        .executable(script.toString())
+        .database(directory.resolve("db.fa"))
+        .workers(2)
+        .cpusPerJob(1)
+        .build();
+  }
+
+  @Test
+  public void submit_RequestOptions_PassedToPhmmer() throws Exception {
+    try (var backend = newBackend()) {
+      var request = PhmmerRequest.newBuilder()
+          .sequence(new StringReader(">q\nMKVLA\n"))
+          .E(0.01f)
+          .mx(PhmmerRequest.SubstitutionMatrix.PAM30)
+          .build();
+      var jobId = backend.submit(request, "test@example.org");
+      assertEquals(backend.awaitCompletion(jobId).get(10, TimeUnit.SECONDS), Status.FINISHED);
+      assertEquals(backend.getStatus(jobId), Status.FINISHED);
+      assertEquals(backend.getResultTypes(jobId).size(), 3);
+      String out;
+      try (var stream = backend.getResultStream(jobId, "out")) {
+        out = new String(stream.readAllBytes(), "UTF-8");
+      }
+      assertTrue(out.contains("-E 0.01 "), out);
+      assertTrue(out.contains("--mx PAM30 "), out);
+      assertTrue(out.contains("--cpu 1 "), out);
+      var hits = backend.getResult(jobId, "tblout", TabularResultReader.Format.TBLOUT,
+          ResultFilter.newBuilder().maxEvalue(1e-10).build());
+      assertEquals(hits.size(), 1);
+      assertEquals(hits.get(0).getScore(), 120.5, 1e-9);
+    }
+  }
+
+  @Test
+  public void submit_ProcessFails_FailureStatus() throws Exception {
+    Path workDirectory;
+    try (var backend = newBackend()) {
+      workDirectory = backend.getWorkDirectory();
+      var jobId = backend.submit(PhmmerRequest.newBuilder()
+          .sequence(new StringReader(">FAIL\nMKV\n")).build(), "test@example.org");
+      assertEquals(backend.awaitCompletion(jobId).get(10, TimeUnit.SECONDS), Status.FAILURE);
+      expectThrows(IOException.class, () -> backend.getResultStream(jobId, "tblout"));
+      assertEquals(backend.getStatus("unknown"), Status.NOT_FOUND);
+    }
+    assertFalse(Files.exists(workDirectory));
+  }
+
+  @Test
+  public void delete_FinishedJob_DirectoryRemoved() throws Exception {
+    try (var backend = newBackend()) {
+      var jobId = backend.submit(PhmmerRequest.newBuilder()
+          .sequence(new StringReader(">q\nMKV\n")).build(), "test@example.org");
+      assertEquals(backend.awaitCompletion(jobId).get(10, TimeUnit.SECONDS), Status.FINISHED);
+      var jobDirectory = backend.getWorkDirectory().resolve(jobId);
+      assertTrue(Files.isDirectory(jobDirectory));
+      assertTrue(backend.delete(jobId));
+      assertFalse(Files.exists(jobDirectory));
+      assertEquals(backend.getStatus(jobId), Status.NOT_FOUND);
+      assertFalse(backend.delete(jobId));
+    }
+  }
+
+  @Test
+  public void submit_RetentionElapsed_JobDeleted() throws Exception {
+    try (var backend = LocalPhmmerBackend.newBuilder()
+        .executable(script.toString())
+        .database(directory.resolve("db.fa"))
+        .retentionMillis(100)
+        .build()) {
+      var jobId = backend.submit(PhmmerRequest.newBuilder()
+          .sequence(new StringReader(">q\nMKV\n")).build(), "test@example.org");
+      assertEquals(backend.awaitCompletion(jobId).get(10, TimeUnit.SECONDS), Status.FINISHED);
+      var jobDirectory = backend.getWorkDirectory().resolve(jobId);
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (Files.exists(jobDirectory) && System.nanoTime() < deadline)
+        Thread.sleep(20);
+      assertFalse(Files.exists(jobDirectory));
+      assertEquals(backend.getStatus(jobId), Status.NOT_FOUND);
+    }
+  }
+}
@@ -0,0 +1,605 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import io.github.warownia1.simplehttpclient.HttpRequest;
+import io.github.warownia1.simplehttpclient.HttpResponse;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+import uk.ac.dundee.compbio.hmmerclient.PhmmerClient.Status;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.expectThrows;
+
+public class PhmmerClientFakeServerTest {
+
+  private static PhmmerRequest newRequest(String sequence) {
+    return PhmmerRequest.newBuilder().sequence(new StringReader(sequence)).build();
+  }
+
+  @Test
+  public void awaitCompletion_QueuedJob_ResultsAvailable() throws Exception {
+    try (var server = FakePhmmerServer.newBuilder()
+        .queueDelay(Duration.ofMillis(500))
+        .runTime(Duration.ofMillis(20))
+        .resultSize(10_000)
+        .start()) {
+      var client = new PhmmerClient(server.getURI());
+      client.setPollingStrategy(PollingStrategy.fixedDelay(5));
+      var jobId = client.submit(newRequest(">query\nMKVLAAGIVG\n"), "test@example.org");
+      assertEquals(client.getStatus(jobId), Status.QUEUED);
+      assertEquals(client.awaitCompletion(jobId).get(5, TimeUnit.SECONDS), Status.FINISHED);
+      assertEquals(client.getResultTypes(jobId).size(), 3);
+      int hits = 0;
+      try (var reader = client.openTabularResult(jobId, "tblout", TabularResultReader.Format.TBLOUT)) {
+        while (reader.next())
+          hits++;
+      }
+      assertTrue(hits > 0);
+      var top = client.getResult(jobId, "tblout", TabularResultReader.Format.TBLOUT,
+          ResultFilter.newBuilder().topN(1).build());
+      assertEquals(top.size(), 1);
+      var directory = Files.createTempDirectory("results");
+      var path = client.downloadResult(jobId, "domtblout", directory.resolve("domtblout.txt"));
+      try (var reader = new TabularResultReader(
+          Files.newInputStream(path), TabularResultReader.Format.DOMTBLOUT)) {
+        assertTrue(reader.next());
+      }
+      Files.delete(path);
+      Files.delete(directory);
+    }
+  }
+
+  @Test
+  public void awaitCompletion_RepeatedCalls_OneWatchShared() throws Exception {
+    try (var server = FakePhmmerServer.newBuilder().runTime(Duration.ofMillis(300)).start()) {
+      var client = new PhmmerClient(server.getURI());
+      client.setPollingStrategy(PollingStrategy.fixedDelay(5));
+      var jobId = client.submit(newRequest(">q\nMKV\n"), "test@example.org");
+      var first = client.awaitCompletion(jobId);
+      assertSame(client.awaitCompletion(jobId), first);
+      assertEquals(first.get(5, TimeUnit.SECONDS), Status.FINISHED);
+    }
+  }
+
+  @Test
+  public void awaitCompletion_UndefinedStatus_PollingStops() throws Exception {
+    try (var server = FakePhmmerServer.newBuilder()
+        .jobFailureRate(1)
+        .failureStatus("UNDEFINED")
+        .start()) {
+      var client = new PhmmerClient(server.getURI());
+      client.setPollingStrategy(PollingStrategy.fixedDelay(5));
+      var jobId = client.submit(newRequest(">query\nMKVLAAGIVG\n"), "test@example.org");
+      assertEquals(client.awaitCompletion(jobId).get(5, TimeUnit.SECONDS), Status.UNDEFINED);
+      long requests = server.getRequestCount();
+      Thread.sleep(50);
+      assertEquals(server.getRequestCount(), requests);
+    }
+  }
+
+  @Test
+  public void awaitCompletion_SlowServer_OtherClientsPolledOnTime() throws Exception {
+    try (var slow = FakePhmmerServer.newBuilder().latency(Duration.ofMillis(1500)).start();
+         var fast = FakePhmmerServer.newBuilder().start()) {
+      var slowClient = new PhmmerClient(slow.getURI());
+      slowClient.setPollingStrategy(PollingStrategy.fixedDelay(1));
+      var slowPolls = new ArrayList<CompletableFuture<Status>>();
+      // more slow polls than there are scheduler threads
+      for (int i = 0; i < 16; i++)
+        slowPolls.add(slowClient.awaitCompletion("missing-" + i));
+      var client = new PhmmerClient(fast.getURI());
+      client.setPollingStrategy(PollingStrategy.fixedDelay(5));
+      var jobId = client.submit(newRequest(">query\nMKVLAAGIVG\n"), "test@example.org");
+      long start = System.nanoTime();
+      assertEquals(client.awaitCompletion(jobId).get(5, TimeUnit.SECONDS), Status.FINISHED);
+      assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1000));
+      for (var poll : slowPolls)
+        assertEquals(poll.get(5, TimeUnit.SECONDS), Status.NOT_FOUND);
+    }
+  }
+
+  @Test
+  public void downloadResults_SelectedTypes_SavedToDirectory() throws Exception {
+    try (var server = FakePhmmerServer.newBuilder().resultSize(10_000).start()) {
+      var client = new PhmmerClient(server.getURI());
+      var jobId = client.submit(newRequest(">query\nMKVLAAGIVG\n"), "test@example.org");
+      var directory = Files.createTempDirectory("results");
+      var paths = client.downloadResults(jobId, List.of("tblout", "domtblout"), directory)
+          .get(5, TimeUnit.SECONDS);
+      assertEquals(paths.keySet(), Set.of("tblout", "domtblout"));
+      for (var path : paths.values()) {
+        assertTrue(Files.size(path) >= 10_000);
+        Files.delete(path);
+      }
+      Files.delete(directory);
+    }
+  }
+
+  @Test
+  public void setMaxConcurrentDownloads_ClientsOfSameHost_LimitsIndependent() throws Exception {
+    try (var server = FakePhmmerServer.newBuilder().start()) {
+      var first = new PhmmerClient(server.getURI());
+      var second = new PhmmerClient(server.getURI());
+      first.setMaxConcurrentDownloads(1);
+      assertEquals(first.getMaxConcurrentDownloads(), 1);
+      assertEquals(second.getMaxConcurrentDownloads(), 4);
+    }
+  }
+
+  @Test
+  public void downloadResult_TruncatedTransfer_ResumedWithRange() throws Exception {
+    try (var server = FakePhmmerServer.newBuilder()
+        .resultSize(100_000)
+        .truncatedResults(1)
+        .start()) {
+      var client = new PhmmerClient(server.getURI());
+      client.setRetryPolicy(RetryPolicy.newBuilder().initialDelayMillis(1).build());
+      var metrics = new HistogramMetrics();
+      client.setMetrics(metrics);
+      var jobId = client.submit(newRequest(">q\nMKV\n"), "test@example.org");
+      var target = Files.createTempFile("tblout", ".txt");
+      client.downloadResult(jobId, "tblout", target);
+      var expected = server.getResult("tblout");
+      assertEquals(Files.readAllBytes(target), expected);
+      // the second request only fetched the missing half
+      assertEquals(metrics.getBytesDownloaded(ClientMetrics.Operation.GET_RESULT), expected.length);
+      assertTrue(Files.notExists(PhmmerClient.partFile(target, jobId, "tblout")));
+      Files.delete(target);
+    }
+  }
+
+  @Test
+  public void downloadResult_RangeIgnored_StartedOver() throws Exception {
+    try (var server = FakePhmmerServer.newBuilder()
+        .resultSize(100_000)
+        .truncatedResults(1)
+        .rangeRequests(false)
+        .start()) {
+      var client = new PhmmerClient(server.getURI());
+      client.setRetryPolicy(RetryPolicy.newBuilder().initialDelayMillis(1).build());
+      var metrics = new HistogramMetrics();
+      client.setMetrics(metrics);
+      var jobId = client.submit(newRequest(">q\nMKV\n"), "test@example.org");
+      var target = Files.createTempFile("tblout", ".txt");
+      client.downloadResult(jobId, "tblout", target);
+      var expected = server.getResult("tblout");
+      assertEquals(Files.readAllBytes(target), expected);
+      assertEquals(metrics.getBytesDownloaded(ClientMetrics.Operation.GET_RESULT),
+          expected.length / 2 + expected.length);
+      Files.delete(target);
+    }
+  }
+
+  @Test
+  public void downloadResult_PartFileLongerThanResult_StartedOver() throws Exception {
+    try (var server = FakePhmmerServer.newBuilder().resultSize(10_000).start()) {
+      var client = new PhmmerClient(server.getURI());
+      client.setRetryPolicy(RetryPolicy.newBuilder().initialDelayMillis(1).build());
+      var jobId = client.submit(newRequest(">q\nMKV\n"), "test@example.org");
+      var target = Files.createTempFile("tblout", ".txt");
+      var expected = server.getResult("tblout");
+      Files.write(PhmmerClient.partFile(target, jobId, "tblout"), new byte[expected.length + 10]);
+      client.downloadResult(jobId, "tblout", target);
+      assertEquals(Files.readAllBytes(target), expected);
+      Files.delete(target);
+    }
+  }
+
+  @Test
+  public void newBuilder_CustomTransport_AllRequestsSentThroughIt() throws Exception {
+    try (var server = FakePhmmerServer.newBuilder().start()) {
+      var shared = HttpTransport.shared();
+      var sent = new AtomicInteger();
+      var client = PhmmerClient.newBuilder()
+          .url(server.getURI())
+          .transport(new HttpTransport() {
+            @Override
+            public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+                throws IOException {
+              sent.incrementAndGet();
+              return shared.send(request, handler);
+            }
+          })
+          .build();
+      client.setPollingStrategy(PollingStrategy.fixedDelay(5));
+      var jobId = client.submit(newRequest(">query\nMKVLAAGIVG\n"), "test@example.org");
+      assertEquals(client.awaitCompletion(jobId).get(5, TimeUnit.SECONDS), Status.FINISHED);
+      client.getResultTypes(jobId);
+      assertEquals(sent.get(), server.getRequestCount());
+    }
+  }
+
+  @Test
+  public void submit_EmptySequence_ServerErrorDescriptionThrown() throws IOException {
+    try (var server = FakePhmmerServer.newBuilder().start()) {
+      var client = new PhmmerClient(server.getURI());
+      var exc = expectThrows(IOException.class,
+          () -> client.submit(newRequest(""), "test@example.org"));
+      assertTrue(exc.getMessage().contains("Error in reading the sequence"), exc.getMessage());
+    }
+  }
+
+  @Test
+  public void getStatus_InjectedErrors_RetriedUntilAttemptsExhausted() throws IOException {
+    try (var server = FakePhmmerServer.newBuilder().errorRate(1).errorStatus(503).start()) {
+      var client = new PhmmerClient(server.getURI());
+      client.setRetryPolicy(RetryPolicy.newBuilder().maxAttempts(3).initialDelayMillis(1).build());
+      var exc = expectThrows(HttpStatusException.class, () -> client.getStatus("job"));
+      assertEquals(exc.getStatusCode(), 503);
+      assertEquals(server.getInjectedErrors(), 3);
+    }
+  }
+
+  @Test
+  public void getStatus_RetryAfterBeyondMaxDelay_NotRetried() throws IOException {
+    try (var server = FakePhmmerServer.newBuilder()
+        .errorRate(1)
+        .errorStatus(429)
+        .retryAfter(Duration.ofSeconds(10))
+        .start()) {
+      var client = new PhmmerClient(server.getURI());
+      client.setRetryPolicy(RetryPolicy.newBuilder().maxDelayMillis(1000).build());
+      expectThrows(HttpStatusException.class, () -> client.getStatus("job"));
+      assertEquals(server.getInjectedErrors(), 1);
+      assertEquals(client.getCircuitBreaker().getState(), CircuitBreaker.State.CLOSED);
+    }
+  }
+
+  @Test
+  public void submit_ReplayableSequenceOnly_Retried() throws IOException {
+    try (var server = FakePhmmerServer.newBuilder().errorRate(1).start()) {
+      var client = new PhmmerClient(server.getURI());
+      client.setRetryPolicy(RetryPolicy.newBuilder().initialDelayMillis(1).build());
+      expectThrows(IOException.class, () -> client.submit(newRequest(">q\nMKV\n"), "test@example.org"));
+      assertEquals(server.getInjectedErrors(), 1);
+      var template = PhmmerRequest.newBuilder().buildTemplate();
+      expectThrows(IOException.class, () -> client.submit(template.bind(">q\nMKV\n"), "test@example.org"));
+      assertEquals(server.getInjectedErrors(), 5);
+      client.setDeduplicateInFlight(true);
+      expectThrows(IOException.class, () -> client.submit(newRequest(">q\nMKV\n"), "test@example.org"));
+      assertEquals(server.getInjectedErrors(), 9);
+    }
+  }
+
+  @Test
+  public void submit_ErrorAfterRequestSent_NotRetried() throws IOException {
+    try (var server = FakePhmmerServer.newBuilder().errorRate(1).errorStatus(502).start()) {
+      var client = new PhmmerClient(server.getURI());
+      client.setRetryPolicy(RetryPolicy.newBuilder().initialDelayMillis(1).build());
+      var template = PhmmerRequest.newBuilder().buildTemplate();
+      var exc = expectThrows(HttpStatusException.class,
+          () -> client.submit(template.bind(">q\nMKV\n"), "test@example.org"));
+      assertEquals(exc.getStatusCode(), 502);
+      assertEquals(server.getInjectedErrors(), 1);
+    }
+  }
+
+  @Test
+  public void getStatus_SharedCircuitBreakerOpen_StatusPollsDoNotCloseIt() throws Exception {
+    try (var failing = FakePhmmerServer.newBuilder().errorRate(1).errorStatus(503).start();
+         var healthy = FakePhmmerServer.newBuilder().start()) {
+      var breaker = CircuitBreaker.newBuilder()
+          .failureThreshold(1)
+          .openDurationMillis(60_000)
+          .maxOpenDurationMillis(60_000)
+          .build();
+      var failingClient = new PhmmerClient(failing.getURI());
+      failingClient.setRetryPolicy(RetryPolicy.none());
+      failingClient.setCircuitBreaker(breaker);
+      var client = new PhmmerClient(healthy.getURI());
+      client.setCircuitBreaker(breaker);
+      client.setPollingStrategy(PollingStrategy.fixedDelay(5));
+      expectThrows(IOException.class,
+          () -> failingClient.submit(newRequest(">q\nMKV\n"), "test@example.org"));
+      assertEquals(breaker.getState(), CircuitBreaker.State.OPEN);
+      assertEquals(client.getStatus("missing"), Status.NOT_FOUND);
+      assertEquals(client.awaitCompletion("missing").get(5, TimeUnit.SECONDS), Status.NOT_FOUND);
+      assertEquals(breaker.getState(), CircuitBreaker.State.OPEN);
+    }
+  }
+
+  @Test
+  public void awaitCompletion_TransientStatusErrors_PollsRetried() throws Exception {
+    try (var server = FakePhmmerServer.newBuilder().errorRate(0.3).errorStatus(503).start()) {
+      var client = new PhmmerClient(server.getURI());
+      client.setRetryPolicy(RetryPolicy.newBuilder().maxAttempts(20).initialDelayMillis(1)
+          .maxDelayMillis(5).build());
+      client.setPollingStrategy(PollingStrategy.fixedDelay(5));
+      var template = PhmmerRequest.newBuilder().buildTemplate();
+      var futures = new ArrayList<CompletableFuture<Status>>();
+      for (int i = 0; i < 20; i++) {
+        var jobId = client.submit(template.bind(">q" + i + "\nMKV\n"), "test@example.org");
+        futures.add(client.awaitCompletion(jobId));
+      }
+      for (var future : futures)
+        assertEquals(future.get(5, TimeUnit.SECONDS), Status.FINISHED);
+      assertTrue(server.getInjectedErrors() > 0);
+    }
+  }
+
+  @Test
+  public void awaitCompletion_ThousandConcurrentJobs_AllFinished() throws Exception {
+    try (var server = FakePhmmerServer.newBuilder()
+        .runTime(Duration.ofMillis(200))
+        .latency(Duration.ofMillis(5))
+        .start()) {
+      var client = new PhmmerClient(server.getURI());
+      client.setPollingStrategy(PollingStrategy.fixedDelay(50));
+      var futures = new ArrayList<CompletableFuture<Status>>();
+      for (int i = 0; i < 1000; i++)
+        futures.add(client.submitAsync(newRequest(">q" + i + "\nMKVLAAGIVG\n"), "test@example.org")
+            .thenCompose(client::awaitCompletion));
+      for (var future : futures)
+        assertEquals(future.get(60, TimeUnit.SECONDS), Status.FINISHED);
+      assertEquals(server.getSubmittedJobs(), 1000);
+    }
+  }
+
+  @Test
+  public void runJobAsync_VirtualThreads_ResultsFetched() throws Exception {
+    if (!PhmmerClient.isVirtualThreadsSupported())
+      throw new SkipException("virtual threads are not supported by this runtime");
+    try (var server = FakePhmmerServer.newBuilder()
+        .runTime(Duration.ofMillis(100))
+        .resultSize(1000)
+        .start()) {
+      var client = new PhmmerClient(server.getURI());
+      client.useVirtualThreads();
+      client.setPollingStrategy(PollingStrategy.fixedDelay(20));
+      var futures = new ArrayList<CompletableFuture<Integer>>();
+      for (int i = 0; i < 1000; i++) {
+        futures.add(client.runJobAsync(
+            newRequest(">q" + i + "\nMKVLAAGIVG\n"), "test@example.org", (jobId, status) -> {
+              try (var stream = client.getResultStream(jobId, "tblout")) {
+                return stream.readAllBytes().length;
+              }
+            }));
+      }
+      for (var future : futures)
+        assertTrue(future.get(60, TimeUnit.SECONDS) >= 1000);
+    }
+  }
+
+  @Test
+  public void runJob_FailingJob_FailureStatusPassedToHandler() throws Exception {
+    try (var server = FakePhmmerServer.newBuilder().jobFailureRate(1).start()) {
+      var client = new PhmmerClient(server.getURI());
+      client.setPollingStrategy(PollingStrategy.fixedDelay(5));
+      var status = client.runJob(newRequest(">q\nMKV\n"), "test@example.org",
+          (jobId, finalStatus) -> finalStatus);
+      assertEquals(status, Status.FAILURE);
+    }
+  }
+
+  @Test
+  public void getResultStream_CompressedTransfer_FewerBytesSameContent() throws Exception {
+    try (var server = FakePhmmerServer.newBuilder()
+        .resultSize(200_000)
+        .compressResponses(true)
+        .start()) {
+      var client = new PhmmerClient(server.getURI());
+      var metrics = new HistogramMetrics();
+      client.setMetrics(metrics);
+      var jobId = client.submit(newRequest(">q\nMKV\n"), "test@example.org");
+      client.setCompressedTransfer(false);
+      byte[] plain;
+      try (var stream = client.getResultStream(jobId, "tblout")) {
+        plain = stream.readAllBytes();
+      }
+      long plainBytes = metrics.getBytesDownloaded(ClientMetrics.Operation.GET_RESULT);
+      assertEquals(plainBytes, plain.length);
+      client.setCompressedTransfer(true);
+      try (var stream = client.getResultStream(jobId, "tblout")) {
+        assertEquals(stream.readAllBytes(), plain);
+      }
+      long compressedBytes =
+          metrics.getBytesDownloaded(ClientMetrics.Operation.GET_RESULT) - plainBytes;
+      assertTrue(compressedBytes < plainBytes / 2, compressedBytes + " bytes transferred");
+
+      var target = Files.createTempFile("tblout", ".gz");
+      client.downloadCompressedResult(jobId, "tblout", target);
+      try (var file = BlockCompressedFile.open(target);
+           var stream = file.newInputStream()) {
+        assertEquals(stream.readAllBytes(), plain);
+        assertTrue(Files.size(target) < plain.length / 2);
+      }
+      Files.delete(target);
+    }
+  }
+
+  @Test
+  public void submit_CachedResultsEvicted_NewJobSubmitted() throws Exception {
+    var directory = Files.createTempDirectory("result-cache");
+    try (var server = FakePhmmerServer.newBuilder().resultSize(1000).start()) {
+      var client = new PhmmerClient(server.getURI());
+      client.setPollingStrategy(PollingStrategy.fixedDelay(5));
+      var cache = new ResultCache(directory, 10_000, Duration.ofHours(1));
+      client.setResultCache(cache);
+      var jobId = client.submit(newRequest(">q\nMKV\n"), "test@example.org");
+      assertEquals(client.awaitCompletion(jobId).get(5, TimeUnit.SECONDS), Status.FINISHED);
+      try (var stream = client.getResultStream(jobId, "tblout")) {
+        stream.readAllBytes();
+      }
+      assertEquals(client.submit(newRequest(">q\nMKV\n"), "test@example.org"), jobId);
+      assertEquals(server.getSubmittedJobs(), 1);
+
+      // just over the limit, so that only the least recently used entry has to go
+      int size = (int) (10_000 - cache.size() + 1);
+      cache.store("other", "out", new ByteArrayInputStream(new byte[size]));
+      var newJobId = client.submit(newRequest(">q\nMKV\n"), "test@example.org");
+      assertTrue(!newJobId.equals(jobId), newJobId);
+      assertEquals(server.getSubmittedJobs(), 2);
+    }
+    finally {
+      try (Stream<Path> paths = Files.walk(directory)) {
+        paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+      }
+    }
+  }
+
+  @Test
+  public void getResult_FilterWithCache_ReadPartlyAndNotCached() throws Exception {
+    var directory = Files.createTempDirectory("result-cache");
+    try (var server = FakePhmmerServer.newBuilder().resultSize(1_000_000).start()) {
+      var client = new PhmmerClient(server.getURI());
+      client.setPollingStrategy(PollingStrategy.fixedDelay(5));
+      var metrics = new HistogramMetrics();
+      client.setMetrics(metrics);
+      var cache = new ResultCache(directory, 10_000_000, Duration.ofHours(1));
+      client.setResultCache(cache);
+      var jobId = client.submit(newRequest(">q\nMKV\n"), "test@example.org");
+      assertEquals(client.awaitCompletion(jobId).get(5, TimeUnit.SECONDS), Status.FINISHED);
+      var filter = ResultFilter.newBuilder().topN(2).build();
+      long cachedBytes = cache.size();
+      var top = client.getResult(jobId, "tblout", TabularResultReader.Format.TBLOUT, filter);
+      assertEquals(top.size(), 2);
+      long downloaded = metrics.getBytesDownloaded(ClientMetrics.Operation.GET_RESULT);
+      assertTrue(downloaded < server.getResult("tblout").length, Long.toString(downloaded));
+      assertEquals(cache.size(), cachedBytes);
+
+      // a result cached by a full read serves later filtered reads
+      try (var stream = client.getResultStream(jobId, "tblout")) {
+        stream.readAllBytes();
+      }
+      downloaded = metrics.getBytesDownloaded(ClientMetrics.Operation.GET_RESULT);
+      var cachedTop = client.getResult(jobId, "tblout", TabularResultReader.Format.TBLOUT, filter);
+      assertEquals(cachedTop.size(), 2);
+      assertEquals(cachedTop.get(0).getTargetName().toString(),
+          top.get(0).getTargetName().toString());
+      assertEquals(metrics.getBytesDownloaded(ClientMetrics.Operation.GET_RESULT), downloaded);
+    }
+    finally {
+      try (Stream<Path> paths = Files.walk(directory)) {
+        paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+      }
+    }
+  }
+
+  @Test
+  public void submit_ConcurrentIdenticalRequests_SubmittedOnce() throws Exception {
+    try (var server = FakePhmmerServer.newBuilder()
+        .latency(Duration.ofMillis(300))
+        .runTime(Duration.ofSeconds(10))
+        .start()) {
+      var client = new PhmmerClient(server.getURI());
+      client.setDeduplicateInFlight(true);
+      var submissions = new ArrayList<CompletableFuture<String>>();
+      for (int i = 0; i < 4; i++) {
+        submissions.add(CompletableFuture.supplyAsync(() -> {
+          try {
+            return client.submit(newRequest(">q\nMKV\n"), "test@example.org");
+          }
+          catch (IOException e) {
+            throw new CompletionException(e);
+          }
+        }, SharedExecutors.io()));
+      }
+      var jobId = submissions.get(0).get(5, TimeUnit.SECONDS);
+      for (var submission : submissions)
+        assertEquals(submission.get(5, TimeUnit.SECONDS), jobId);
+      assertEquals(server.getSubmittedJobs(), 1);
+    }
+  }
+
+  @Test
+  public void submit_IdenticalSubmissionFails_FailurePropagatedToWaiters() throws Exception {
+    try (var server = FakePhmmerServer.newBuilder()
+        .latency(Duration.ofMillis(300))
+        .errorRate(1)
+        .errorStatus(400)
+        .start()) {
+      var client = new PhmmerClient(server.getURI());
+      client.setDeduplicateInFlight(true);
+      var submissions = new ArrayList<CompletableFuture<String>>();
+      for (int i = 0; i < 3; i++) {
+        submissions.add(CompletableFuture.supplyAsync(() -> {
+          try {
+            return client.submit(newRequest(">q\nMKV\n"), "test@example.org");
+          }
+          catch (IOException e) {
+            throw new CompletionException(e);
+          }
+        }, SharedExecutors.io()));
+      }
+      var failures = new ArrayList<Throwable>();
+      for (var submission : submissions) {
+        var exc = expectThrows(ExecutionException.class, () -> submission.get(5, TimeUnit.SECONDS));
+        assertTrue(exc.getCause() instanceof IOException, String.valueOf(exc.getCause()));
+        failures.add(exc.getCause());
+      }
+      assertEquals(server.getInjectedErrors(), 1);
+      // the leader sees the server error, the others a wrapper of their own
+      var waiters = new ArrayList<Throwable>(failures);
+      for (var failure : failures)
+        waiters.remove(failure.getCause());
+      assertEquals(waiters.size(), failures.size() - 1);
+      for (var waiter : waiters)
+        assertTrue(failures.contains(waiter.getCause()), String.valueOf(waiter));
+    }
+  }
+
+  @Test
+  public void submit_IdenticalJobFinished_SubmittedAgain() throws Exception {
+    try (var server = FakePhmmerServer.newBuilder().start()) {
+      var client = new PhmmerClient(server.getURI());
+      client.setPollingStrategy(PollingStrategy.fixedDelay(5));
+      client.setDeduplicateInFlight(true);
+      var jobId = client.submit(newRequest(">q\nMKV\n"), "test@example.org");
+      assertEquals(client.submit(newRequest(">q\nMKV\n"), "test@example.org"), jobId);
+      assertEquals(client.awaitCompletion(jobId).get(5, TimeUnit.SECONDS), Status.FINISHED);
+      var newJobId = client.submit(newRequest(">q\nMKV\n"), "test@example.org");
+      assertTrue(!newJobId.equals(jobId), newJobId);
+      assertEquals(server.getSubmittedJobs(), 2);
+    }
+  }
+
+  @Test
+  public void getStatus_NoResponseWithinTimeout_SocketTimeoutThrown() throws IOException {
+    try (var server = FakePhmmerServer.newBuilder().latency(Duration.ofSeconds(3)).start()) {
+      var client = PhmmerClient.newBuilder()
+          .url(server.getURI())
+          .timeoutMillis(200)
+          .build();
+      client.setRetryPolicy(RetryPolicy.newBuilder().maxAttempts(1).build());
+      long start = System.nanoTime();
+      expectThrows(SocketTimeoutException.class, () -> client.getStatus("job"));
+      long elapsed = System.nanoTime() - start;
+      assertTrue(elapsed < TimeUnit.SECONDS.toNanos(2), elapsed + " ns");
+    }
+  }
+
+  @Test
+  public void runJob_TimeoutNotReached_ResultsFetched() throws Exception {
+    try (var server = FakePhmmerServer.newBuilder().resultSize(10_000).start()) {
+      var client = PhmmerClient.newBuilder()
+          .url(server.getURI())
+          .timeoutMillis(5000)
+          .build();
+      client.setPollingStrategy(PollingStrategy.fixedDelay(5));
+      var jobId = client.submit(newRequest(">q\nMKV\n"), "test@example.org");
+      assertEquals(client.awaitCompletion(jobId).get(5, TimeUnit.SECONDS), Status.FINISHED);
+      try (var stream = client.getResultStream(jobId, "tblout")) {
+        assertEquals(stream.readAllBytes(), server.getResult("tblout"));
+      }
+    }
+  }
+}
@@ -7,6 +7,9 @@ import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
@@ -47,6 +50,13 @@ public class PhmmerClientRealJobTest {
     assertThat(status, is(PhmmerClient.Status.FINISHED));
   }
 
+  @Test(dependsOnMethods = "submit_SendSequence_JobIdReceived")
+  public void awaitCompletion_ValidJob_JobCompleted()
+      throws InterruptedException, ExecutionException, TimeoutException {
+    var status = client.awaitCompletion(jobId).get(10, TimeUnit.MINUTES);
+    assertThat(status, is(PhmmerClient.Status.FINISHED));
+  }
+
   @Test(dependsOnMethods = "getStatus_ValidJobFinished_JobCompleted")
   public void getResultTypes_CompletedJob_OutputResultTypePresent() throws IOException {
     var resultTypes = client.getResultTypes(jobId);
@@ -0,0 +1,54 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.expectThrows;
+
+public class PhmmerRequestTemplateTest {
+
+  private static final String SEQUENCE = ">query 1\nMKVLAAGIVG\nLLLAQ\n";
+
+  private static PhmmerRequest.Builder newOptions() {
+    return PhmmerRequest.newBuilder()
+        .database(PhmmerRequest.SequenceDatabase.SWISS_PROT)
+        .E(0.01f)
+        .mx(PhmmerRequest.SubstitutionMatrix.BLOSUM45)
+        .nhits(50);
+  }
+
+  private static String body(PhmmerRequest request) throws IOException {
+    var out = new ByteArrayOutputStream();
+    PhmmerClient.prepareSubmitRequestBody(request, request::getSequence, "a@b.c").writeTo(out);
+    return out.toString("UTF-8");
+  }
+
+  @Test
+  public void bind_SameOptions_SameBodyAsBuiltRequest() throws IOException {
+    var built = newOptions().sequence(new StringReader(SEQUENCE)).build();
+    var bound = newOptions().buildTemplate().bind(SEQUENCE);
+    assertEquals(body(bound), body(built));
+    assertEquals(RequestFingerprint.of(bound, SEQUENCE), RequestFingerprint.of(built, SEQUENCE));
+  }
+
+  @Test
+  public void bind_ByteBufferSource_SequenceReplayable() throws IOException {
+    var buffer = ByteBuffer.wrap(SEQUENCE.getBytes("UTF-8"));
+    var request = newOptions().buildTemplate().bind(SequenceSource.of(buffer));
+    var first = body(request);
+    assertEquals(body(request), first);
+    assertEquals(request.getSequenceSource().readContent().toString(), SEQUENCE);
+    assertEquals(buffer.position(), 0);
+  }
+
+  @Test
+  public void buildTemplate_EvalueAndScoreThresholds_ExceptionThrown() {
+    var builder = newOptions().T(20f);
+    expectThrows(IllegalStateException.class, builder::buildTemplate);
+  }
+}
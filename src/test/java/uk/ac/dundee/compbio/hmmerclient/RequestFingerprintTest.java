@@ -0,0 +1,45 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import org.testng.annotations.Test;
+
+import java.io.StringReader;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+
+public class RequestFingerprintTest {
+
+  private static PhmmerRequest.Builder builder() {
+    return PhmmerRequest.newBuilder().sequence(new StringReader(""));
+  }
+
+  @Test
+  public void of_DifferentFormatting_SameFingerprint() {
+    var request = builder().build();
+    var first = RequestFingerprint.of(request, ">seq1 description\nMGPSEND\nPNLFV\n");
+    var second = RequestFingerprint.of(request, ">other\r\nmgpsendpnlfv");
+    var third = RequestFingerprint.of(request, "MGPSENDPNLFV");
+    assertEquals(second, first);
+    assertEquals(third, first);
+  }
+
+  @Test
+  public void of_DifferentResidues_DifferentFingerprint() {
+    var request = builder().build();
+    assertNotEquals(RequestFingerprint.of(request, "MGPSEND"),
+        RequestFingerprint.of(request, "MGPSENE"));
+  }
+
+  @Test
+  public void of_DifferentOptions_DifferentFingerprint() {
+    var sequence = "MGPSENDPNLFV";
+    var base = RequestFingerprint.of(builder().build(), sequence);
+    assertNotEquals(RequestFingerprint.of(builder().E(1f).build(), sequence), base);
+    assertNotEquals(RequestFingerprint.of(builder().popen(0.1f).build(), sequence), base);
+    assertNotEquals(RequestFingerprint.of(builder().noBias(true).build(), sequence), base);
+    assertNotEquals(RequestFingerprint.of(
+        builder().mx(PhmmerRequest.SubstitutionMatrix.PAM30).build(), sequence), base);
+    assertNotEquals(RequestFingerprint.of(
+        builder().database(PhmmerRequest.SequenceDatabase.PDB).build(), sequence), base);
+  }
+}
@@ -0,0 +1,110 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class ResultCacheTest {
+
+  private Path directory;
+
+  @BeforeMethod
+  public void createDirectory() throws IOException {
+    directory = Files.createTempDirectory("result-cache");
+  }
+
+  @AfterMethod
+  public void deleteDirectory() throws IOException {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  private static InputStream bytes(int size) {
+    return new ByteArrayInputStream(new byte[size]);
+  }
+
+  @Test
+  public void open_StoredEntry_ContentReturned() throws IOException {
+    var cache = new ResultCache(directory, 1000, Duration.ofHours(1));
+    cache.store("abc", "result.out", new ByteArrayInputStream("hits".getBytes("UTF-8")));
+    try (var stream = cache.open("abc", "result.out")) {
+      assertEquals(new String(stream.readAllBytes(), "UTF-8"), "hits");
+    }
+    assertNull(cache.open("abc", "result.tblout"));
+  }
+
+  @Test
+  public void store_SizeLimitExceeded_LeastRecentlyUsedEvicted() throws IOException {
+    var cache = new ResultCache(directory, 250, Duration.ofHours(1));
+    cache.store("a", "out", bytes(100));
+    cache.store("b", "out", bytes(100));
+    assertTrue(cache.contains("a", "out"));
+    cache.store("c", "out", bytes(100));
+    assertTrue(cache.contains("a", "out"));
+    assertFalse(cache.contains("b", "out"));
+    assertTrue(cache.contains("c", "out"));
+    assertEquals(cache.size(), 200);
+  }
+
+  @Test
+  public void store_EntryEvicted_OtherEntriesOfFingerprintRemoved() throws IOException {
+    var cache = new ResultCache(directory, 250, Duration.ofHours(1));
+    cache.store("a", "job", bytes(10));
+    cache.store("a", "out", bytes(100));
+    cache.store("b", "out", bytes(100));
+    cache.open("a", "job").close();
+    cache.store("c", "out", bytes(100));
+    assertFalse(cache.contains("a", "job"));
+    assertFalse(cache.contains("a", "out"));
+    assertTrue(cache.contains("b", "out"));
+    assertTrue(cache.contains("c", "out"));
+  }
+
+  @Test
+  public void open_ExpiredEntry_ReturnsNull() throws IOException {
+    var cache = new ResultCache(directory, 1000, Duration.ofMillis(1));
+    cache.store("a", "out", bytes(10));
+    sleep(20);
+    assertNull(cache.open("a", "out"));
+    assertEquals(cache.entryCount(), 0);
+  }
+
+  @Test
+  public void constructor_ExistingDirectory_EntriesLoaded() throws IOException {
+    var cache = new ResultCache(directory, 1000, Duration.ofHours(1));
+    cache.store("a", "out", bytes(10));
+    cache.store("b", "out", bytes(20));
+    Files.setLastModifiedTime(directory.resolve("b").resolve("out"),
+        FileTime.fromMillis(System.currentTimeMillis() - Duration.ofDays(1).toMillis()));
+    var reopened = new ResultCache(directory, 1000, Duration.ofHours(1));
+    assertEquals(reopened.entryCount(), 1);
+    assertEquals(reopened.size(), 10);
+    assertTrue(reopened.contains("a", "out"));
+    assertFalse(Files.exists(directory.resolve("b")));
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
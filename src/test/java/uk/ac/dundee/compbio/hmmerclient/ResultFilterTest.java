@@ -0,0 +1,80 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import org.testng.annotations.Test;
+import uk.ac.dundee.compbio.hmmerclient.ResultFilter.Column;
+import uk.ac.dundee.compbio.hmmerclient.TabularResultReader.Format;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.expectThrows;
+
+public class ResultFilterTest {
+
+  private static String row(String target, String evalue, String score) {
+    return target + " - query - " + evalue + " " + score + " 0.1 " + evalue + " " + score +
+        " 0.1 1.0 1 1 0 1 1 1 1 description of " + target + "\n";
+  }
+
+  // ranked like hmmer output, followed by a line that cannot be parsed
+  private static final String SORTED =
+      "# target name accession query name accession E-value score ...\n" +
+      row("t1", "1e-50", "200.0") +
+      row("t2", "1e-20", "90.5") +
+      row("t3", "0.002", "30.0") +
+      row("t4", "0.5", "12.0") +
+      "t5 - query - malformed\n";
+
+  private static List<TabularHit> apply(ResultFilter filter, String table) throws IOException {
+    try (var reader = new TabularResultReader(
+        new ByteArrayInputStream(table.getBytes("US-ASCII")), Format.TBLOUT)) {
+      return filter.apply(reader);
+    }
+  }
+
+  @Test
+  public void apply_EvalueThresholdOnSortedInput_StoppedAtFirstRejectedRow() throws IOException {
+    var hits = apply(ResultFilter.newBuilder().maxEvalue(0.01).build(), SORTED);
+    assertEquals(hits.size(), 3);
+    assertEquals(hits.get(2).getTargetName().toString(), "t3");
+  }
+
+  @Test
+  public void apply_TopNOnSortedInput_StoppedAfterNRows() throws IOException {
+    var hits = apply(ResultFilter.newBuilder().topN(2).build(), SORTED);
+    assertEquals(hits.size(), 2);
+    assertEquals(hits.get(0).getTargetName().toString(), "t1");
+    assertEquals(hits.get(1).getTargetName().toString(), "t2");
+  }
+
+  @Test
+  public void apply_TopNOnUnsortedInput_BestRowsByScore() throws IOException {
+    var table = row("t3", "0.002", "30.0") + row("t1", "1e-50", "200.0") +
+        row("t4", "0.5", "12.0") + row("t2", "1e-20", "90.5");
+    var filter = ResultFilter.newBuilder().topN(2).minScore(20).sortedInput(false).build();
+    var hits = apply(filter, table);
+    assertEquals(hits.size(), 2);
+    assertEquals(hits.get(0).getScore(), 200.0, 1e-9);
+    assertEquals(hits.get(1).getScore(), 90.5, 1e-9);
+  }
+
+  @Test
+  public void apply_SelectedColumns_OtherFieldsCleared() throws IOException {
+    var filter = ResultFilter.newBuilder().topN(1).columns(Column.TARGET_NAME).build();
+    var hit = apply(filter, SORTED).get(0);
+    assertEquals(hit.getTargetName().toString(), "t1");
+    assertEquals(hit.getScore(), 200.0, 1e-9);
+    assertEquals(hit.getDescription().length(), 0);
+    assertTrue(Double.isNaN(hit.getEvalue()));
+    assertEquals(hit.getDomainCount(), -1);
+  }
+
+  @Test
+  public void apply_UnsortedInputWithMalformedRow_ExceptionThrown() {
+    var filter = ResultFilter.newBuilder().maxEvalue(0.01).sortedInput(false).build();
+    expectThrows(IOException.class, () -> apply(filter, SORTED));
+  }
+}
@@ -0,0 +1,55 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.expectThrows;
+
+public class SequenceValidatorTest {
+
+  private static SequenceValidator newValidator(int maxLength) {
+    return SequenceValidator.newBuilder()
+        .alphabet(SequenceValidator.PROTEIN_ALPHABET)
+        .maxLength(maxLength)
+        .build();
+  }
+
+  @Test
+  public void build_AlphabetOrMaxLengthNotSet_ThrowsIllegalStateException() {
+    expectThrows(IllegalStateException.class,
+        () -> SequenceValidator.newBuilder().maxLength(10).build());
+    expectThrows(IllegalStateException.class,
+        () -> SequenceValidator.newBuilder().alphabet("ACDE").build());
+  }
+
+  @Test
+  public void check_CharacterOutsideAlphabet_Rejected() {
+    var validator = SequenceValidator.newBuilder().alphabet("ACGT").maxLength(10).build();
+    assertNull(validator.check("acgT"));
+    assertTrue(validator.check("ACGU").contains("'U' at position 4"));
+  }
+
+  @Test
+  public void check_EmptySequence_Rejected() {
+    assertTrue(newValidator(10).check("").contains("at least 1"));
+    assertTrue(newValidator(10).check("*").contains("at least 1"));
+  }
+
+  @Test
+  public void check_MaxLength_LongerSequenceRejected() {
+    assertNull(newValidator(5).check("MKVLA"));
+    assertNull(newValidator(5).check("MKVLA*"));
+    assertTrue(newValidator(5).check("MKVLAG").contains("at most 5"));
+  }
+
+  @Test
+  public void check_StopSymbolAtEnd_Accepted() {
+    assertNull(newValidator(10).check("MKVLA*"));
+  }
+
+  @Test
+  public void check_StopSymbolInMiddle_Rejected() {
+    assertTrue(newValidator(10).check("MK*VLA").contains("'*' at position 3"));
+  }
+}
@@ -0,0 +1,182 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import org.testng.annotations.Test;
+import uk.ac.dundee.compbio.hmmerclient.PhmmerClient.Status;
+import uk.ac.dundee.compbio.hmmerclient.SubmissionScheduler.Priority;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.expectThrows;
+
+public class SubmissionSchedulerTest {
+
+  /* Backend whose jobs finish only when the test completes them. */
+  private static class ManualBackend implements SearchBackend {
+    final List<String> submitted = new CopyOnWriteArrayList<>();
+    final List<CompletableFuture<Status>> jobs = new CopyOnWriteArrayList<>();
+
+    @Override
+    public String submit(PhmmerRequest request, String email) {
+      submitted.add(email);
+      jobs.add(new CompletableFuture<>());
+      return Integer.toString(jobs.size() - 1);
+    }
+
+    @Override
+    public Status getStatus(String jobId) {
+      return jobs.get(Integer.parseInt(jobId)).getNow(Status.RUNNING);
+    }
+
+    @Override
+    public CompletableFuture<Status> awaitCompletion(String jobId) {
+      return jobs.get(Integer.parseInt(jobId));
+    }
+
+    @Override
+    public Collection<ResultType> getResultTypes(String jobId) {
+      return List.of();
+    }
+
+    @Override
+    public InputStream getResultStream(String jobId, String identifier) {
+      return InputStream.nullInputStream();
+    }
+
+    void awaitSubmitted(int count) throws InterruptedException {
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (submitted.size() < count && System.nanoTime() < deadline)
+        Thread.sleep(1);
+      assertEquals(submitted.size(), count);
+    }
+
+    void finishAll(int count) throws InterruptedException {
+      for (int i = 0; i < count; i++) {
+        awaitSubmitted(i + 1);
+        jobs.get(i).complete(Status.FINISHED);
+      }
+    }
+  }
+
+  private static final PhmmerRequest REQUEST =
+      PhmmerRequest.newBuilder().buildTemplate().bind(">q\nMKV\n");
+
+  private static SubmissionScheduler.Builder newScheduler(ManualBackend backend) {
+    return SubmissionScheduler.newBuilder()
+        .backend(backend)
+        .maxConcurrentJobs(1)
+        .submissionsPerSecond(10_000)
+        .burst(100);
+  }
+
+  @Test
+  public void submit_InteractiveAfterBulk_SubmittedFirst() throws Exception {
+    var backend = new ManualBackend();
+    try (var scheduler = newScheduler(backend).build()) {
+      for (int i = 0; i < 3; i++)
+        scheduler.submit("bulk", Priority.BULK, REQUEST, "bulk");
+      backend.awaitSubmitted(1);
+      var interactive = scheduler.submit("web", Priority.INTERACTIVE, REQUEST, "web");
+      assertEquals(scheduler.getQueuedJobs(), 3);
+      backend.finishAll(4);
+      assertEquals(interactive.get(5, TimeUnit.SECONDS), "1");
+      assertEquals(backend.submitted, List.of("bulk", "web", "bulk", "bulk"));
+    }
+  }
+
+  @Test
+  public void submit_WeightedTenants_ShareInProportion() throws Exception {
+    var backend = new ManualBackend();
+    try (var scheduler = newScheduler(backend).tenant("A", 1).tenant("B", 3).build()) {
+      scheduler.submit("first", Priority.NORMAL, REQUEST, "-");
+      backend.awaitSubmitted(1);
+      for (int i = 0; i < 4; i++)
+        scheduler.submit("A", Priority.NORMAL, REQUEST, "A");
+      for (int i = 0; i < 4; i++)
+        scheduler.submit("B", Priority.NORMAL, REQUEST, "B");
+      backend.finishAll(9);
+      assertEquals(String.join("", backend.submitted.subList(1, 9)), "ABBBABAA");
+    }
+  }
+
+  @Test
+  public void submit_QueuedJobCancelled_RemovedWithoutTakingToken() throws Exception {
+    var backend = new ManualBackend();
+    try (var scheduler = newScheduler(backend).submissionsPerSecond(0.2).burst(2).build()) {
+      scheduler.submit("A", Priority.NORMAL, REQUEST, "first");
+      backend.awaitSubmitted(1);
+      var cancelled = scheduler.submit("A", Priority.NORMAL, REQUEST, "cancelled");
+      scheduler.submit("A", Priority.NORMAL, REQUEST, "last");
+      assertEquals(scheduler.getQueuedJobs(), 2);
+      cancelled.cancel(false);
+      assertEquals(scheduler.getQueuedJobs(), 1);
+      // the second of the two tokens is left for the last job, with no refill for 5 s
+      long start = System.nanoTime();
+      backend.jobs.get(0).complete(Status.FINISHED);
+      backend.awaitSubmitted(2);
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+      assertEquals(backend.submitted, List.of("first", "last"));
+    }
+  }
+
+  @Test
+  public void submit_CancelledDuringSubmission_JobDeletedAndSlotReleased() throws Exception {
+    var entered = new CountDownLatch(1);
+    var proceed = new CountDownLatch(1);
+    var deleted = new CopyOnWriteArrayList<String>();
+    var backend = new ManualBackend() {
+      @Override
+      public String submit(PhmmerRequest request, String email) {
+        if (email.equals("cancelled")) {
+          entered.countDown();
+          try {
+            proceed.await(5, TimeUnit.SECONDS);
+          }
+          catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+          }
+        }
+        return super.submit(request, email);
+      }
+
+      @Override
+      public boolean delete(String jobId) {
+        deleted.add(jobId);
+        return true;
+      }
+    };
+    try (var scheduler = newScheduler(backend).build()) {
+      var cancelled = scheduler.submit("A", Priority.NORMAL, REQUEST, "cancelled");
+      assertTrue(entered.await(5, TimeUnit.SECONDS));
+      cancelled.cancel(false);
+      proceed.countDown();
+      // the deleted job never finishes, yet its slot goes to the next one
+      scheduler.submit("A", Priority.NORMAL, REQUEST, "next");
+      backend.awaitSubmitted(2);
+      assertEquals(deleted, List.of("0"));
+      assertTrue(cancelled.isCancelled());
+    }
+  }
+
+  @Test
+  public void close_QueuedJobs_Failed() throws Exception {
+    var backend = new ManualBackend();
+    CompletableFuture<String> queued;
+    try (var scheduler = newScheduler(backend).build()) {
+      scheduler.submit("A", Priority.NORMAL, REQUEST, "A");
+      backend.awaitSubmitted(1);
+      queued = scheduler.submit("A", Priority.NORMAL, REQUEST, "A");
+    }
+    var exc = expectThrows(ExecutionException.class, () -> queued.get(5, TimeUnit.SECONDS));
+    assertTrue(exc.getCause() instanceof IOException);
+  }
+}
@@ -0,0 +1,116 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import org.testng.annotations.Test;
+import uk.ac.dundee.compbio.hmmerclient.TabularResultReader.Format;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TabularResultReaderTest {
+
+  @Test
+  public void next_Tblout_AllHitsRead() throws IOException {
+    var hits = new ArrayList<TabularHit>();
+    try (var reader = new TabularResultReader(
+        getClass().getResourceAsStream("exampleTblout.txt"), Format.TBLOUT)) {
+      while (reader.next())
+        hits.add(reader.hit().copy());
+    }
+    assertEquals(hits.size(), 3);
+    var first = hits.get(0);
+    assertEquals(first.getTargetName().toString(), "sp|P00519|ABL1_HUMAN");
+    assertEquals(first.getQueryName().toString(), "2abl_A");
+    assertEquals(first.getEvalue(), 1.2e-112, 1e-124);
+    assertEquals(first.getScore(), 376.5, 1e-9);
+    assertEquals(first.getBias(), 0.1, 1e-9);
+    assertEquals(first.getDomainEvalue(), 1.6e-112, 1e-124);
+    assertEquals(first.getDomainCount(), 1);
+    assertEquals(first.getDescription().toString(),
+        "Tyrosine-protein kinase ABL1 OS=Homo sapiens");
+    assertEquals(hits.get(1).getDomainEvalue(), 4e-98, 1e-110);
+    assertEquals(hits.get(2).getEvalue(), 0.75, 1e-9);
+    assertEquals(hits.get(2).getDescription().toString(), "-");
+  }
+
+  @Test
+  public void next_Domtblout_DomainFieldsRead() throws IOException {
+    try (var reader = new TabularResultReader(
+        getClass().getResourceAsStream("exampleDomtblout.txt"), Format.DOMTBLOUT)) {
+      assertTrue(reader.next());
+      var hit = reader.hit();
+      assertEquals(hit.getTargetLength(), 1130);
+      assertEquals(hit.getQueryLength(), 163);
+      assertEquals(hit.getDomainIndex(), 1);
+      assertEquals(hit.getDomainCount(), 2);
+      assertEquals(hit.getDomainConditionalEvalue(), 8.1e-115, 1e-127);
+      assertEquals(hit.getAliFrom(), 45);
+      assertEquals(hit.getAliTo(), 207);
+      assertEquals(hit.getAccuracy(), 0.99, 1e-9);
+      assertTrue(reader.next());
+      assertEquals(hit.getDomainIndex(), 2);
+      assertEquals(hit.getEnvFrom(), 598);
+      assertEquals(hit.getDomainEvalue(), 4.1, 1e-9);
+      assertFalse(reader.next());
+    }
+  }
+
+  @Test
+  public void next_DecimalNumbers_EqualToParseDouble() throws IOException {
+    var random = new Random(42);
+    var numbers = new ArrayList<String>(List.of(
+        "0", "-0.0", "0.1", "0.3", "1e-5", "4e-98", "1.2e-112", "376.5", "9007199254740993",
+        "123456789012345678901234567890", "0.1234567890123456789", "2.2250738585072014e-308",
+        "1.7976931348623157e308", "1e400", "1e-400", "Infinity"));
+    for (int i = 0; i < 2000; i++) {
+      var digits = new StringBuilder();
+      int length = 1 + random.nextInt(20);
+      for (int j = 0; j < length; j++)
+        digits.append((char) ('0' + random.nextInt(10)));
+      digits.insert(random.nextInt(length + 1), '.');
+      if (digits.charAt(digits.length() - 1) == '.')
+        digits.append('0');
+      if (random.nextBoolean())
+        digits.append('e').append(random.nextInt(80) - 40);
+      numbers.add(digits.toString());
+    }
+    var text = new StringBuilder();
+    for (var number : numbers)
+      text.append("t - q - ").append(number).append(" 1 1 1 1 1 1 1 1 1 1 1 1 1 -\n");
+    try (var reader = new TabularResultReader(
+        new ByteArrayInputStream(text.toString().getBytes("UTF-8")), Format.TBLOUT)) {
+      for (var number : numbers) {
+        assertTrue(reader.next());
+        assertEquals(Double.doubleToLongBits(reader.hit().getEvalue()),
+            Double.doubleToLongBits(Double.parseDouble(number)), number);
+      }
+    }
+  }
+
+  @Test
+  public void next_NonAsciiDescription_DecodedAsUtf8() throws IOException {
+    var description = "Prot\u00e9ine kinase \u03b1 (\u4eba)";
+    var row = "target - query - 1e-5 10.0 0.1 1e-5 10.0 0.1 1.0 1 0 0 1 1 1 1 " +
+        description + "\n";
+    var stream = new ByteArrayInputStream(row.getBytes("UTF-8"));
+    try (var reader = new TabularResultReader(stream, Format.TBLOUT)) {
+      assertTrue(reader.next());
+      assertEquals(reader.hit().getDescription().toString(), description);
+      assertEquals(reader.hit().getTargetName().toString(), "target");
+    }
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void next_TruncatedRow_ThrowsIOException() throws IOException {
+    var stream = new ByteArrayInputStream("target - query - 1e-5 10.0\n".getBytes("UTF-8"));
+    try (var reader = new TabularResultReader(stream, Format.TBLOUT)) {
+      reader.next();
+    }
+  }
+}
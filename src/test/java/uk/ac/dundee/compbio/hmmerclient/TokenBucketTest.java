@@ -0,0 +1,56 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TokenBucketTest {
+
+  @Test
+  public void reserve_BurstAvailable_NoWait() {
+    var bucket = new TokenBucket(1, 3);
+    for (int i = 0; i < 3; i++)
+      assertEquals(bucket.reserve(), 0);
+  }
+
+  @Test
+  public void reserve_BucketEmpty_WaitsForNextTokens() {
+    var bucket = new TokenBucket(10, 1);
+    assertEquals(bucket.reserve(), 0);
+    long first = bucket.reserve();
+    long second = bucket.reserve();
+    // about 100 ms for the first token and 100 ms more for the one after it
+    assertTrue(first > TimeUnit.MILLISECONDS.toNanos(50), first + " ns");
+    assertTrue(first <= TimeUnit.MILLISECONDS.toNanos(100), first + " ns");
+    assertTrue(second - first > TimeUnit.MILLISECONDS.toNanos(90), (second - first) + " ns");
+  }
+
+  @Test
+  public void acquire_BucketEmpty_SleepsUntilTokenRefilled() throws InterruptedException {
+    var bucket = new TokenBucket(20, 1);
+    bucket.acquire();
+    long start = System.nanoTime();
+    bucket.acquire();
+    long elapsed = System.nanoTime() - start;
+    assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(40), elapsed + " ns");
+  }
+
+  @Test
+  public void reserve_IdleLongerThanBurst_RefillCappedAtBurst() throws InterruptedException {
+    var bucket = new TokenBucket(100, 2);
+    bucket.reserve();
+    bucket.reserve();
+    Thread.sleep(100);
+    assertEquals(bucket.reserve(), 0);
+    assertEquals(bucket.reserve(), 0);
+    assertTrue(bucket.reserve() > 0);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void constructor_ZeroRate_ThrowsIllegalArgumentException() {
+    new TokenBucket(0, 1);
+  }
+}
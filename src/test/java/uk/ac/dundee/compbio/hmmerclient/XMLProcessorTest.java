@@ -3,10 +3,15 @@ package uk.ac.dundee.compbio.hmmerclient;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 
 import static org.testng.Assert.assertEquals;
 
@@ -38,4 +43,42 @@ public class XMLProcessorTest {
     );
     assertEquals(resultTypes, expected);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void processResultTypesBody_ConcurrentCalls_AllParsed()
+      throws InterruptedException, ExecutionException {
+    var executor = Executors.newFixedThreadPool(8);
+    try {
+      var tasks = new ArrayList<Callable<Collection<ResultType>>>();
+      for (int i = 0; i < 200; i++) {
+        tasks.add(() -> {
+          try (var stream = getClass().getResourceAsStream("OneResultTypeFormatted.xml")) {
+            return XMLProcessor.processResultTypesBody(stream);
+          }
+        });
+      }
+      for (var future : executor.invokeAll(tasks))
+        assertEquals(future.get().size(), 1);
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void processErrorBody_ErrorDescription() throws IOException {
+    IOException exception;
+    try (var stream = getClass().getResourceAsStream("ErrorResponse.xml")) {
+      exception = XMLProcessor.processErrorBody(stream);
+    }
+    assertEquals(exception.getMessage(),
+        "Invalid parameters: \nSequence -> Error in reading the sequence.");
+  }
+
+  @Test
+  public void processErrorBody_MissingErrorNode() throws IOException {
+    var stream = new ByteArrayInputStream("<types></types>".getBytes("UTF-8"));
+    var exception = XMLProcessor.processErrorBody(stream);
+    assertEquals(exception.getMessage(), "server response missing XML node /error");
+  }
+}
@@ -0,0 +1,477 @@
+package uk.ac.dundee.compbio.hmmerclient;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-process imitation of the phmmer REST service for tests and load
+ * measurements. It implements the endpoints used by {@link PhmmerClient}:
+ * {@code run}, {@code status/{id}}, {@code resulttypes/{id}} and
+ * {@code result/{id}/{type}}, including the XML error bodies and ranged
+ * result requests.
+ * <p>
+ * A job is QUEUED for the queue delay, RUNNING for the run time and then
+ * FINISHED, or the failure status for the configured fraction of jobs. Responses can be
+ * delayed by a fixed latency and replaced with errors at a given rate, and
+ * result transfers can be broken off to exercise resumed downloads.
+ */
+public final class FakePhmmerServer implements AutoCloseable {
+
+  static {
+    // without TCP_NODELAY small responses wait ~40ms for delayed acknowledgements
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+  }
+
+  public static final class Builder {
+    private Duration queueDelay = Duration.ZERO;
+    private Duration runTime = Duration.ZERO;
+    private Duration latency = Duration.ZERO;
+    private double errorRate = 0;
+    private int errorStatus = 503;
+    private Duration retryAfter = null;
+    private double jobFailureRate = 0;
+    private String failureStatus = "FAILURE";
+    private int resultSize = 4096;
+    private boolean compressResponses = false;
+    private int truncatedResults = 0;
+    private boolean rangeRequests = true;
+
+    private Builder() {}
+
+    /** Time a submitted job stays queued. */
+    public Builder queueDelay(Duration queueDelay) {
+      this.queueDelay = requireNonNegative(queueDelay);
+      return this;
+    }
+
+    /** Time a job runs after leaving the queue. */
+    public Builder runTime(Duration runTime) {
+      this.runTime = requireNonNegative(runTime);
+      return this;
+    }
+
+    /** Delay added to every response. */
+    public Builder latency(Duration latency) {
+      this.latency = requireNonNegative(latency);
+      return this;
+    }
+
+    /**
+     * Fraction of requests answered with the error status instead of being
+     * processed.
+     */
+    public Builder errorRate(double errorRate) {
+      if (errorRate < 0 || errorRate > 1)
+        throw new IllegalArgumentException("error rate must be between 0 and 1");
+      this.errorRate = errorRate;
+      return this;
+    }
+
+    public Builder errorStatus(int errorStatus) {
+      this.errorStatus = errorStatus;
+      return this;
+    }
+
+    /** Value of the Retry-After header sent with injected errors, if any. */
+    public Builder retryAfter(Duration retryAfter) {
+      this.retryAfter = retryAfter != null ? requireNonNegative(retryAfter) : null;
+      return this;
+    }
+
+    /** Fraction of jobs ending with the FAILURE status. */
+    public Builder jobFailureRate(double jobFailureRate) {
+      if (jobFailureRate < 0 || jobFailureRate > 1)
+        throw new IllegalArgumentException("job failure rate must be between 0 and 1");
+      this.jobFailureRate = jobFailureRate;
+      return this;
+    }
+
+    /** Final status of failing jobs, FAILURE by default. */
+    public Builder failureStatus(String failureStatus) {
+      this.failureStatus = Objects.requireNonNull(failureStatus);
+      return this;
+    }
+
+    /** Approximate size of each result in bytes. */
+    public Builder resultSize(int resultSize) {
+      if (resultSize < 0)
+        throw new IllegalArgumentException("result size must not be negative");
+      this.resultSize = resultSize;
+      return this;
+    }
+
+    /**
+     * Whether result types and results are sent gzip encoded to clients
+     * accepting it. Ranged requests are always answered uncompressed.
+     */
+    public Builder compressResponses(boolean compressResponses) {
+      this.compressResponses = compressResponses;
+      return this;
+    }
+
+    /**
+     * Number of complete result responses that are cut off halfway, the
+     * connection being closed before the declared length was sent.
+     */
+    public Builder truncatedResults(int truncatedResults) {
+      if (truncatedResults < 0)
+        throw new IllegalArgumentException("truncated results must not be negative");
+      this.truncatedResults = truncatedResults;
+      return this;
+    }
+
+    /** Whether Range headers are honoured; if not, the whole result is sent. */
+    public Builder rangeRequests(boolean rangeRequests) {
+      this.rangeRequests = rangeRequests;
+      return this;
+    }
+
+    public FakePhmmerServer start() throws IOException {
+      return new FakePhmmerServer(this);
+    }
+
+    private static Duration requireNonNegative(Duration duration) {
+      if (duration.isNegative())
+        throw new IllegalArgumentException("duration must not be negative");
+      return duration;
+    }
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  private static final class Job {
+    final long submitNanos = System.nanoTime();
+    final boolean failing;
+
+    Job(boolean failing) {
+      this.failing = failing;
+    }
+  }
+
+  private static final String XML_HEADER =
+      "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+  private static final String[][] RESULT_TYPES = {
+      {"The output from the tool itself", "txt", "out", "Tool Output", "text/plain"},
+      {"Per-sequence hits table", "txt", "tblout", "Sequence Table", "text/plain"},
+      {"Per-domain hits table", "txt", "domtblout", "Domain Table", "text/plain"},
+  };
+
+  private final long queueNanos;
+  private final long runNanos;
+  private final long latencyNanos;
+  private final double errorRate;
+  private final int errorStatus;
+  private final Duration retryAfter;
+  private final double jobFailureRate;
+  private final String failureStatus;
+  private final byte[] resultTypes;
+  private final AtomicInteger truncatedResults;
+  private final boolean rangeRequests;
+  private final Map<String, byte[]> results = new HashMap<>();
+  // gzip encoded bodies by their uncompressed version, if compression is enabled
+  private final Map<byte[], byte[]> compressedBodies = new IdentityHashMap<>();
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final ScheduledExecutorService delayScheduler;
+  private final ConcurrentHashMap<String, Job> jobs = new ConcurrentHashMap<>();
+  private final AtomicLong jobCounter = new AtomicLong();
+  private final AtomicLong requestCounter = new AtomicLong();
+  private final AtomicLong errorCounter = new AtomicLong();
+
+  private FakePhmmerServer(Builder builder) throws IOException {
+    queueNanos = builder.queueDelay.toNanos();
+    runNanos = builder.runTime.toNanos();
+    latencyNanos = builder.latency.toNanos();
+    errorRate = builder.errorRate;
+    errorStatus = builder.errorStatus;
+    retryAfter = builder.retryAfter;
+    jobFailureRate = builder.jobFailureRate;
+    failureStatus = builder.failureStatus;
+    truncatedResults = new AtomicInteger(builder.truncatedResults);
+    rangeRequests = builder.rangeRequests;
+    var types = new StringBuilder(XML_HEADER).append("<types>\n");
+    for (var type : RESULT_TYPES) {
+      types.append("  <type>\n")
+          .append("    <description>").append(type[0]).append("</description>\n")
+          .append("    <fileSuffix>").append(type[1]).append("</fileSuffix>\n")
+          .append("    <identifier>").append(type[2]).append("</identifier>\n")
+          .append("    <label>").append(type[3]).append("</label>\n")
+          .append("    <mediaType>").append(type[4]).append("</mediaType>\n")
+          .append("  </type>\n");
+    }
+    resultTypes = types.append("</types>\n").toString().getBytes("UTF-8");
+    var tblout = generateTable(builder.resultSize, false);
+    results.put("out", tblout);
+    results.put("tblout", tblout);
+    results.put("domtblout", generateTable(builder.resultSize, true));
+    if (builder.compressResponses) {
+      compressedBodies.put(resultTypes, gzip(resultTypes));
+      for (var body : results.values())
+        compressedBodies.computeIfAbsent(body, FakePhmmerServer::gzip);
+    }
+
+    executor = Executors.newCachedThreadPool(daemonThreads("fake-phmmer-server"));
+    delayScheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("fake-phmmer-delay"));
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4096);
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+    server.start();
+  }
+
+  private static ThreadFactory daemonThreads(String name) {
+    return runnable -> {
+      var thread = new Thread(runnable, name);
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  /*
+   * Generates rows of a tblout or domtblout table with decreasing scores
+   * until the table is at least the given size.
+   */
+  private static byte[] generateTable(int size, boolean domains) {
+    var random = new Random(size);
+    var text = new StringBuilder(size + 512)
+        .append("# target name        accession  query name           accession    E-value  score  bias\n");
+    for (int i = 0; text.length() < size; i++) {
+      double score = Math.max(1, 1000 - i * 0.5);
+      double evalue = Math.pow(10, -score / 10) * (1 + random.nextInt(9));
+      text.append(String.format(Locale.ROOT, "sp|P%05d|PROT%d_HUMAN -          ", i, i));
+      if (domains) {
+        int length = 100 + random.nextInt(900);
+        text.append(String.format(Locale.ROOT,
+            "%5d query                -            %5d %9.1e %6.1f %5.1f   1   1 %9.1e %9.1e " +
+                "%6.1f %5.1f %5d %5d %5d %5d %5d %5d 0.95 Protein %d\n",
+            length, 300, evalue, score, 0.1, evalue, evalue, score, 0.1,
+            1, 300, 1, length, 1, length, i));
+      }
+      else {
+        text.append(String.format(Locale.ROOT,
+            "query                -          %9.1e %6.1f %5.1f %9.1e %6.1f %5.1f   1.0   1   0" +
+                "   0   1   1   1   1 Protein %d\n",
+            evalue, score, 0.1, evalue, score, 0.1, i));
+      }
+    }
+    try {
+      return text.toString().getBytes("UTF-8");
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static byte[] gzip(byte[] bytes) {
+    var buffer = new ByteArrayOutputStream(bytes.length / 4 + 64);
+    try (var out = new GZIPOutputStream(buffer)) {
+      out.write(bytes);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return buffer.toByteArray();
+  }
+
+  public URI getURI() {
+    return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+  }
+
+  public long getSubmittedJobs() {
+    return jobCounter.get();
+  }
+
+  public long getRequestCount() {
+    return requestCounter.get();
+  }
+
+  public long getInjectedErrors() {
+    return errorCounter.get();
+  }
+
+  /** Returns the result generated for the identifier. */
+  public byte[] getResult(String identifier) {
+    return results.get(identifier).clone();
+  }
+
+  private void handle(HttpExchange exchange) {
+    requestCounter.incrementAndGet();
+    if (latencyNanos > 0)
+      delayScheduler.schedule(
+          () -> executor.execute(() -> process(exchange)), latencyNanos, TimeUnit.NANOSECONDS);
+    else
+      process(exchange);
+  }
+
+  private void process(HttpExchange exchange) {
+    try {
+      if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+        errorCounter.incrementAndGet();
+        if (retryAfter != null)
+          exchange.getResponseHeaders().set("Retry-After",
+              Long.toString(Math.max(0, retryAfter.toSeconds())));
+        respond(exchange, errorStatus, new byte[0]);
+        return;
+      }
+      var path = exchange.getRequestURI().getPath().substring(1).split("/");
+      if (path[0].equals("run") && exchange.getRequestMethod().equals("POST"))
+        run(exchange);
+      else if (path[0].equals("status") && path.length == 2)
+        respond(exchange, 200, status(path[1]).getBytes("UTF-8"));
+      else if (path[0].equals("resulttypes") && path.length == 2)
+        resultTypes(exchange, path[1]);
+      else if (path[0].equals("result") && path.length == 3)
+        result(exchange, path[1], path[2]);
+      else
+        respondError(exchange, 404, "Resource not found");
+    }
+    catch (IOException | RuntimeException e) {
+      exchange.close();
+    }
+  }
+
+  private void run(HttpExchange exchange) throws IOException {
+    var form = new HashMap<String, String>();
+    for (var field : new String(exchange.getRequestBody().readAllBytes(), "UTF-8").split("&")) {
+      int eq = field.indexOf('=');
+      if (eq > 0)
+        form.put(URLDecoder.decode(field.substring(0, eq), "UTF-8"),
+            URLDecoder.decode(field.substring(eq + 1), "UTF-8"));
+    }
+    if (form.getOrDefault("email", "").isBlank()) {
+      respondError(exchange, 400, "Invalid parameters: \nE-mail address -> Missing value.");
+      return;
+    }
+    if (form.getOrDefault("sequence", "").isBlank()) {
+      respondError(exchange, 400,
+          "Invalid parameters: \nSequence -> Error in reading the sequence.");
+      return;
+    }
+    var jobId = "hmmer3_phmmer-fake-" + jobCounter.incrementAndGet();
+    jobs.put(jobId, new Job(ThreadLocalRandom.current().nextDouble() < jobFailureRate));
+    respond(exchange, 200, jobId.getBytes("UTF-8"));
+  }
+
+  private String status(String jobId) {
+    var job = jobs.get(jobId);
+    if (job == null)
+      return "NOT_FOUND";
+    long elapsed = System.nanoTime() - job.submitNanos;
+    if (elapsed < queueNanos)
+      return "QUEUED";
+    if (elapsed < queueNanos + runNanos)
+      return "RUNNING";
+    return job.failing ? failureStatus : "FINISHED";
+  }
+
+  private void resultTypes(HttpExchange exchange, String jobId) throws IOException {
+    if (checkFinished(exchange, jobId))
+      respondContent(exchange, resultTypes);
+  }
+
+  private void result(HttpExchange exchange, String jobId, String identifier)
+      throws IOException {
+    if (!checkFinished(exchange, jobId))
+      return;
+    var body = results.get(identifier);
+    if (body == null) {
+      respondError(exchange, 400, "Invalid result type: " + identifier);
+      return;
+    }
+    var range = rangeRequests ? exchange.getRequestHeaders().getFirst("Range") : null;
+    if (range == null || !range.startsWith("bytes=") || !range.endsWith("-")) {
+      if (truncatedResults.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body, 0, body.length / 2);
+        exchange.getResponseBody().flush();
+        // closing the connection without the rest of the declared length
+        exchange.close();
+        return;
+      }
+      respondContent(exchange, body);
+      return;
+    }
+    int start = Integer.parseInt(range.substring(6, range.length() - 1));
+    if (start >= body.length) {
+      exchange.getResponseHeaders().set("Content-Range", "bytes */" + body.length);
+      respond(exchange, 416, new byte[0]);
+      return;
+    }
+    exchange.getResponseHeaders().set("Content-Range",
+        "bytes " + start + "-" + (body.length - 1) + "/" + body.length);
+    exchange.sendResponseHeaders(206, body.length - start);
+    try (var out = exchange.getResponseBody()) {
+      out.write(body, start, body.length - start);
+    }
+  }
+
+  private boolean checkFinished(HttpExchange exchange, String jobId) throws IOException {
+    var status = status(jobId);
+    if (status.equals("FINISHED"))
+      return true;
+    respondError(exchange, 400, status.equals("NOT_FOUND")
+        ? "Job '" + jobId + "' not found" : "Job '" + jobId + "' is " + status);
+    return false;
+  }
+
+  private void respondContent(HttpExchange exchange, byte[] body) throws IOException {
+    var compressed = compressedBodies.get(body);
+    var accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+    if (compressed != null && accepted != null && accepted.contains("gzip")) {
+      exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+      respond(exchange, 200, compressed);
+    }
+    else {
+      respond(exchange, 200, body);
+    }
+  }
+
+  private static void respondError(HttpExchange exchange, int code, String description)
+      throws IOException {
+    var escaped = description.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    exchange.getResponseHeaders().set("Content-Type", "application/xml");
+    respond(exchange, code, (XML_HEADER + "<error>\n  <description>" + escaped +
+        "</description>\n</error>\n").getBytes("UTF-8"));
+  }
+
+  private static void respond(HttpExchange exchange, int code, byte[] body) throws IOException {
+    exchange.sendResponseHeaders(code, body.length == 0 ? -1 : body.length);
+    try (var out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    delayScheduler.shutdownNow();
+    executor.shutdownNow();
+  }
+}